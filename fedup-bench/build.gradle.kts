@@ -0,0 +1,105 @@
+plugins {
+    id("java")
+    id("me.champeau.jmh") version "0.7.1"
+}
+
+group = "com.tridevmc"
+version = "0"
+
+repositories {
+    mavenCentral()
+    // Android SDK
+    google()
+}
+
+// The number of operations generated for the fixtures, e.g. ./gradlew :fedup-bench:jmh -PfixtureOperations=50000
+val fixtureOperations = (findProperty("fixtureOperations") as String?) ?: "10000"
+// How much slower than the baseline a benchmark may get before compareBaseline fails, as a fraction.
+val baselineTolerance = (findProperty("baselineTolerance") as String?) ?: "0.10"
+val fixtureDir = layout.buildDirectory.dir("fixtures")
+val baselineFile = layout.projectDirectory.file("baseline/jmh-baseline.json")
+val jmhResultsFile = layout.buildDirectory.file("results/jmh/results.json")
+val generatedClientDir = layout.buildDirectory.dir("generated/sources/fedup-client")
+
+// The generator is only run by the build to produce the client the decoding benchmarks use.
+val clientGenerator by configurations.creating
+
+dependencies {
+    implementation(project(":fedup-extract"))
+
+    // Guava
+    implementation("com.google.guava:guava:32.0.1-jre")
+
+    // JADX, the java input plugin lets the fixtures be loaded from a jar rather than an APK.
+    implementation("io.github.skylot:jadx-core:1.4.7")
+    implementation("io.github.skylot:jadx-java-input:1.4.7")
+
+    // GSON
+    implementation("com.google.code.gson:gson:2.10.1")
+
+    // TinyLog
+    implementation("org.tinylog:tinylog-api:2.6.2")
+    implementation("org.tinylog:tinylog-impl:2.6.2")
+    implementation("org.tinylog:slf4j-tinylog:2.6.2")
+
+    clientGenerator(project(":fedup-generator"))
+}
+
+val generateFixtures by tasks.registering(JavaExec::class) {
+    description = "Generates a jar of synthetic GQL operation classes for the benchmarks to analyze."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.tridevmc.fedup.bench.FixtureGenerator")
+    args(fixtureDir.get().asFile.absolutePath, fixtureOperations)
+    inputs.property("fixtureOperations", fixtureOperations)
+    outputs.dir(fixtureDir)
+}
+
+val generateClient by tasks.registering(JavaExec::class) {
+    description = "Generates a client for the feed fixture, its response decoders are benchmarked against Gson."
+    classpath = clientGenerator
+    mainClass.set("com.tridevmc.fedup.generator.FedUpGeneratorCLI")
+    args(
+            "-i", layout.projectDirectory.file("fixtures/feed-result.json").asFile.absolutePath,
+            "-o", generatedClientDir.get().asFile.absolutePath,
+            "-p", "com.tridevmc.fedup.bench.client",
+            "-n", "FeedClient"
+    )
+    inputs.file(layout.projectDirectory.file("fixtures/feed-result.json"))
+    inputs.files(clientGenerator)
+    outputs.dir(generatedClientDir)
+}
+
+sourceSets.named("jmh") {
+    java.srcDir(generateClient)
+}
+
+jmh {
+    jmhVersion.set("1.36")
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResultsFile)
+    jvmArgs.addAll(
+            "-Dfedup.bench.fixtureJar=${fixtureDir.get().asFile.absolutePath}/operations.jar",
+            "-Dfedup.bench.operations=$fixtureOperations"
+    )
+    (findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
+}
+
+tasks.named("jmh") {
+    dependsOn(generateFixtures)
+}
+
+tasks.register<JavaExec>("compareBaseline") {
+    description = "Runs the benchmarks and fails if any of them regressed compared to the committed baseline."
+    dependsOn("jmh")
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.tridevmc.fedup.bench.BaselineComparator")
+    args(jmhResultsFile.get().asFile.absolutePath, baselineFile.asFile.absolutePath, baselineTolerance)
+}
+
+tasks.register<Copy>("updateBaseline") {
+    description = "Runs the benchmarks and stores the results as the new baseline."
+    dependsOn("jmh")
+    from(jmhResultsFile)
+    into(baselineFile.asFile.parentFile)
+    rename { baselineFile.asFile.name }
+}
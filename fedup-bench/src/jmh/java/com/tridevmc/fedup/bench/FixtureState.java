@@ -0,0 +1,60 @@
+package com.tridevmc.fedup.bench;
+
+import jadx.api.JadxArgs;
+import jadx.api.JadxDecompiler;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+
+/**
+ * Loads the generated fixture jar into a fresh decompiler for every iteration.
+ * <p>
+ * Jadx caches decompiled classes, so sharing a decompiler between iterations would only measure the first one cold.
+ */
+@State(Scope.Benchmark)
+public class FixtureState {
+
+    public JadxDecompiler jadx;
+
+    @Setup(Level.Iteration)
+    public void load() {
+        this.jadx = loadFixtures();
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        this.jadx.close();
+    }
+
+    /**
+     * Gets the fixture jar passed to the benchmark JVM by the build.
+     *
+     * @return the fixture jar.
+     */
+    public static File getFixtureJar() {
+        var path = System.getProperty("fedup.bench.fixtureJar");
+        if (path == null || !new File(path).isFile()) {
+            throw new IllegalStateException("No fixture jar found at " + path + ", run the benchmarks through the jmh task so the fixtures are generated.");
+        }
+        return new File(path);
+    }
+
+    /**
+     * Loads the fixture jar into a new decompiler, skipping resources since the fixtures don't have any.
+     *
+     * @return the loaded decompiler.
+     */
+    public static JadxDecompiler loadFixtures() {
+        var jadxArgs = new JadxArgs();
+        jadxArgs.setInputFile(getFixtureJar());
+        jadxArgs.setSkipResources(true);
+        var jadx = new JadxDecompiler(jadxArgs);
+        jadx.load();
+        return jadx;
+    }
+
+}
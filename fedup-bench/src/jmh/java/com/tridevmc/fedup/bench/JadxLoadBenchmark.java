@@ -0,0 +1,30 @@
+package com.tridevmc.fedup.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long jadx takes to load the fixtures, which every analysis pays before any step runs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JadxLoadBenchmark {
+
+    @Benchmark
+    public int load() {
+        try (var jadx = FixtureState.loadFixtures()) {
+            return jadx.getRoot().getClasses().size();
+        }
+    }
+
+}
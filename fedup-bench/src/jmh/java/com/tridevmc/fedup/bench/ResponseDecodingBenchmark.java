@@ -0,0 +1,161 @@
+package com.tridevmc.fedup.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.SerializedName;
+import com.tridevmc.fedup.bench.client.responses.SubredditFeedResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding a feed response with the generated streaming decoder against Gson, both mapping it reflectively
+ * onto classes shaped like the response and parsing it into a tree.
+ * <p>
+ * Each post carries fields the query didn't select, as a response with extensions or a newer schema would, so the
+ * generated decoder also has to skip them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseDecodingBenchmark {
+
+    @Param({"100", "1000"})
+    public int posts;
+
+    private final Gson gson = new Gson();
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        var json = new StringBuilder("{\"data\":{\"subredditInfoByName\":{\"__typename\":\"Subreddit\",\"id\":\"t5_2qh0u\",\"name\":\"pics\",\"posts\":{\"edges\":[");
+        for (int i = 0; i < this.posts; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"node\":{\"id\":\"t3_").append(Integer.toString(i, 36))
+                    .append("\",\"title\":\"Post number ").append(i).append(" with a reasonably long title \\\"quoted\\\"\"")
+                    .append(",\"score\":").append(i * 37 % 10000)
+                    .append(",\"commentCount\":").append(i * 13 % 500)
+                    .append(",\"createdAt\":\"2023-06-").append(10 + i % 20).append("T12:00:00.000000+0000\"")
+                    .append(",\"isNsfw\":").append(i % 17 == 0)
+                    .append(",\"authorInfo\":{\"__typename\":\"Redditor\",\"id\":\"t2_").append(i * 7).append("\",\"name\":\"user").append(i).append("\"}")
+                    .append(",\"content\":{\"markdown\":\"").append("Some markdown content, ".repeat(1 + i % 8)).append("\"}")
+                    .append(",\"flair\":").append(i % 3 == 0 ? "null" : "{\"text\":\"Flair\",\"textColor\":\"DARK\",\"backgroundColor\":\"#ff4500\"}")
+                    .append(",\"thumbnail\":{\"url\":\"https://example.com/").append(i).append(".jpg\",\"dimensions\":{\"width\":140,\"height\":140}}")
+                    .append(",\"awardings\":[{\"id\":\"award_1\",\"total\":").append(i % 4).append("},{\"id\":\"award_2\",\"total\":1}]")
+                    .append("}}");
+        }
+        json.append("],\"pageInfo\":{\"hasNextPage\":true,\"endCursor\":\"t3_end\"}}}}}");
+        this.response = json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Reader openResponse() {
+        return new InputStreamReader(new ByteArrayInputStream(this.response), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public SubredditFeedResponse generatedDecoder() throws IOException {
+        try (var reader = this.openResponse()) {
+            return SubredditFeedResponse.DECODER.decode(reader);
+        }
+    }
+
+    @Benchmark
+    public FeedResponse gsonReflective() throws IOException {
+        try (var reader = this.openResponse()) {
+            return this.gson.fromJson(reader, FeedResponse.class);
+        }
+    }
+
+    @Benchmark
+    public JsonElement gsonTree() throws IOException {
+        try (var reader = this.openResponse()) {
+            return JsonParser.parseReader(reader);
+        }
+    }
+
+    // The classes Gson maps the response onto, shaped like the JSON rather than the query.
+
+    public static class FeedResponse {
+        Data data;
+        List<Map<String, Object>> errors;
+    }
+
+    public static class Data {
+        Subreddit subredditInfoByName;
+    }
+
+    public static class Subreddit {
+        @SerializedName("__typename")
+        String typename;
+        String id;
+        String name;
+        Posts posts;
+    }
+
+    public static class Posts {
+        List<Edge> edges;
+        PageInfo pageInfo;
+    }
+
+    public static class Edge {
+        Post node;
+    }
+
+    public static class PageInfo {
+        boolean hasNextPage;
+        String endCursor;
+    }
+
+    public static class Post {
+        String id;
+        String title;
+        long score;
+        long commentCount;
+        String createdAt;
+        boolean isNsfw;
+        Author authorInfo;
+        Content content;
+        Flair flair;
+    }
+
+    public static class Author {
+        @SerializedName("__typename")
+        String typename;
+        String id;
+        String name;
+    }
+
+    public static class Content {
+        String markdown;
+    }
+
+    public static class Flair {
+        String text;
+        String textColor;
+        String backgroundColor;
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.tridevmc.fedup.bench.FixtureGenerator;
+import com.tridevmc.fedup.bench.FixtureState;
+import com.tridevmc.fedup.extract.api.apk.APKAnalysisOptions;
+import jadx.api.JavaClass;
+import jadx.api.JavaMethod;
+import jadx.core.dex.nodes.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parts of the GQL operation step separately, the class scan and each of the constructor strategies.
+ * <p>
+ * Every iteration starts from a freshly loaded decompiler so the decompilation each part triggers is included,
+ * just as it would be in a real analysis.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GQLOperationScanBenchmark {
+
+    private final APKAnalysisStepGQLOperations step = new APKAnalysisStepGQLOperations();
+    private APKAnalysisContext context;
+    private List<JavaMethod> dataClassStyleConstructors;
+    private List<JavaMethod> stringConstructors;
+    private List<JavaMethod> noArgConstructors;
+
+    @Setup(Level.Iteration)
+    public void setup(FixtureState fixtures) {
+        this.context = new APKAnalysisContext(APKAnalysisOptions.defaults(), () -> fixtures.jadx, null);
+        // Constructors are found through the class nodes, going through the JavaClass would decompile the classes early.
+        this.dataClassStyleConstructors = this.findConstructors(fixtures, "DataOp", 3);
+        this.stringConstructors = this.findConstructors(fixtures, "StringOp", 4);
+        this.noArgConstructors = this.findConstructors(fixtures, "NoArgOp", 0);
+    }
+
+    private List<JavaMethod> findConstructors(FixtureState fixtures, String classPrefix, int argCount) {
+        var prefix = FixtureGenerator.FIXTURE_PACKAGE + "." + classPrefix;
+        return fixtures.jadx.getRoot().getClasses().stream().filter(
+                c -> c.getClassInfo().getFullName().startsWith(prefix)
+        ).flatMap(
+                c -> c.getMethods().stream()
+        ).filter(
+                m -> m.isConstructor() && m.getArgTypes().size() == argCount
+        ).map(
+                (MethodNode m) -> (JavaMethod) fixtures.jadx.getJavaNodeByRef(m)
+        ).toList();
+    }
+
+    @Benchmark
+    public List<JavaClass> scanOperationClasses(FixtureState fixtures) {
+        return fixtures.jadx.getClassesWithInners().stream().filter(
+                this.step::isPotentialRedditGQLOperationClass
+        ).toList();
+    }
+
+    @Benchmark
+    public long dataClassStyleConstructors() {
+        return this.dataClassStyleConstructors.stream().mapToLong(
+                c -> this.step.getArgumentSetsForDataClassStyleConstructor(this.context, c).size()
+        ).sum();
+    }
+
+    @Benchmark
+    public long stringConstructors() {
+        return this.stringConstructors.stream().mapToLong(
+                c -> this.step.getArgumentSetsForStringConstructor(this.context, c).size()
+        ).sum();
+    }
+
+    @Benchmark
+    public long noArgConstructors() {
+        return this.noArgConstructors.stream().map(
+                this.step::getArgumentSetsForNoArgConstructor
+        ).filter(Objects::nonNull).count();
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.tridevmc.fedup.extract.internal.metrics.AnalysisMetrics;
+import jadx.api.impl.SimpleCodeInfo;
+import jadx.core.xmlgen.ResContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the OAuth client ID scan over a synthetic resource table, with the ID only in the default strings file
+ * and every locale carrying the same number of other strings, as in the real APK.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OAuthClientIDBenchmark {
+
+    @Param({"100"})
+    public int locales;
+
+    @Param({"2000"})
+    public int stringsPerFile;
+
+    private final APKAnalysisStepOAuthClientID step = new APKAnalysisStepOAuthClientID();
+    private final AnalysisMetrics metrics = new AnalysisMetrics("benchmark");
+    private List<ResContainer> resources;
+
+    @Setup
+    public void setup() {
+        this.resources = new ArrayList<>();
+        for (int i = 0; i < this.locales; i++) {
+            var dir = i == 0 ? "res/values" : "res/values-l" + i;
+            this.resources.add(this.createResource(dir + "/strings.xml", "string", i == 0));
+            this.resources.add(this.createResource(dir + "/plurals.xml", "plurals", false));
+        }
+    }
+
+    private ResContainer createResource(String name, String element, boolean withClientId) {
+        var xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+        for (int i = 0; i < this.stringsPerFile; i++) {
+            xml.append("    <").append(element).append(" name=\"").append(element).append('_').append(i).append("\">")
+                    .append("Some text for ").append(element).append(' ').append(i)
+                    .append("</").append(element).append(">\n");
+            if (withClientId && i == this.stringsPerFile / 2) {
+                xml.append("    <string name=\"oauth_client_id\">ohXpoqrZYub1kg</string>\n");
+            }
+        }
+        xml.append("</resources>\n");
+        return ResContainer.textResource(name, new SimpleCodeInfo(xml.toString()));
+    }
+
+    @Benchmark
+    public String findRawOAuthClientId() {
+        return this.step.findRawOAuthClientId(this.resources, this.metrics.getPhase("step.OAuthClientID"));
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.GsonBuilder;
+import com.tridevmc.fedup.bench.FixtureGenerator;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.gql.RedditGQLOperation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing an analysis result, comparing serializing the whole result at once with streaming it through
+ * {@link APKAnalysisResultWriter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultSerializationBenchmark {
+
+    @Param({"10000"})
+    public int operations;
+
+    private APKAnalysisResult result;
+
+    @Setup
+    public void setup() {
+        var gqlOperations = ImmutableList.<IRedditGQLOperation>builder();
+        for (int i = 0; i < this.operations; i++) {
+            var values = FixtureGenerator.operationValues("Op", i);
+            gqlOperations.add(new RedditGQLOperation(values[0], values[1], values[2]));
+        }
+        this.result = new APKAnalysisResult(gqlOperations.build(), "ohXpoqrZYub1kg");
+    }
+
+    @Benchmark
+    public void gsonToJson() throws IOException {
+        // How the extract command wrote results before they were streamed.
+        var gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+        Writer.nullWriter().write(gson.toJson(this.result));
+    }
+
+    @Benchmark
+    public void writerJson() throws IOException {
+        this.write(APKAnalysisOutputFormat.JSON, true);
+    }
+
+    @Benchmark
+    public void writerNormalizedJson() throws IOException {
+        this.write(APKAnalysisOutputFormat.NORMALIZED_JSON, true);
+    }
+
+    @Benchmark
+    public void writerNdjson() throws IOException {
+        this.write(APKAnalysisOutputFormat.NDJSON, false);
+    }
+
+    private void write(APKAnalysisOutputFormat format, boolean pretty) throws IOException {
+        try (var writer = new APKAnalysisResultWriter(Writer.nullWriter(), format, pretty)) {
+            this.result.getGQLOperations().forEach(writer::onGQLOperation);
+            writer.finish(this.result);
+        }
+    }
+
+}
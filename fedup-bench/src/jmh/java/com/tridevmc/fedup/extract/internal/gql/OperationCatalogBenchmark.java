@@ -0,0 +1,84 @@
+package com.tridevmc.fedup.extract.internal.gql;
+
+import com.google.common.collect.ImmutableList;
+import com.tridevmc.fedup.bench.FixtureGenerator;
+import com.tridevmc.fedup.extract.api.gql.IGQLOperationCatalog;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisResult;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisResultJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up a single operation by name in a freshly opened result, comparing reading the JSON output with
+ * opening a memory-mapped operation catalog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OperationCatalogBenchmark {
+
+    @Param({"10000"})
+    public int operations;
+
+    private Path json;
+    private Path catalog;
+    private String name;
+
+    @Setup
+    public void setup() throws IOException {
+        var gqlOperations = ImmutableList.<IRedditGQLOperation>builder();
+        for (int i = 0; i < this.operations; i++) {
+            var values = FixtureGenerator.operationValues("Op", i);
+            gqlOperations.add(new RedditGQLOperation(values[0], values[1], values[2]));
+        }
+        var result = new APKAnalysisResult(gqlOperations.build(), "ohXpoqrZYub1kg");
+        this.name = result.getGQLOperations().get(this.operations / 2).getName();
+        this.json = Files.createTempFile("fedup-bench", ".json");
+        try (var writer = Files.newBufferedWriter(this.json)) {
+            APKAnalysisResultJson.write(result, writer);
+        }
+        this.catalog = Files.createTempFile("fedup-bench", ".fcat");
+        IGQLOperationCatalog.write(result, this.catalog);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.json);
+        Files.deleteIfExists(this.catalog);
+    }
+
+    @Benchmark
+    public IRedditGQLOperation jsonLookup() throws IOException {
+        try (var reader = Files.newBufferedReader(this.json)) {
+            return APKAnalysisResultJson.read(reader).getGQLOperations().stream()
+                    .filter(o -> o.getName().equals(this.name))
+                    .findFirst()
+                    .orElseThrow();
+        }
+    }
+
+    @Benchmark
+    public IRedditGQLOperation catalogLookup() throws IOException {
+        return IGQLOperationCatalog.open(this.catalog).getByName(this.name);
+    }
+
+}
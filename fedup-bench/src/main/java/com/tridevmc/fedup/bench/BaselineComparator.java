@@ -0,0 +1,150 @@
+package com.tridevmc.fedup.bench;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a set of JMH results against a committed baseline, failing if any benchmark got slower than the tolerance allows.
+ * <p>
+ * Benchmarks are matched on their name and parameters, benchmarks that only exist on one side are reported but don't fail
+ * the comparison.
+ */
+public class BaselineComparator {
+
+    private static final TaggedLogger LOG = Logger.tag(BaselineComparator.class.getCanonicalName());
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BaselineComparator <results json> <baseline json> <tolerance>");
+            System.exit(1);
+        }
+        var resultsFile = new File(args[0]);
+        var baselineFile = new File(args[1]);
+        var tolerance = Double.parseDouble(args[2]);
+        if (!baselineFile.isFile()) {
+            LOG.error("No baseline found at {}, run the updateBaseline task to create one.", baselineFile);
+            System.exit(1);
+        }
+        var regressions = compare(readScores(resultsFile), readScores(baselineFile), tolerance);
+        if (regressions > 0) {
+            LOG.error("{} benchmark(s) regressed by more than {}% compared to the baseline.", regressions, tolerance * 100);
+            System.exit(1);
+        }
+        LOG.info("No benchmarks regressed by more than {}% compared to the baseline.", tolerance * 100);
+    }
+
+    /**
+     * Compares the given scores against the baseline, logging the change of every benchmark.
+     *
+     * @param results   the scores of the current run.
+     * @param baseline  the scores of the baseline.
+     * @param tolerance how much worse than the baseline a score may be, as a fraction of the baseline score.
+     * @return the number of benchmarks that regressed past the tolerance.
+     */
+    public static int compare(Map<String, Score> results, Map<String, Score> baseline, double tolerance) {
+        var regressions = 0;
+        for (var entry : results.entrySet()) {
+            var current = entry.getValue();
+            var previous = baseline.get(entry.getKey());
+            if (previous == null) {
+                LOG.info("{}: {} {}, not in the baseline.", entry.getKey(), current.score(), current.unit());
+                continue;
+            }
+            if (!previous.unit().equals(current.unit()) || !previous.mode().equals(current.mode())) {
+                LOG.warn("{}: measured in {} ({}) but the baseline used {} ({}), skipping.",
+                         entry.getKey(), current.unit(), current.mode(), previous.unit(), previous.mode());
+                continue;
+            }
+            var change = current.regressionFrom(previous);
+            var regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            var message = "{}: {} {} against a baseline of {} {}, {}% {}.";
+            var args = new Object[]{
+                    entry.getKey(), current.score(), current.unit(), previous.score(), previous.unit(),
+                    String.format("%.1f", Math.abs(change) * 100), change > 0 ? "worse" : "better"
+            };
+            if (regressed) {
+                LOG.error(message, args);
+            } else {
+                LOG.info(message, args);
+            }
+        }
+        baseline.keySet().stream().filter(k -> !results.containsKey(k)).forEach(
+                k -> LOG.warn("{}: in the baseline but wasn't run.", k)
+        );
+        return regressions;
+    }
+
+    /**
+     * Reads the primary scores from a JMH JSON results file, keyed by benchmark name and parameters.
+     *
+     * @param file the file to read.
+     * @return the scores in the file.
+     * @throws IOException if the file can't be read.
+     */
+    public static Map<String, Score> readScores(File file) throws IOException {
+        var scores = new LinkedHashMap<String, Score>();
+        try (var reader = Files.newBufferedReader(file.toPath())) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                var benchmark = element.getAsJsonObject();
+                var metric = benchmark.getAsJsonObject("primaryMetric");
+                scores.put(getKey(benchmark), new Score(
+                        benchmark.get("mode").getAsString(),
+                        metric.get("score").getAsDouble(),
+                        metric.get("scoreUnit").getAsString()
+                ));
+            }
+        }
+        return scores;
+    }
+
+    private static String getKey(JsonObject benchmark) {
+        var name = benchmark.get("benchmark").getAsString();
+        if (!benchmark.has("params")) {
+            return name;
+        }
+        // Sort the parameters so the key doesn't depend on the order JMH happened to write them in.
+        var params = new TreeMap<String, String>();
+        benchmark.getAsJsonObject("params").entrySet().forEach(e -> params.put(e.getKey(), e.getValue().getAsString()));
+        return name + params;
+    }
+
+    /**
+     * The primary score of a single benchmark.
+     *
+     * @param mode  the JMH mode the benchmark ran in, such as "avgt" or "thrpt".
+     * @param score the score.
+     * @param unit  the unit of the score.
+     */
+    public record Score(String mode, double score, String unit) {
+
+        /**
+         * Gets how much worse this score is than the given one, as a fraction of the given score.
+         * Throughput modes are better when higher, every other mode measures time so is better when lower.
+         *
+         * @param baseline the score to compare against.
+         * @return how much worse this score is, negative if it's better.
+         */
+        public double regressionFrom(Score baseline) {
+            if (baseline.score() == 0) {
+                return 0;
+            }
+            var change = (this.score - baseline.score()) / baseline.score();
+            return this.mode.equals("thrpt") ? -change : change;
+        }
+
+    }
+
+}
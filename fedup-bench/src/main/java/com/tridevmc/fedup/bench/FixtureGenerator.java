@@ -0,0 +1,218 @@
+package com.tridevmc.fedup.bench;
+
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates a jar of synthetic classes that mimic the ways GQL operations are laid out in the Reddit APK, so the
+ * extraction pipeline can be benchmarked without a real APK.
+ * <p>
+ * Operations are split evenly between the three constructor patterns the GQL step understands:
+ * <ul>
+ *     <li>Data class style, a constructor taking the id, name and definition called from a constant holder's static initializer.</li>
+ *     <li>String constructor, a constructor taking more than three strings called from a constant holder's static initializer.</li>
+ *     <li>No-arg constructor, a constructor that assigns the values as literals.</li>
+ * </ul>
+ */
+public class FixtureGenerator {
+
+    public static final String FIXTURE_PACKAGE = "fixture.ops";
+
+    /**
+     * The number of constant fields in each generated holder class, similar to the holders in the real APK.
+     */
+    private static final int FIELDS_PER_HOLDER = 250;
+
+    private static final TaggedLogger LOG = Logger.tag(FixtureGenerator.class.getCanonicalName());
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: FixtureGenerator <output dir> <operation count>");
+            System.exit(1);
+        }
+        var outputDir = new File(args[0]);
+        var operations = Integer.parseInt(args[1]);
+        var jar = generate(outputDir, operations);
+        LOG.info("Generated {} operations into {}.", operations, jar);
+    }
+
+    /**
+     * Generates the fixture jar.
+     *
+     * @param outputDir  the directory to write the jar to.
+     * @param operations the total number of operations to generate.
+     * @return the generated jar.
+     * @throws IOException if the jar can't be written.
+     */
+    public static File generate(File outputDir, int operations) throws IOException {
+        var sources = new ArrayList<JavaFileObject>();
+        var perPattern = Math.max(1, operations / 3);
+        addDataClassStyleOperations(sources, perPattern);
+        addStringConstructorOperations(sources, perPattern);
+        addNoArgConstructorOperations(sources, operations - perPattern * 2);
+
+        var classesDir = Files.createTempDirectory("fedup-bench-fixtures");
+        try {
+            var compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler == null) {
+                throw new IllegalStateException("Generating fixtures needs a JDK, not a JRE.");
+            }
+            var task = compiler.getTask(null, null, null, List.of("-d", classesDir.toString(), "-g:none"), null, sources);
+            if (!task.call()) {
+                throw new IllegalStateException("Failed to compile the generated fixtures.");
+            }
+            Files.createDirectories(outputDir.toPath());
+            var jar = new File(outputDir, "operations.jar");
+            writeJar(classesDir, jar);
+            return jar;
+        } finally {
+            try (var files = Files.walk(classesDir)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the values of a single synthetic operation, the id matches the 12 character format used by Reddit.
+     *
+     * @param prefix the prefix of the operation name, unique to each pattern.
+     * @param index  the index of the operation.
+     * @return the id, name and definition of the operation.
+     */
+    public static String[] operationValues(String prefix, int index) {
+        var name = prefix + index;
+        // Scramble the index so ids don't share long prefixes, the top 48 bits are exactly 12 hex characters.
+        var id = String.format(Locale.ROOT, "%012x", ((prefix.hashCode() * 31L + index) * 0x9E3779B97F4A7C15L) >>> 16);
+        // Like the real definitions, every operation carries the full text of the fragments it spreads, which are shared with many others.
+        var postFragment = "PostFragment" + index % 16;
+        var definition = "query " + name + "($id: ID!) { node(id: $id) { __typename id ...SubredditFragment ..." + postFragment + " } }\n"
+                + "fragment SubredditFragment on Subreddit { name title description { markdown } styles { icon primaryColor bannerBackgroundImage } }\n"
+                + "fragment " + postFragment + " on Post { id title score commentCount createdAt isNsfw authorInfo { __typename ... on Redditor { id name } } }";
+        return new String[]{id, name, definition};
+    }
+
+    private static void addDataClassStyleOperations(List<JavaFileObject> sources, int count) {
+        var holder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sources.add(source("DataOp" + i, operationClass("DataOp" + i, "")));
+            var values = operationValues("DataOp", i);
+            holder.append("    public static final DataOp").append(i).append(" OP_").append(i)
+                    .append(" = new DataOp").append(i).append("(")
+                    .append(literal(values[0])).append(", ").append(literal(values[1])).append(", ").append(literal(values[2]))
+                    .append(");\n");
+            if ((i + 1) % FIELDS_PER_HOLDER == 0 || i == count - 1) {
+                addHolder(sources, "DataOps" + (i / FIELDS_PER_HOLDER), holder);
+            }
+        }
+    }
+
+    private static void addStringConstructorOperations(List<JavaFileObject> sources, int count) {
+        var holder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            var extraConstructor = """
+                        public %1$s(String a, String b, String c, String d) {
+                            this(b, a, c);
+                        }
+                    """.formatted("StringOp" + i);
+            sources.add(source("StringOp" + i, operationClass("StringOp" + i, extraConstructor)));
+            var values = operationValues("StringOp", i);
+            holder.append("    public static final StringOp").append(i).append(" OP_").append(i)
+                    .append(" = new StringOp").append(i).append("(")
+                    .append(literal(values[1])).append(", ").append(literal(values[0])).append(", ")
+                    .append(literal(values[2])).append(", ").append(literal("unused")).append(");\n");
+            if ((i + 1) % FIELDS_PER_HOLDER == 0 || i == count - 1) {
+                addHolder(sources, "StringOps" + (i / FIELDS_PER_HOLDER), holder);
+            }
+        }
+    }
+
+    private static void addNoArgConstructorOperations(List<JavaFileObject> sources, int count) {
+        for (int i = 0; i < count; i++) {
+            var values = operationValues("NoArgOp", i);
+            var noArgConstructor = """
+                        public %1$s() {
+                            this.id = %2$s;
+                            this.name = %3$s;
+                            this.definition = %4$s;
+                        }
+                    """.formatted("NoArgOp" + i, literal(values[0]), literal(values[1]), literal(values[2]));
+            sources.add(source("NoArgOp" + i, operationClass("NoArgOp" + i, noArgConstructor)));
+        }
+    }
+
+    private static void addHolder(List<JavaFileObject> sources, String name, StringBuilder fields) {
+        sources.add(source(name, "package " + FIXTURE_PACKAGE + ";\n\npublic final class " + name + " {\n" + fields + "}\n"));
+        fields.setLength(0);
+    }
+
+    private static String operationClass(String name, String extraMembers) {
+        return """
+                package %1$s;
+
+                public final class %2$s {
+                    private final String id;
+                    private final String name;
+                    private final String definition;
+
+                    public %2$s(String id, String name, String definition) {
+                        this.id = id;
+                        this.name = name;
+                        this.definition = definition;
+                    }
+
+                %3$s
+                    public String getId() {
+                        return this.id;
+                    }
+                }
+                """.formatted(FIXTURE_PACKAGE, name, extraMembers);
+    }
+
+    private static String literal(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+
+    private static JavaFileObject source(String className, String code) {
+        var uri = URI.create("string:///" + FIXTURE_PACKAGE.replace('.', '/') + "/" + className + ".java");
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private static void writeJar(Path classesDir, File jar) throws IOException {
+        try (var out = new JarOutputStream(Files.newOutputStream(jar.toPath()));
+             var files = Files.walk(classesDir)) {
+            for (var file : files.filter(Files::isRegularFile).sorted().toList()) {
+                out.putNextEntry(new JarEntry(classesDir.relativize(file).toString().replace(File.separatorChar, '/')));
+                try {
+                    Files.copy(file, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+}
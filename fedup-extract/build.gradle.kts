@@ -46,6 +46,13 @@ tasks.withType<JavaCompile> {
     options.compilerArgs.addAll(listOf("-Aproject=${project.group}/${project.name}"))
 }
 
+tasks.jar {
+    manifest {
+        // Used as part of the analysis cache key.
+        attributes("Implementation-Version" to project.version)
+    }
+}
+
 application {
     mainClass.set("com.tridevmc.fedup.extract.FedUpExtractCLI")
 }
@@ -0,0 +1,289 @@
+package com.tridevmc.fedup.extract.api.apk;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Options used to control how an {@link IAPKAnalyzer} processes an APK.
+ */
+public final class APKAnalysisOptions {
+
+    /**
+     * The directory jadx saves sources to when {@link AnalysisMode#SAVE_SOURCES} is used without an explicit directory.
+     */
+    public static final File DEFAULT_SOURCE_OUTPUT_DIR = new File("jadx-out");
+
+    /**
+     * The default size limit of the analysis cache, in bytes.
+     */
+    public static final long DEFAULT_CACHE_MAX_SIZE_BYTES = 1024L * 1024L * 1024L;
+
+    private final AnalysisMode mode;
+    private final AnalysisEngine engine;
+    private final File sourceOutputDir;
+    private final ImmutableList<String> includedPackages;
+    private final ImmutableList<String> excludedPackages;
+    private final File cacheDir;
+    private final long cacheMaxSizeBytes;
+    private final int threads;
+    private final long memoryBudgetBytes;
+    private final long timeBudgetMillis;
+    private final long stepTimeBudgetMillis;
+
+    private APKAnalysisOptions(Builder builder) {
+        this.mode = builder.mode;
+        this.engine = builder.engine;
+        this.sourceOutputDir = builder.sourceOutputDir;
+        this.includedPackages = builder.includedPackages.build();
+        this.excludedPackages = builder.excludedPackages.build();
+        this.cacheDir = builder.cacheDir;
+        this.cacheMaxSizeBytes = builder.cacheMaxSizeBytes;
+        this.threads = builder.threads;
+        this.memoryBudgetBytes = builder.memoryBudgetBytes;
+        this.timeBudgetMillis = builder.timeBudgetMillis;
+        this.stepTimeBudgetMillis = builder.stepTimeBudgetMillis;
+    }
+
+    /**
+     * Gets the default options, which analyze the APK entirely in memory.
+     *
+     * @return the default options.
+     */
+    public static APKAnalysisOptions defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Creates a new builder with the default options set.
+     *
+     * @return a new builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the mode the analysis should run in.
+     *
+     * @return the analysis mode.
+     */
+    public AnalysisMode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Gets the engine GQL operations are found with.
+     *
+     * @return the analysis engine.
+     */
+    public AnalysisEngine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * Gets the directory decompiled sources are saved to, only used with {@link AnalysisMode#SAVE_SOURCES}.
+     *
+     * @return the source output directory.
+     */
+    public File getSourceOutputDir() {
+        return this.sourceOutputDir;
+    }
+
+    /**
+     * Gets the packages jadx should load classes from, if empty all packages not explicitly excluded are loaded.
+     *
+     * @return the included package prefixes.
+     */
+    public ImmutableList<String> getIncludedPackages() {
+        return this.includedPackages;
+    }
+
+    /**
+     * Gets the packages jadx should never load classes from.
+     *
+     * @return the excluded package prefixes.
+     */
+    public ImmutableList<String> getExcludedPackages() {
+        return this.excludedPackages;
+    }
+
+    /**
+     * Checks if a class should be loaded by jadx according to the included and excluded packages.
+     *
+     * @param className the fully qualified name of the class.
+     * @return true if the class should be loaded, false otherwise.
+     */
+    public boolean isClassIncluded(String className) {
+        if (!this.includedPackages.isEmpty() && this.includedPackages.stream().noneMatch(p -> isInPackage(className, p))) {
+            return false;
+        }
+        return this.excludedPackages.stream().noneMatch(p -> isInPackage(className, p));
+    }
+
+    /**
+     * Gets the directory analysis results are cached in, if null caching is disabled. Analyses in
+     * {@link AnalysisMode#SAVE_SOURCES} mode never use the cache, as the sources are only saved when the APK is loaded.
+     *
+     * @return the cache directory, or null if caching is disabled.
+     */
+    public File getCacheDir() {
+        return this.cacheDir;
+    }
+
+    /**
+     * Gets the size limit of the analysis cache, once exceeded the least recently used entries are evicted.
+     *
+     * @return the maximum size of the cache in bytes.
+     */
+    public long getCacheMaxSizeBytes() {
+        return this.cacheMaxSizeBytes;
+    }
+
+    /**
+     * Gets the number of threads jadx and the analysis steps may use to process classes in parallel.
+     *
+     * @return the number of threads, defaults to the number of available processors.
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Gets the heap the analysis should try to stay within, if set the analysis runs in low-memory mode and processes
+     * classes in batches, unloading each batch from jadx once it has been scanned.
+     *
+     * @return the memory budget in bytes, or 0 if the analysis may keep the whole APK in memory.
+     */
+    public long getMemoryBudgetBytes() {
+        return this.memoryBudgetBytes;
+    }
+
+    /**
+     * Checks if the analysis should run in low-memory mode, see {@link #getMemoryBudgetBytes()}.
+     *
+     * @return true if a memory budget is set.
+     */
+    public boolean isLowMemory() {
+        return this.memoryBudgetBytes > 0;
+    }
+
+    /**
+     * Gets the time the analysis steps may take altogether. Once it runs out, the step that is running stops at the
+     * next point it checks its budget and the steps that haven't started are skipped, the result then only holds what
+     * was found so far and is flagged as partial.
+     *
+     * @return the time budget in milliseconds, or 0 if the analysis may take as long as it needs.
+     */
+    public long getTimeBudgetMillis() {
+        return this.timeBudgetMillis;
+    }
+
+    /**
+     * Gets the time a single analysis step may take, measured from when the step starts. A step that runs out of time
+     * is stopped like it would be by {@link #getTimeBudgetMillis()}, but the steps that don't depend on it still run.
+     *
+     * @return the time budget of each step in milliseconds, or 0 if steps may take as long as they need.
+     */
+    public long getStepTimeBudgetMillis() {
+        return this.stepTimeBudgetMillis;
+    }
+
+    private static boolean isInPackage(String className, String packageName) {
+        return className.startsWith(packageName) &&
+                (className.length() == packageName.length() || className.charAt(packageName.length()) == '.');
+    }
+
+    public static final class Builder {
+
+        private AnalysisMode mode = AnalysisMode.IN_MEMORY;
+        private AnalysisEngine engine = AnalysisEngine.JADX;
+        private File sourceOutputDir = DEFAULT_SOURCE_OUTPUT_DIR;
+        private final ImmutableList.Builder<String> includedPackages = ImmutableList.builder();
+        private final ImmutableList.Builder<String> excludedPackages = ImmutableList.builder();
+        private File cacheDir;
+        private long cacheMaxSizeBytes = DEFAULT_CACHE_MAX_SIZE_BYTES;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private long memoryBudgetBytes;
+        private long timeBudgetMillis;
+        private long stepTimeBudgetMillis;
+
+        private Builder() {
+        }
+
+        public Builder mode(AnalysisMode mode) {
+            this.mode = Objects.requireNonNull(mode);
+            return this;
+        }
+
+        public Builder engine(AnalysisEngine engine) {
+            this.engine = Objects.requireNonNull(engine);
+            return this;
+        }
+
+        public Builder sourceOutputDir(File sourceOutputDir) {
+            this.sourceOutputDir = Objects.requireNonNull(sourceOutputDir);
+            return this;
+        }
+
+        public Builder includePackages(Collection<String> packages) {
+            this.includedPackages.addAll(packages);
+            return this;
+        }
+
+        public Builder excludePackages(Collection<String> packages) {
+            this.excludedPackages.addAll(packages);
+            return this;
+        }
+
+        public Builder cacheDir(File cacheDir) {
+            this.cacheDir = cacheDir;
+            return this;
+        }
+
+        public Builder cacheMaxSizeBytes(long cacheMaxSizeBytes) {
+            this.cacheMaxSizeBytes = cacheMaxSizeBytes;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("At least one thread is required, got " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder memoryBudgetBytes(long memoryBudgetBytes) {
+            if (memoryBudgetBytes < 0) {
+                throw new IllegalArgumentException("The memory budget can't be negative, got " + memoryBudgetBytes);
+            }
+            this.memoryBudgetBytes = memoryBudgetBytes;
+            return this;
+        }
+
+        public Builder timeBudgetMillis(long timeBudgetMillis) {
+            if (timeBudgetMillis < 0) {
+                throw new IllegalArgumentException("The time budget can't be negative, got " + timeBudgetMillis);
+            }
+            this.timeBudgetMillis = timeBudgetMillis;
+            return this;
+        }
+
+        public Builder stepTimeBudgetMillis(long stepTimeBudgetMillis) {
+            if (stepTimeBudgetMillis < 0) {
+                throw new IllegalArgumentException("The step time budget can't be negative, got " + stepTimeBudgetMillis);
+            }
+            this.stepTimeBudgetMillis = stepTimeBudgetMillis;
+            return this;
+        }
+
+        public APKAnalysisOptions build() {
+            return new APKAnalysisOptions(this);
+        }
+
+    }
+
+}
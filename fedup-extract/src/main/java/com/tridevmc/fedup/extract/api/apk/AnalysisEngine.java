@@ -0,0 +1,28 @@
+package com.tridevmc.fedup.extract.api.apk;
+
+/**
+ * Determines how GQL operations are found in the code of an APK.
+ */
+public enum AnalysisEngine {
+
+    /**
+     * Operations are found in the code jadx decompiles, this is the reference engine.
+     */
+    JADX,
+
+    /**
+     * Operations are found by reading the DEX files directly, without loading any code into jadx.
+     * <p>
+     * Only constructor signatures, string constants and the constructor calls in static initializers are read, so this
+     * is much faster than decompiling, but it doesn't follow values through anything more complicated than a register.
+     * The analysis mode and memory budget only apply to jadx, so they have no effect on this engine.
+     */
+    DEX,
+
+    /**
+     * Operations are found with both engines and any differences between them are reported, the jadx engine's
+     * operations are used for the result.
+     */
+    CROSS_CHECK
+
+}
@@ -0,0 +1,26 @@
+package com.tridevmc.fedup.extract.api.apk;
+
+/**
+ * Determines how much work jadx does on top of the analysis steps.
+ */
+public enum AnalysisMode {
+
+    /**
+     * Analysis steps run directly against the loaded jadx model, nothing is written to disk.
+     */
+    IN_MEMORY,
+
+    /**
+     * Analysis steps run against the loaded jadx model, and the decompiled sources and resources are also saved to the
+     * configured output directory.
+     */
+    SAVE_SOURCES,
+
+    /**
+     * Analysis steps run against the loaded jadx model, but classes are only decompiled once a step asks for them.
+     * <p>
+     * Candidate classes are found with a structural pre-pass over class signatures rather than by decompiling every class.
+     */
+    TARGETED
+
+}
@@ -0,0 +1,25 @@
+package com.tridevmc.fedup.extract.api.apk;
+
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+
+/**
+ * Receives results from an {@link IAPKAnalyzer} as soon as they are found, rather than waiting for the whole analysis to complete.
+ */
+public interface IAPKAnalysisListener {
+
+    /**
+     * A listener that ignores everything.
+     */
+    IAPKAnalysisListener NONE = new IAPKAnalysisListener() {
+    };
+
+    /**
+     * Called for every GQL operation in the final result, in the same order as the result. May be called from any thread,
+     * but never from more than one thread at a time.
+     *
+     * @param operation the operation that was found.
+     */
+    default void onGQLOperation(IRedditGQLOperation operation) {
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.tridevmc.fedup.extract.api.apk;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+
+/**
+ * The metrics recorded while analyzing an APK, broken down into phases such as loading the APK and each analysis step.
+ */
+public interface IAPKAnalysisMetrics {
+
+    /**
+     * Gets the metrics of every phase, in the order the phases started.
+     *
+     * @return an immutable list of the phase metrics.
+     */
+    ImmutableList<IAPKAnalysisPhaseMetrics> getPhases();
+
+    /**
+     * Writes the metrics as a JSON report.
+     *
+     * @param out the appendable to write the report to.
+     * @throws IOException if the report can't be written.
+     */
+    void writeJson(Appendable out) throws IOException;
+
+}
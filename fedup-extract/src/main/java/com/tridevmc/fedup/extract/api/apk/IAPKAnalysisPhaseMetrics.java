@@ -0,0 +1,47 @@
+package com.tridevmc.fedup.extract.api.apk;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * The metrics of a single phase of an analysis.
+ * <p>
+ * Phases can contain each other, a step that is the first to use the decompiler includes the time spent loading the APK.
+ */
+public interface IAPKAnalysisPhaseMetrics {
+
+    /**
+     * Gets the name of the phase, such as "jadx.load" or "step.GQLOperations".
+     *
+     * @return the name of the phase.
+     */
+    String getName();
+
+    /**
+     * Gets the wall clock time spent in the phase.
+     *
+     * @return the wall time in nanoseconds.
+     */
+    long getWallTimeNanos();
+
+    /**
+     * Gets the CPU time spent in the phase, summed across every thread that worked on it.
+     *
+     * @return the CPU time in nanoseconds, or 0 if the JVM can't measure it.
+     */
+    long getCpuTimeNanos();
+
+    /**
+     * Gets the bytes allocated by the phase, summed across every thread that worked on it.
+     *
+     * @return the allocated bytes, or 0 if the JVM can't measure them.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Gets the counters recorded by the phase, such as the number of classes visited.
+     *
+     * @return an immutable map of counter names to their values.
+     */
+    ImmutableSortedMap<String, Long> getCounters();
+
+}
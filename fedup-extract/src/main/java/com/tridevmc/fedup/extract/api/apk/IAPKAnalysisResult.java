@@ -1,13 +1,29 @@
 package com.tridevmc.fedup.extract.api.apk;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.tridevmc.fedup.extract.api.gql.GQLOperationType;
 import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisResultJson;
+
+import java.io.Reader;
 
 /**
  * Represents the result of an APK analysis, containing GQL operations and any other necessary data to build a client
  */
 public interface IAPKAnalysisResult {
 
+    /**
+     * Reads a result from the JSON the extract command outputs, in either the default or the normalized layout.
+     *
+     * @param reader the reader to read the JSON from.
+     * @return the result that was read.
+     * @throws com.google.gson.JsonParseException if the JSON is malformed, isn't a result or can't be read from the reader.
+     */
+    static IAPKAnalysisResult read(Reader reader) {
+        return APKAnalysisResultJson.read(reader);
+    }
+
     /**
      * Gets the GQL operations found in the APK.
      *
@@ -15,6 +31,32 @@ public interface IAPKAnalysisResult {
      */
     ImmutableList<IRedditGQLOperation> getGQLOperations();
 
+    /**
+     * Gets the GQL operations of the given type found in the APK, in the same order as {@link #getGQLOperations()}.
+     * Operations with a definition that isn't valid GQL have no type and are never returned.
+     *
+     * @param type the type of the operations.
+     * @return an immutable list of the GQL operations of the given type.
+     */
+    ImmutableList<IRedditGQLOperation> getGQLOperations(GQLOperationType type);
+
+    /**
+     * Gets the operation with the given ID.
+     *
+     * @param id the ID of the operation.
+     * @return the operation, or null if there is no operation with the given ID.
+     */
+    IRedditGQLOperation getById(String id);
+
+    /**
+     * Gets the operation with the given name. If several operations share the name, which one is returned is up to the
+     * implementation but doesn't change between calls.
+     *
+     * @param name the name of the operation.
+     * @return the operation, or null if there is no operation with the given name.
+     */
+    IRedditGQLOperation getByName(String name);
+
     /**
      * Gets the raw OAuth client ID found in the APK.
      *
@@ -22,4 +64,22 @@ public interface IAPKAnalysisResult {
      */
     String getRawOAuthClientId();
 
+    /**
+     * Gets the phases of the analysis that ran out of time or were skipped because of a phase that did, named like the
+     * phases in {@link IAPKAnalysisMetrics}. The operations of a partial result are the ones found before that happened.
+     *
+     * @return the skipped phases, empty if the analysis completed.
+     * @see APKAnalysisOptions#getTimeBudgetMillis()
+     */
+    ImmutableSet<String> getSkippedPhases();
+
+    /**
+     * Checks if the analysis ran out of time before it completed, see {@link #getSkippedPhases()}.
+     *
+     * @return true if any phase was skipped.
+     */
+    default boolean isPartial() {
+        return !this.getSkippedPhases().isEmpty();
+    }
+
 }
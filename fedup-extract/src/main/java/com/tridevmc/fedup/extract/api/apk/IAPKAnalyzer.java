@@ -5,9 +5,9 @@ import com.tridevmc.fedup.extract.internal.apk.APKAnalyzer;
 import java.io.File;
 
 /**
- * Performs analysis on an APK file.
+ * Performs analysis on an APK file, the analyzer holds on to the decompiled APK until it is closed.
  */
-public interface IAPKAnalyzer {
+public interface IAPKAnalyzer extends AutoCloseable {
 
     /**
      * Creates an APK analyzer for the given APK file.
@@ -16,7 +16,18 @@ public interface IAPKAnalyzer {
      * @return an APK analyzer for the given APK file.
      */
     static IAPKAnalyzer createFor(File apkFile) {
-        return new APKAnalyzer(apkFile);
+        return createFor(apkFile, APKAnalysisOptions.defaults());
+    }
+
+    /**
+     * Creates an APK analyzer for the given APK file using the given options.
+     *
+     * @param apkFile the APK file to analyze.
+     * @param options the options to use for the analysis.
+     * @return an APK analyzer for the given APK file.
+     */
+    static IAPKAnalyzer createFor(File apkFile, APKAnalysisOptions options) {
+        return new APKAnalyzer(apkFile, options);
     }
 
     /**
@@ -24,6 +35,51 @@ public interface IAPKAnalyzer {
      *
      * @return the result of the APK analysis.
      */
-    IAPKAnalysisResult analyzeAPK();
+    default IAPKAnalysisResult analyzeAPK() {
+        return this.analyzeAPK(IAPKAnalysisListener.NONE);
+    }
+
+    /**
+     * Analyzes the APK file and returns the result, passing operations to the given listener as they are found.
+     *
+     * @param listener the listener to pass results to as they are found.
+     * @return the result of the APK analysis.
+     */
+    IAPKAnalysisResult analyzeAPK(IAPKAnalysisListener listener);
+
+    /**
+     * Analyzes the APK file, only re-analyzing the classes that changed since the given snapshot and carrying over everything else.
+     * <p>
+     * Falls back to analyzing the whole APK if the snapshot doesn't exist or was created by a different extractor version.
+     *
+     * @param previousSnapshot the snapshot file written by a previous analysis, may be null.
+     * @return the result of the APK analysis, along with a diff against the previous snapshot and a new snapshot.
+     */
+    default IAPKIncrementalAnalysisResult analyzeAPKIncrementally(File previousSnapshot) {
+        return this.analyzeAPKIncrementally(previousSnapshot, IAPKAnalysisListener.NONE);
+    }
+
+    /**
+     * Analyzes the APK file incrementally, passing operations to the given listener as they are found.
+     *
+     * @param previousSnapshot the snapshot file written by a previous analysis, may be null.
+     * @param listener         the listener to pass results to as they are found.
+     * @return the result of the APK analysis, along with a diff against the previous snapshot and a new snapshot.
+     * @see #analyzeAPKIncrementally(File)
+     */
+    IAPKIncrementalAnalysisResult analyzeAPKIncrementally(File previousSnapshot, IAPKAnalysisListener listener);
+
+    /**
+     * Gets the metrics recorded by the most recent analysis, such as the time spent loading the APK and in each analysis step.
+     *
+     * @return the metrics of the most recent analysis, or null if no analysis has been started.
+     */
+    IAPKAnalysisMetrics getMetrics();
+
+    /**
+     * Releases the decompiled APK, the analyzer must not be used afterwards.
+     */
+    @Override
+    void close();
 
 }
@@ -0,0 +1,38 @@
+package com.tridevmc.fedup.extract.api.apk;
+
+import com.tridevmc.fedup.extract.api.gql.IGQLOperationDiff;
+
+/**
+ * Represents the result of an incremental APK analysis, along with the snapshot to use for the next incremental analysis.
+ */
+public interface IAPKIncrementalAnalysisResult {
+
+    /**
+     * Gets the full result of the analysis, including operations carried over from the previous snapshot.
+     *
+     * @return the analysis result.
+     */
+    IAPKAnalysisResult getResult();
+
+    /**
+     * Gets the differences between the operations in the previous snapshot and this analysis.
+     *
+     * @return the operation diff, everything is reported as added if there was no usable previous snapshot.
+     */
+    IGQLOperationDiff getDiff();
+
+    /**
+     * Checks if only the classes that changed since the previous snapshot were analyzed.
+     *
+     * @return true if the analysis was incremental, false if the whole APK had to be analyzed.
+     */
+    boolean isIncremental();
+
+    /**
+     * Writes the snapshot of this analysis as JSON, to be passed to a later incremental analysis.
+     *
+     * @param out the appendable to write the snapshot to.
+     */
+    void writeSnapshot(Appendable out);
+
+}
@@ -0,0 +1,131 @@
+package com.tridevmc.fedup.extract.api.gql;
+
+import com.google.common.collect.ImmutableList;
+import com.tridevmc.fedup.extract.internal.gql.GQLDocumentParser;
+
+/**
+ * A parsed GQL document, only keeping the parts needed to know what an operation selects.
+ * <p>
+ * Arguments, variables and directives are skipped by the parser, the definitions are still available as text through
+ * the source range of each definition.
+ *
+ * @param operations the operations defined in the document.
+ * @param fragments  the named fragments defined in the document.
+ */
+public record GQLDocument(
+        ImmutableList<Operation> operations,
+        ImmutableList<Fragment> fragments
+) {
+
+    /**
+     * Parses the given GQL document.
+     *
+     * @param source the document to parse.
+     * @return the parsed document.
+     * @throws IllegalArgumentException if the document isn't valid GQL.
+     */
+    public static GQLDocument parse(String source) {
+        return GQLDocumentParser.parse(source);
+    }
+
+    /**
+     * Gets the fragment with the given name.
+     *
+     * @param name the name of the fragment.
+     * @return the fragment, or null if the document doesn't define it.
+     */
+    public Fragment getFragment(String name) {
+        return this.fragments.stream().filter(f -> f.name().equals(name)).findFirst().orElse(null);
+    }
+
+    /**
+     * An operation defined in a document.
+     *
+     * @param type       the type of the operation.
+     * @param name       the name of the operation, or null if it is anonymous.
+     * @param selections the selection set of the operation.
+     * @param start      the offset in the source the definition starts at.
+     * @param end        the offset in the source the definition ends at, exclusive.
+     */
+    public record Operation(
+            GQLOperationType type,
+            String name,
+            ImmutableList<Selection> selections,
+            int start,
+            int end
+    ) {
+
+    }
+
+    /**
+     * A named fragment defined in a document.
+     *
+     * @param name          the name of the fragment.
+     * @param typeCondition the type the fragment applies to.
+     * @param selections    the selection set of the fragment.
+     * @param start         the offset in the source the definition starts at.
+     * @param end           the offset in the source the definition ends at, exclusive.
+     */
+    public record Fragment(
+            String name,
+            String typeCondition,
+            ImmutableList<Selection> selections,
+            int start,
+            int end
+    ) {
+
+    }
+
+    public sealed interface Selection {
+
+    }
+
+    /**
+     * A selected field.
+     *
+     * @param alias      the alias of the field, or null if it has none.
+     * @param name       the name of the field.
+     * @param selections the selection set of the field, empty for leaf fields.
+     */
+    public record Field(
+            String alias,
+            String name,
+            ImmutableList<Selection> selections
+    ) implements Selection {
+
+        /**
+         * Gets the key the field is given in a response, its alias if it has one.
+         *
+         * @return the response key.
+         */
+        public String responseKey() {
+            return this.alias != null ? this.alias : this.name;
+        }
+
+    }
+
+    /**
+     * A spread of a named fragment, e.g. {@code ...PostFragment}.
+     *
+     * @param name the name of the fragment.
+     */
+    public record FragmentSpread(
+            String name
+    ) implements Selection {
+
+    }
+
+    /**
+     * An inline fragment, e.g. {@code ... on Post { title }}.
+     *
+     * @param typeCondition the type the fragment applies to, or null if it applies to any type.
+     * @param selections    the selection set of the fragment.
+     */
+    public record InlineFragment(
+            String typeCondition,
+            ImmutableList<Selection> selections
+    ) implements Selection {
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.tridevmc.fedup.extract.api.gql;
+
+import com.tridevmc.fedup.extract.internal.gql.GQLDocumentParser;
+
+/**
+ * The type of a GQL operation, as given by the keyword its definition starts with.
+ */
+public enum GQLOperationType {
+
+    QUERY("query"),
+    MUTATION("mutation"),
+    SUBSCRIPTION("subscription");
+
+    private final String keyword;
+
+    GQLOperationType(String keyword) {
+        this.keyword = keyword;
+    }
+
+    /**
+     * Gets the keyword used for this type of operation in a GQL document.
+     *
+     * @return the keyword.
+     */
+    public String getKeyword() {
+        return this.keyword;
+    }
+
+    /**
+     * Gets the operation type for the given keyword.
+     *
+     * @param keyword the keyword to look up.
+     * @return the operation type, or null if the keyword isn't an operation type.
+     */
+    public static GQLOperationType fromKeyword(String keyword) {
+        for (var type : values()) {
+            if (type.keyword.equals(keyword)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the type of the first operation in the given GQL document, without parsing the rest of it.
+     *
+     * @param definition the document to read.
+     * @return the operation type, or null if the document has no operations or isn't valid GQL.
+     */
+    public static GQLOperationType fromDefinition(String definition) {
+        return GQLDocumentParser.parseOperationType(definition);
+    }
+
+}
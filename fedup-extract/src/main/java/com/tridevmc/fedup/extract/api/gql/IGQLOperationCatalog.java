@@ -0,0 +1,58 @@
+package com.tridevmc.fedup.extract.api.gql;
+
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.internal.gql.GQLOperationCatalog;
+import com.tridevmc.fedup.extract.internal.gql.GQLOperationCatalogWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A compact binary catalog of the GQL operations of an analysis, read through a memory-mapped file so single operations
+ * can be looked up by ID or name without reading the rest of the catalog.
+ * <p>
+ * Opening a catalog only checks its header, operations are decoded as they are looked up.
+ */
+public interface IGQLOperationCatalog extends IAPKAnalysisResult {
+
+    /**
+     * Writes the operations and OAuth client ID of the given result to a catalog file, replacing it if it already exists.
+     *
+     * @param result the result to write.
+     * @param path   the path of the catalog file.
+     * @throws IOException if the catalog can't be written.
+     */
+    static void write(IAPKAnalysisResult result, Path path) throws IOException {
+        GQLOperationCatalogWriter.write(result, path);
+    }
+
+    /**
+     * Opens the catalog file at the given path.
+     *
+     * @param path the path of the catalog file.
+     * @return the catalog.
+     * @throws IOException if the file can't be read or isn't a catalog.
+     */
+    static IGQLOperationCatalog open(Path path) throws IOException {
+        return GQLOperationCatalog.open(path);
+    }
+
+    /**
+     * Checks if the file at the given path is a catalog, without opening it.
+     *
+     * @param path the path of the file.
+     * @return true if the file starts with the catalog header.
+     * @throws IOException if the file can't be read.
+     */
+    static boolean isCatalog(Path path) throws IOException {
+        return GQLOperationCatalog.isCatalog(path);
+    }
+
+    /**
+     * Gets the number of operations in the catalog.
+     *
+     * @return the number of operations.
+     */
+    int size();
+
+}
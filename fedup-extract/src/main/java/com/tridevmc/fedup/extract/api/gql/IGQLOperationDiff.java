@@ -0,0 +1,40 @@
+package com.tridevmc.fedup.extract.api.gql;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The differences between the GQL operations of two analyses, operations are matched by name.
+ */
+public interface IGQLOperationDiff {
+
+    /**
+     * Gets the operations that are only present in the newer analysis.
+     *
+     * @return an immutable list of the added operations.
+     */
+    ImmutableList<IRedditGQLOperation> getAdded();
+
+    /**
+     * Gets the operations that are only present in the older analysis.
+     *
+     * @return an immutable list of the removed operations.
+     */
+    ImmutableList<IRedditGQLOperation> getRemoved();
+
+    /**
+     * Gets the operations present in both analyses whose ID or definition changed, as they are in the newer analysis.
+     *
+     * @return an immutable list of the changed operations.
+     */
+    ImmutableList<IRedditGQLOperation> getChanged();
+
+    /**
+     * Checks if there are no differences at all.
+     *
+     * @return true if nothing was added, removed or changed.
+     */
+    default boolean isEmpty() {
+        return this.getAdded().isEmpty() && this.getRemoved().isEmpty() && this.getChanged().isEmpty();
+    }
+
+}
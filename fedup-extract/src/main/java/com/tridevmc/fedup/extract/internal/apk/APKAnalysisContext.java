@@ -0,0 +1,242 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.tridevmc.fedup.extract.api.apk.APKAnalysisOptions;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisListener;
+import com.tridevmc.fedup.extract.internal.cache.AnalysisCache;
+import com.tridevmc.fedup.extract.internal.dex.DexFile;
+import com.tridevmc.fedup.extract.internal.metrics.AnalysisMetrics;
+import jadx.api.JadxDecompiler;
+import jadx.core.xmlgen.ResContainer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Shared state for a single analysis run, giving steps access to the decompiler and the results of the steps they depend on.
+ */
+public final class APKAnalysisContext {
+
+    private final APKAnalysisOptions options;
+    private final Supplier<JadxDecompiler> jadx;
+    private final Supplier<List<DexFile>> dexFiles;
+    private final Supplier<List<ResContainer>> resourceTables;
+    private final AnalysisCache.Entry cacheEntry;
+    private final Set<String> classScope;
+    private final IAPKAnalysisListener listener;
+    private final AnalysisMetrics metrics;
+    private final Map<Class<?>, Object> results = new ConcurrentHashMap<>();
+    private final StaticInitializerIndex staticInitializers = new StaticInitializerIndex();
+    private final long startNanos = System.nanoTime();
+    private final Map<Class<?>, Long> stepStartNanos = new ConcurrentHashMap<>();
+    private final Set<Class<?>> cutShortSteps = ConcurrentHashMap.newKeySet();
+    private final Set<String> skippedPhases = ConcurrentHashMap.newKeySet();
+
+    public APKAnalysisContext(APKAnalysisOptions options, Supplier<JadxDecompiler> jadx, AnalysisCache.Entry cacheEntry) {
+        this(options, jadx, () -> {
+            throw new IllegalStateException("No DEX files are available to this context.");
+        }, null, cacheEntry, null, IAPKAnalysisListener.NONE, new AnalysisMetrics("analysis"));
+    }
+
+    /**
+     * Creates a context, the time budget of the analysis starts when the context is created.
+     *
+     * @param resourceTables supplies the decoded resource tables, or null to use the ones jadx loaded from its input files.
+     */
+    public APKAnalysisContext(APKAnalysisOptions options, Supplier<JadxDecompiler> jadx, Supplier<List<DexFile>> dexFiles,
+                              Supplier<List<ResContainer>> resourceTables, AnalysisCache.Entry cacheEntry,
+                              Set<String> classScope, IAPKAnalysisListener listener, AnalysisMetrics metrics) {
+        this.options = options;
+        this.jadx = Suppliers.memoize(jadx::get);
+        this.dexFiles = Suppliers.memoize(dexFiles::get);
+        this.resourceTables = Suppliers.memoize(
+                resourceTables == null ? () -> APKInput.readResourceTablesFromJadx(this.getJadx()) : resourceTables::get
+        );
+        this.cacheEntry = cacheEntry;
+        this.classScope = classScope == null ? null : ImmutableSet.copyOf(classScope);
+        this.listener = listener;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the options the analysis was started with.
+     *
+     * @return the analysis options.
+     */
+    public APKAnalysisOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Gets the decompiler shared by all steps, loading it on first use.
+     *
+     * @return the shared decompiler.
+     */
+    public JadxDecompiler getJadx() {
+        return this.jadx.get();
+    }
+
+    /**
+     * Gets the DEX files of the APK shared by all steps, reading them on first use.
+     *
+     * @return the DEX files of the APK.
+     */
+    public List<DexFile> getDexFiles() {
+        return this.dexFiles.get();
+    }
+
+    /**
+     * Gets the decoded resource tables of the APK shared by all steps, decoding them on first use.
+     *
+     * @return the resource tables, each holding the decoded resource files as sub files.
+     */
+    public List<ResContainer> getResourceTables() {
+        return this.resourceTables.get();
+    }
+
+    /**
+     * Gets the index of static field initializers shared by all steps, classes are added to it as they are queried.
+     *
+     * @return the static initializer index.
+     */
+    public StaticInitializerIndex getStaticInitializers() {
+        return this.staticInitializers;
+    }
+
+    /**
+     * Gets the result of a step that has already completed.
+     *
+     * @param step the type of the step to get the result of.
+     * @param <T>  the type of the result.
+     * @return the result of the step.
+     * @throws IllegalStateException if the step has not completed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getResult(Class<? extends IAPKAnalysisStep<T>> step) {
+        var result = this.results.get(step);
+        if (result == null) {
+            throw new IllegalStateException("No result available for step " + step.getSimpleName());
+        }
+        return (T) result;
+    }
+
+    /**
+     * Gets the result of a step if it produced one, steps that ran out of time may have left a partial result or none.
+     *
+     * @param step the type of the step to get the result of.
+     * @param <T>  the type of the result.
+     * @return the result of the step, or empty if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> findResult(Class<? extends IAPKAnalysisStep<T>> step) {
+        return Optional.ofNullable((T) this.results.get(step));
+    }
+
+    /**
+     * Stops the given step if it or the analysis as a whole ran out of time. Steps call this between units of work, such
+     * as every class they scan, so a step never runs much longer than its budget.
+     *
+     * @param step the step checking its budget.
+     * @throws APKAnalysisTimeoutException if the step has no time left.
+     */
+    public void checkTimeBudget(IAPKAnalysisStep<?> step) {
+        var now = System.nanoTime();
+        var timeBudgetMillis = this.options.getTimeBudgetMillis();
+        if (timeBudgetMillis > 0 && now - this.startNanos > TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis)) {
+            throw new APKAnalysisTimeoutException(APKAnalysisStepScheduler.getPhaseName(step),
+                                                  "The analysis ran out of its time budget of " + timeBudgetMillis + " ms during " + step.getName() + ".");
+        }
+        var stepTimeBudgetMillis = this.options.getStepTimeBudgetMillis();
+        var stepStartNanos = this.stepStartNanos.get(step.getClass());
+        if (stepTimeBudgetMillis > 0 && stepStartNanos != null && now - stepStartNanos > TimeUnit.MILLISECONDS.toNanos(stepTimeBudgetMillis)) {
+            throw new APKAnalysisTimeoutException(APKAnalysisStepScheduler.getPhaseName(step),
+                                                  step.getName() + " ran out of its time budget of " + stepTimeBudgetMillis + " ms.");
+        }
+    }
+
+    /**
+     * Checks if the analysis as a whole has run out of time, steps that haven't started by then are skipped.
+     *
+     * @return true if the time budget of the analysis has run out.
+     */
+    public boolean isOutOfTime() {
+        var timeBudgetMillis = this.options.getTimeBudgetMillis();
+        return timeBudgetMillis > 0 && System.nanoTime() - this.startNanos > TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+    }
+
+    /**
+     * Gets the phases of the steps that ran out of time or were skipped, along with everything depending on them.
+     *
+     * @return the skipped phases in name order, empty if the analysis completed.
+     */
+    public ImmutableSortedSet<String> getSkippedPhases() {
+        return ImmutableSortedSet.copyOf(this.skippedPhases);
+    }
+
+    /**
+     * Checks if the given step ran out of time or was skipped, in which case its result is partial or missing.
+     *
+     * @param step the type of the step.
+     * @return true if the step didn't complete.
+     */
+    public boolean isCutShort(Class<?> step) {
+        return this.cutShortSteps.contains(step);
+    }
+
+    /**
+     * Gets the cache entry for the APK being analyzed.
+     *
+     * @return the cache entry, or empty if caching is disabled.
+     */
+    public Optional<AnalysisCache.Entry> getCacheEntry() {
+        return Optional.ofNullable(this.cacheEntry);
+    }
+
+    /**
+     * Gets the raw names of the classes code steps should limit themselves to, set when re-analyzing only the classes that changed since a previous snapshot.
+     *
+     * @return the classes in scope, or empty if every class should be analyzed.
+     */
+    public Optional<Set<String>> getClassScope() {
+        return Optional.ofNullable(this.classScope);
+    }
+
+    /**
+     * Gets the listener steps should report their findings to as they are found.
+     *
+     * @return the analysis listener.
+     */
+    public IAPKAnalysisListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * Gets the metrics of the analysis, steps record their counters under the phase named after them.
+     *
+     * @return the analysis metrics.
+     */
+    public AnalysisMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    void putResult(Class<?> step, Object result) {
+        this.results.put(step, result);
+    }
+
+    void startStep(IAPKAnalysisStep<?> step) {
+        this.stepStartNanos.put(step.getClass(), System.nanoTime());
+    }
+
+    void cutShort(IAPKAnalysisStep<?> step) {
+        this.cutShortSteps.add(step.getClass());
+        this.skippedPhases.add(APKAnalysisStepScheduler.getPhaseName(step));
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+/**
+ * The formats an {@link APKAnalysisResultWriter} can write results in.
+ */
+public enum APKAnalysisOutputFormat {
+
+    /**
+     * A single JSON object holding every operation and the OAuth client ID, the same layout {@link APKAnalysisResultJson} reads.
+     */
+    JSON,
+
+    /**
+     * The same layout as {@link #JSON}, but with every distinct fragment written once in a shared list and each definition
+     * written as a list of its own text and the indices of the fragments it includes.
+     */
+    NORMALIZED_JSON,
+
+    /**
+     * Newline delimited JSON, one operation object per line followed by a final line holding the OAuth client ID.
+     */
+    NDJSON
+
+}
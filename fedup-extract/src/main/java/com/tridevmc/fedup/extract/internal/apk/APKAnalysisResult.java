@@ -1,22 +1,118 @@
 package com.tridevmc.fedup.extract.internal.apk;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.gql.GQLOperationType;
 import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.gql.GQLDocumentParser;
+import com.tridevmc.fedup.extract.internal.gql.RedditGQLOperation;
 
-public record APKAnalysisResult(
-        ImmutableList<IRedditGQLOperation> gqlOperations,
-        String oAuthClientId
-) implements IAPKAnalysisResult {
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The result of an analysis, with its operations indexed by ID, name and type when it's created so lookups don't
+ * depend on how many operations it holds.
+ * <p>
+ * Operations found more than once are only kept the first time, and equal strings are shared between the operations
+ * that are kept, so a definition repeated under several IDs is only held in memory once.
+ */
+public final class APKAnalysisResult implements IAPKAnalysisResult {
+
+    private final ImmutableList<IRedditGQLOperation> gqlOperations;
+    private final ImmutableMap<String, IRedditGQLOperation> gqlOperationsById;
+    private final ImmutableMap<String, IRedditGQLOperation> gqlOperationsByName;
+    private final ImmutableListMultimap<GQLOperationType, IRedditGQLOperation> gqlOperationsByType;
+    private final String oAuthClientId;
+    private final ImmutableSet<String> skippedPhases;
+
+    public APKAnalysisResult(List<? extends IRedditGQLOperation> gqlOperations, String oAuthClientId) {
+        this(gqlOperations, oAuthClientId, Set.of());
+    }
+
+    public APKAnalysisResult(List<? extends IRedditGQLOperation> gqlOperations, String oAuthClientId, Set<String> skippedPhases) {
+        // Only lives as long as the constructor, the strings stay shared through the operations that hold them.
+        var strings = new HashMap<String, String>();
+        var distinctOperations = new LinkedHashSet<RedditGQLOperation>();
+        for (var operation : gqlOperations) {
+            distinctOperations.add(new RedditGQLOperation(
+                    intern(strings, operation.getId()),
+                    intern(strings, operation.getName()),
+                    intern(strings, operation.getDefinition())
+            ));
+        }
+
+        var byId = new HashMap<String, IRedditGQLOperation>();
+        var byName = new HashMap<String, IRedditGQLOperation>();
+        var byType = ImmutableListMultimap.<GQLOperationType, IRedditGQLOperation>builder();
+        // Keyed by the interned definition, so a definition shared by several operations is only scanned once.
+        var definitionTypes = new HashMap<String, GQLOperationType>();
+        for (var operation : distinctOperations) {
+            if (operation.id() != null) {
+                byId.putIfAbsent(operation.id(), operation);
+            }
+            if (operation.name() != null) {
+                byName.putIfAbsent(operation.name(), operation);
+            }
+            if (operation.definition() != null) {
+                var type = definitionTypes.computeIfAbsent(operation.definition(), GQLDocumentParser::parseOperationType);
+                if (type != null) {
+                    byType.put(type, operation);
+                }
+            }
+        }
+        this.gqlOperations = ImmutableList.copyOf(distinctOperations);
+        this.gqlOperationsById = ImmutableMap.copyOf(byId);
+        this.gqlOperationsByName = ImmutableMap.copyOf(byName);
+        this.gqlOperationsByType = byType.build();
+        this.oAuthClientId = oAuthClientId;
+        this.skippedPhases = ImmutableSet.copyOf(skippedPhases);
+    }
+
+    private static String intern(Map<String, String> strings, String value) {
+        return value == null ? null : strings.computeIfAbsent(value, v -> v);
+    }
 
     @Override
     public ImmutableList<IRedditGQLOperation> getGQLOperations() {
         return this.gqlOperations;
     }
 
+    @Override
+    public ImmutableList<IRedditGQLOperation> getGQLOperations(GQLOperationType type) {
+        return this.gqlOperationsByType.get(type);
+    }
+
+    /**
+     * Gets the operation with the given name, the first one found if several operations share it.
+     *
+     * @param name the name of the operation.
+     * @return the operation, or null if there is no operation with the given name.
+     */
+    @Override
+    public IRedditGQLOperation getByName(String name) {
+        return this.gqlOperationsByName.get(name);
+    }
+
+    @Override
+    public IRedditGQLOperation getById(String id) {
+        return this.gqlOperationsById.get(id);
+    }
+
     @Override
     public String getRawOAuthClientId() {
         return this.oAuthClientId;
     }
 
+    @Override
+    public ImmutableSet<String> getSkippedPhases() {
+        return this.skippedPhases;
+    }
+
 }
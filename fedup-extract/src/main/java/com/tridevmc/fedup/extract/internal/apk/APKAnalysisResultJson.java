@@ -0,0 +1,102 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.gql.GQLFragmentInterner;
+import com.tridevmc.fedup.extract.internal.gql.RedditGQLOperation;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * Reads and writes {@link IAPKAnalysisResult}s in the same JSON layout the extract command outputs.
+ * <p>
+ * Results written in the normalized layout can be read too, their definitions are rebuilt from the shared fragments.
+ */
+public final class APKAnalysisResultJson {
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private APKAnalysisResultJson() {
+    }
+
+    /**
+     * Writes the given result as JSON.
+     *
+     * @param result the result to write.
+     * @param out    the appendable to write the JSON to.
+     */
+    public static void write(IAPKAnalysisResult result, Appendable out) {
+        var json = new JsonObject();
+        var operations = GSON.toJsonTree(result.getGQLOperations().stream().map(
+                o -> new RedditGQLOperation(o.getId(), o.getName(), o.getDefinition())
+        ).toList());
+        json.add("gqlOperations", operations);
+        json.addProperty("oAuthClientId", result.getRawOAuthClientId());
+        if (result.isPartial()) {
+            json.addProperty("partial", true);
+            json.add("skippedPhases", GSON.toJsonTree(result.getSkippedPhases()));
+        }
+        GSON.toJson(json, out);
+    }
+
+    /**
+     * Reads a result previously written with {@link #write(IAPKAnalysisResult, Appendable)}.
+     *
+     * @param in the reader to read the JSON from.
+     * @return the result that was read.
+     * @throws JsonParseException if the JSON is malformed or isn't a result.
+     */
+    public static IAPKAnalysisResult read(Reader in) {
+        var element = JsonParser.parseReader(in);
+        if (!element.isJsonObject() || !element.getAsJsonObject().has("gqlOperations")) {
+            throw new JsonParseException("The JSON isn't an analysis result, it has no GQL operations.");
+        }
+        var json = element.getAsJsonObject();
+        var fragments = new ArrayList<String>();
+        if (json.has("gqlFragments")) {
+            json.getAsJsonArray("gqlFragments").forEach(f -> fragments.add(f.getAsString()));
+        }
+        var operations = ImmutableList.<IRedditGQLOperation>builder();
+        for (var operation : json.getAsJsonArray("gqlOperations")) {
+            var definition = operation.getAsJsonObject().get("definition");
+            if (definition != null && definition.isJsonArray()) {
+                var object = operation.getAsJsonObject();
+                operations.add(new RedditGQLOperation(
+                        object.get("id").getAsString(),
+                        object.get("name").getAsString(),
+                        GQLFragmentInterner.denormalize(readNormalizedDefinition(definition.getAsJsonArray()), fragments)
+                ));
+            } else {
+                operations.add(GSON.fromJson(operation, RedditGQLOperation.class));
+            }
+        }
+        var oAuthClientId = json.has("oAuthClientId") && !json.get("oAuthClientId").isJsonNull() ? json.get("oAuthClientId").getAsString() : null;
+        var skippedPhases = new ArrayList<String>();
+        if (json.has("skippedPhases")) {
+            json.getAsJsonArray("skippedPhases").forEach(p -> skippedPhases.add(p.getAsString()));
+        }
+        return new APKAnalysisResult(operations.build(), oAuthClientId, new LinkedHashSet<>(skippedPhases));
+    }
+
+    private static GQLFragmentInterner.NormalizedDefinition readNormalizedDefinition(JsonArray json) {
+        var parts = ImmutableList.<GQLFragmentInterner.Part>builder();
+        for (var part : json) {
+            if (part.getAsJsonPrimitive().isNumber()) {
+                parts.add(new GQLFragmentInterner.FragmentReference(part.getAsInt()));
+            } else {
+                parts.add(new GQLFragmentInterner.Text(part.getAsString()));
+            }
+        }
+        return new GQLFragmentInterner.NormalizedDefinition(parts.build());
+    }
+
+}
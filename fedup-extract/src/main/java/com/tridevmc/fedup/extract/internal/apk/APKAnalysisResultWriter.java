@@ -0,0 +1,151 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.gson.stream.JsonWriter;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisListener;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.gql.GQLFragmentInterner;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Streams an analysis result to a writer as the operations are found, so the output never has to be held in memory as a whole.
+ * <p>
+ * Pass the writer as the listener of an analysis, then call {@link #finish(IAPKAnalysisResult)} with the result once it completes.
+ */
+public class APKAnalysisResultWriter implements IAPKAnalysisListener, Closeable {
+
+    private static final TaggedLogger LOG = Logger.tag("fedup-extract");
+
+    private final Writer out;
+    private final JsonWriter json;
+    private final APKAnalysisOutputFormat format;
+    private final GQLFragmentInterner fragmentInterner;
+    private boolean finished;
+
+    public APKAnalysisResultWriter(Writer out, APKAnalysisOutputFormat format, boolean pretty) {
+        this.out = out;
+        this.format = format;
+        this.fragmentInterner = format == APKAnalysisOutputFormat.NORMALIZED_JSON ? new GQLFragmentInterner() : null;
+        this.json = new JsonWriter(out);
+        // Null values are left out entirely, matching what Gson does by default.
+        this.json.setSerializeNulls(false);
+        if (format == APKAnalysisOutputFormat.NDJSON) {
+            // Every line is its own top-level value, which a strict writer refuses to write.
+            this.json.setLenient(true);
+        } else {
+            if (pretty) {
+                this.json.setIndent("  ");
+            }
+            try {
+                this.json.beginObject();
+                this.json.name("gqlOperations");
+                this.json.beginArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onGQLOperation(IRedditGQLOperation operation) {
+        try {
+            this.json.beginObject();
+            this.json.name("id").value(operation.getId());
+            this.json.name("name").value(operation.getName());
+            this.json.name("definition");
+            if (this.fragmentInterner != null) {
+                this.writeNormalizedDefinition(this.fragmentInterner.normalize(operation.getDefinition()));
+            } else {
+                this.json.value(operation.getDefinition());
+            }
+            this.json.endObject();
+            if (this.format == APKAnalysisOutputFormat.NDJSON) {
+                this.out.write('\n');
+                // Flush every line so downstream tools can start on it straight away.
+                this.out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeNormalizedDefinition(GQLFragmentInterner.NormalizedDefinition definition) throws IOException {
+        this.json.beginArray();
+        for (var part : definition.parts()) {
+            if (part instanceof GQLFragmentInterner.Text text) {
+                this.json.value(text.text());
+            } else if (part instanceof GQLFragmentInterner.FragmentReference reference) {
+                this.json.value(reference.index());
+            }
+        }
+        this.json.endArray();
+    }
+
+    /**
+     * Writes the rest of the result and flushes the output, every operation must already have been passed to {@link #onGQLOperation(IRedditGQLOperation)}.
+     *
+     * @param result the completed result.
+     * @throws IOException if the output can't be written.
+     */
+    public synchronized void finish(IAPKAnalysisResult result) throws IOException {
+        if (this.format == APKAnalysisOutputFormat.NDJSON) {
+            this.json.beginObject();
+            this.json.name("oAuthClientId").value(result.getRawOAuthClientId());
+            this.writePartial(result);
+            this.json.endObject();
+            this.out.write('\n');
+        } else {
+            this.json.endArray();
+            if (this.fragmentInterner != null) {
+                // Fragments go after the operations, as they're only known once every operation has been seen.
+                this.json.name("gqlFragments");
+                this.json.beginArray();
+                for (var fragment : this.fragmentInterner.getFragments()) {
+                    this.json.value(fragment);
+                }
+                this.json.endArray();
+                var originalLength = this.fragmentInterner.getOriginalLength();
+                var normalizedLength = this.fragmentInterner.getNormalizedLength();
+                LOG.info("Interned {} fragments, definitions shrank from {} to {} characters ({}% smaller).",
+                        this.fragmentInterner.getFragments().size(), originalLength, normalizedLength,
+                        originalLength == 0 ? 0 : (originalLength - normalizedLength) * 100 / originalLength);
+            }
+            this.json.name("oAuthClientId").value(result.getRawOAuthClientId());
+            this.writePartial(result);
+            this.json.endObject();
+            this.out.write('\n');
+        }
+        this.finished = true;
+        this.json.flush();
+    }
+
+    private void writePartial(IAPKAnalysisResult result) throws IOException {
+        // Left out of complete results, so their output is the same as before time budgets existed.
+        if (result.isPartial()) {
+            this.json.name("partial").value(true);
+            this.json.name("skippedPhases");
+            this.json.beginArray();
+            for (var phase : result.getSkippedPhases()) {
+                this.json.value(phase);
+            }
+            this.json.endArray();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.finished) {
+            this.json.close();
+        } else {
+            // The JSON writer refuses to close an incomplete document, which would hide whatever stopped the analysis.
+            this.out.close();
+        }
+    }
+
+}
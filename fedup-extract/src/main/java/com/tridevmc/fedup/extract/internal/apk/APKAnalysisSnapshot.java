@@ -0,0 +1,72 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.tridevmc.fedup.extract.api.apk.APKAnalysisOptions;
+import com.tridevmc.fedup.extract.api.apk.AnalysisEngine;
+import com.tridevmc.fedup.extract.internal.cache.AnalysisCache;
+import com.tridevmc.fedup.extract.internal.gql.LocatedGQLOperation;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything needed to re-analyze a later build of an APK incrementally, the fingerprint of every class and where each
+ * operation was found.
+ *
+ * @param extractorVersion  the version of the extractor that created the snapshot, snapshots from other versions are not reused.
+ * @param includedPackages  the packages the analysis was limited to.
+ * @param excludedPackages  the packages the analysis skipped.
+ * @param engine            the engine the operations were found with, operations found by another engine are not reused.
+ * @param classFingerprints the fingerprint of every class in the APK, keyed by raw class name.
+ * @param gqlOperations     the operations found in the APK along with the classes they were found in.
+ * @param oAuthClientId     the raw OAuth client ID found in the APK.
+ */
+public record APKAnalysisSnapshot(
+        String extractorVersion,
+        List<String> includedPackages,
+        List<String> excludedPackages,
+        AnalysisEngine engine,
+        Map<String, String> classFingerprints,
+        List<LocatedGQLOperation> gqlOperations,
+        String oAuthClientId
+) {
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    /**
+     * Reads a snapshot previously written with {@link #write(Appendable)}.
+     *
+     * @param in the reader to read the JSON from.
+     * @return the snapshot that was read.
+     */
+    public static APKAnalysisSnapshot read(Reader in) {
+        return GSON.fromJson(in, APKAnalysisSnapshot.class);
+    }
+
+    /**
+     * Writes this snapshot as JSON.
+     *
+     * @param out the appendable to write the JSON to.
+     */
+    public void write(Appendable out) {
+        GSON.toJson(this, out);
+    }
+
+    /**
+     * Checks if this snapshot can be used as the base of an incremental analysis with the given options.
+     *
+     * @param options the options of the new analysis.
+     * @return true if the snapshot was created by this extractor version with the same package filters and engine.
+     */
+    public boolean isCompatibleWith(APKAnalysisOptions options) {
+        return AnalysisCache.getExtractorVersion().equals(this.extractorVersion)
+                && options.getIncludedPackages().equals(this.includedPackages)
+                && options.getExcludedPackages().equals(this.excludedPackages)
+                && options.getEngine() == this.engine
+                && this.classFingerprints != null
+                && this.gqlOperations != null;
+    }
+
+}
@@ -0,0 +1,321 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.gson.reflect.TypeToken;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisStepGQLOperations.ArgumentSet;
+import com.tridevmc.fedup.extract.internal.dex.DexFile;
+import com.tridevmc.fedup.extract.internal.dex.DexOpcodes;
+import com.tridevmc.fedup.extract.internal.dex.DexStaticInitializers;
+import com.tridevmc.fedup.extract.internal.dex.DexStaticInitializers.StaticFieldInitializer;
+import com.tridevmc.fedup.extract.internal.gql.LocatedGQLOperation;
+import com.tridevmc.fedup.extract.internal.gql.RedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.metrics.AnalysisPhaseMetrics;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Finds GQL operations by reading the DEX files directly instead of decompiling them with jadx, resolving the same
+ * three constructor patterns as {@link APKAnalysisStepGQLOperations}.
+ * <p>
+ * Only class signatures, the string constants in constructors and the constructor calls in static initializers are
+ * read, which is all the patterns need, so no code is ever loaded into jadx.
+ */
+public class APKAnalysisStepDexGQLOperations implements IAPKAnalysisStep<List<LocatedGQLOperation>> {
+
+    private static final TaggedLogger LOG = Logger.tag(APKAnalyzer.class.getCanonicalName());
+
+    private static final String STRING_DESCRIPTOR = "Ljava/lang/String;";
+    private static final int ACC_FINAL = 0x10;
+
+    private final boolean reportOperations;
+
+    public APKAnalysisStepDexGQLOperations() {
+        this(true);
+    }
+
+    /**
+     * Creates the step.
+     *
+     * @param reportOperations false to keep operations from the listener, for when the step only runs so it can be cross-checked against jadx.
+     */
+    public APKAnalysisStepDexGQLOperations(boolean reportOperations) {
+        this.reportOperations = reportOperations;
+    }
+
+    @Override
+    public List<LocatedGQLOperation> perform(APKAnalysisContext context) {
+        if (context.getClassScope().map(Set::isEmpty).orElse(false)) {
+            // Nothing changed since the previous snapshot, so there's no need to read the DEX files at all.
+            return List.of();
+        }
+        // Parallel streams run in the pool they're started from, so scanning within this pool limits it to the configured thread count.
+        var pool = new ForkJoinPool(context.getOptions().getThreads(), this.getPhase(context).trackingWorkerThreadFactory(), null, false);
+        var operations = new ArrayList<LocatedGQLOperation>();
+        APKAnalysisTimeoutException timeout;
+        try {
+            pool.submit(() -> this.findGQLOperations(context, operations)).join();
+            return operations;
+        } catch (APKAnalysisTimeoutException e) {
+            timeout = e;
+        } finally {
+            pool.shutdown();
+            try {
+                // The pool's threads only add what they did to the metrics as they terminate.
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Operations are added in class order, so what was found before running out of time is a prefix of the full result.
+        throw timeout.withPartialResult(List.copyOf(operations));
+    }
+
+    @Override
+    public Set<APKModelPart> getModelParts() {
+        return Set.of(APKModelPart.DEX_CODE);
+    }
+
+    @Override
+    public Type getResultType() {
+        return new TypeToken<List<LocatedGQLOperation>>() {
+        }.getType();
+    }
+
+    @Override
+    public void replay(List<LocatedGQLOperation> result, APKAnalysisContext context) {
+        if (this.reportOperations) {
+            result.forEach(o -> context.getListener().onGQLOperation(o.operation()));
+        }
+    }
+
+    private AnalysisPhaseMetrics getPhase(APKAnalysisContext context) {
+        return context.getMetrics().getPhase(APKAnalysisStepScheduler.getPhaseName(this));
+    }
+
+    private void findGQLOperations(APKAnalysisContext context, List<LocatedGQLOperation> operations) {
+        var options = context.getOptions();
+        var classScope = context.getClassScope();
+        var phase = this.getPhase(context);
+        var classes = this.getClasses(context.getDexFiles()).stream().filter(
+                c -> options.isClassIncluded(c.classDef().getClassName())
+        ).toList();
+
+        // Candidates are sorted by full name with inner classes separated by a dot, which is the order jadx lists classes
+        // in, so both engines report operations in the same order.
+        var candidates = classes.parallelStream().filter(
+                c -> classScope.map(scope -> scope.contains(c.classDef().getClassName())).orElse(true)
+        ).peek(
+                c -> context.checkTimeBudget(this)
+        ).peek(
+                c -> phase.count("classesVisited")
+        ).filter(
+                c -> this.isPotentialRedditGQLOperationClass(c.classDef())
+        ).peek(
+                c -> phase.count("candidateClasses")
+        ).sorted(
+                Comparator.comparing(c -> c.classDef().getClassName().replace('$', '.'))
+        ).toList();
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        // Only calls to the constructors of candidates are kept, constant holders are found anywhere the package filters allow just like jadx.
+        var candidateDescriptors = candidates.stream().map(c -> c.classDef().descriptor()).collect(Collectors.toSet());
+        Map<DexFile.MethodRef, List<StaticFieldInitializer>> initializersByConstructor = classes.parallelStream().peek(
+                c -> context.checkTimeBudget(this)
+        ).flatMap(
+                c -> DexStaticInitializers.scan(c.dexFile(), c.classDef()).stream()
+        ).filter(
+                i -> candidateDescriptors.contains(i.fieldType())
+        ).collect(Collectors.groupingBy(StaticFieldInitializer::constructor));
+
+        var listener = context.getListener();
+        candidates.parallelStream().peek(
+                c -> context.checkTimeBudget(this)
+        ).flatMap(
+                c -> c.classDef().methods().stream().filter(
+                        m -> m.ref().isConstructor()
+                ).flatMap(
+                        constructor -> this.getArgumentSetsForConstructor(context, c, constructor, initializersByConstructor).stream()
+                ).map(
+                        a -> new LocatedGQLOperation(
+                                c.classDef().getClassName(),
+                                a.sourceClass(),
+                                new RedditGQLOperation(a.arg0(), a.arg1(), a.arg2())
+                        )
+                )
+        ).forEachOrdered(o -> {
+            if (this.reportOperations) {
+                listener.onGQLOperation(o.operation());
+            }
+            operations.add(o);
+        });
+    }
+
+    /**
+     * Lists the classes of every DEX file, a class defined more than once is only listed the first time like on device.
+     *
+     * @param dexFiles the DEX files to list the classes of.
+     * @return the classes.
+     */
+    private List<DexClass> getClasses(List<DexFile> dexFiles) {
+        var seen = new HashSet<String>();
+        var classes = new ArrayList<DexClass>();
+        for (var dexFile : dexFiles) {
+            for (var classDef : dexFile.getClassDefs()) {
+                if (seen.add(classDef.descriptor())) {
+                    classes.add(new DexClass(dexFile, classDef));
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Checks if the given class has 3 final string fields and a constructor that takes 3 strings, like a RedditGQLOperation.
+     *
+     * @param classDef the class to check.
+     * @return true if the class looks like a RedditGQLOperation, false otherwise.
+     */
+    private boolean isPotentialRedditGQLOperationClass(DexFile.ClassDef classDef) {
+        var fields = classDef.fields();
+        if (fields.size() != 3) {
+            return false;
+        }
+        for (var field : fields) {
+            if ((field.accessFlags() & ACC_FINAL) == 0 || !field.ref().typeDescriptor().equals(STRING_DESCRIPTOR)) {
+                return false;
+            }
+        }
+        return classDef.methods().stream().anyMatch(
+                m -> m.ref().isConstructor() && m.ref().parameterDescriptors().size() == 3
+                        && m.ref().parameterDescriptors().stream().allMatch(STRING_DESCRIPTOR::equals)
+        );
+    }
+
+    private List<ArgumentSet> getArgumentSetsForConstructor(APKAnalysisContext context, DexClass dexClass, DexFile.Method constructor,
+                                                            Map<DexFile.MethodRef, List<StaticFieldInitializer>> initializersByConstructor) {
+        var phase = this.getPhase(context);
+        var parameters = constructor.ref().parameterDescriptors();
+        var stringParameters = parameters.stream().filter(STRING_DESCRIPTOR::equals).count();
+        var initializers = initializersByConstructor.getOrDefault(constructor.ref(), List.of());
+        List<ArgumentSet> argumentSets;
+        String strategy;
+        if (parameters.size() == 3 && stringParameters == 3) {
+            strategy = "dataClassStyle";
+            argumentSets = this.getArgumentSetsForDataClassStyleConstructor(initializers);
+        } else if (parameters.isEmpty()) {
+            strategy = "noArg";
+            var argumentSet = this.getArgumentSetForNoArgConstructor(dexClass, constructor);
+            if (argumentSet == null) {
+                phase.count("rejectedArgumentSets.noArg");
+            }
+            argumentSets = argumentSet == null ? List.of() : List.of(argumentSet);
+        } else if (stringParameters >= 3) {
+            strategy = "string";
+            argumentSets = this.getArgumentSetsForStringConstructor(constructor, initializers, phase);
+        } else {
+            LOG.debug("Found unknown constructor: " + constructor.ref());
+            phase.count("constructors.unknown");
+            return List.of();
+        }
+        phase.count("constructors." + strategy);
+        phase.count("argumentSets." + strategy, argumentSets.size());
+        return argumentSets;
+    }
+
+    /**
+     * Gets the constants passed to a constructor taking the operation id, name and definition in that order.
+     *
+     * @param initializers the static fields initialized with a call to the constructor.
+     * @return the argument sets found, calls passing anything other than string constants are skipped.
+     */
+    private List<ArgumentSet> getArgumentSetsForDataClassStyleConstructor(List<StaticFieldInitializer> initializers) {
+        return initializers.stream().filter(
+                i -> i.args().stream().allMatch(Objects::nonNull)
+        ).map(
+                // Line breaks escaped in the definition are removed, the same as the jadx engine does.
+                i -> new ArgumentSet(i.args().get(0), i.args().get(1), i.args().get(2).replace("\\n", ""), i.holderClass())
+        ).toList();
+    }
+
+    /**
+     * Picks the operation id, name and definition out of the constants passed to a constructor taking at least three strings.
+     *
+     * @param constructor  the constructor.
+     * @param initializers the static fields initialized with a call to the constructor.
+     * @param phase        the metrics phase to count rejected calls under.
+     * @return the argument sets found.
+     */
+    private List<ArgumentSet> getArgumentSetsForStringConstructor(DexFile.Method constructor, List<StaticFieldInitializer> initializers,
+                                                                  AnalysisPhaseMetrics phase) {
+        var parameters = constructor.ref().parameterDescriptors();
+        var argumentSets = new ArrayList<ArgumentSet>();
+        for (var initializer : initializers) {
+            var stringArgs = new ArrayList<String>();
+            // Arguments are given per register, and long and double parameters take up two registers each.
+            var register = 0;
+            for (var parameter : parameters) {
+                if (parameter.equals(STRING_DESCRIPTOR) && register < initializer.args().size() && initializer.args().get(register) != null) {
+                    stringArgs.add(initializer.args().get(register));
+                }
+                register += isWide(parameter) ? 2 : 1;
+            }
+            var argumentSet = APKAnalysisStepGQLOperations.findStringConstructorArgumentSet(stringArgs, initializer.holderClass());
+            if (argumentSet == null) {
+                LOG.debug("Unknown constructor: " + constructor.ref());
+                phase.count("rejectedArgumentSets.string");
+            } else {
+                argumentSets.add(argumentSet);
+            }
+        }
+        return argumentSets;
+    }
+
+    private static boolean isWide(String typeDescriptor) {
+        return typeDescriptor.equals("J") || typeDescriptor.equals("D");
+    }
+
+    /**
+     * Gets the string constants a no-arg constructor assigns to the fields of its class, expecting exactly three.
+     *
+     * @param dexClass    the class declaring the constructor.
+     * @param constructor the constructor.
+     * @return the argument set, or null if the constructor doesn't load exactly three string constants.
+     */
+    private ArgumentSet getArgumentSetForNoArgConstructor(DexClass dexClass, DexFile.Method constructor) {
+        var insns = dexClass.dexFile().getInstructions(constructor.codeOffset());
+        var constStrings = new ArrayList<String>();
+        for (int pos = 0; pos < insns.length; pos += DexOpcodes.getSize(insns, pos)) {
+            var opcode = insns[pos] & 0xff;
+            if (opcode == DexOpcodes.CONST_STRING || opcode == DexOpcodes.CONST_STRING_JUMBO) {
+                constStrings.add(dexClass.dexFile().getString(DexOpcodes.getIndex(insns, pos)));
+            }
+        }
+        if (constStrings.size() != 3) {
+            LOG.debug("Unknown constructor: " + constructor.ref());
+            LOG.debug("Const strings: " + constStrings);
+            return null;
+        }
+        return new ArgumentSet(constStrings.get(0), constStrings.get(1), constStrings.get(2), dexClass.classDef().getClassName());
+    }
+
+    /**
+     * A class along with the DEX file it's defined in, which its constant pool references are resolved against.
+     */
+    private record DexClass(DexFile dexFile, DexFile.ClassDef classDef) {
+
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.common.collect.HashMultiset;
+import com.tridevmc.fedup.extract.internal.gql.LocatedGQLOperation;
+import com.tridevmc.fedup.extract.internal.strings.StringRule;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares the operations found by the jadx engine with the operations found by the DEX engine, reporting every
+ * operation only one of them found.
+ * <p>
+ * Also counts the string constants in the APK that look like operation definitions but that neither engine resolved an
+ * operation from, which points at operation patterns neither engine knows about.
+ */
+public class APKAnalysisStepGQLEngineCrossCheck implements IAPKAnalysisStep<APKAnalysisStepGQLEngineCrossCheck.Result> {
+
+    private static final TaggedLogger LOG = Logger.tag(APKAnalyzer.class.getCanonicalName());
+
+    // Differences past this many are only logged at debug level, a systematic difference would otherwise flood the log.
+    private static final int MAX_REPORTED_DIFFERENCES = 20;
+
+    private static final StringRule OPERATION_DEFINITION_CONSTANT = StringRule.startingWith("operationDefinitionConstant", "query ", "mutation ");
+
+    @Override
+    public Result perform(APKAnalysisContext context) {
+        var jadxOperations = context.getResult(APKAnalysisStepGQLOperations.class);
+        var dexOperations = context.getResult(APKAnalysisStepDexGQLOperations.class);
+        // Compared as multisets, the engines may list operations in a different order and an operation found twice by
+        // one engine should be found twice by the other.
+        var unmatchedDexOperations = HashMultiset.create(dexOperations);
+        var jadxOnly = new ArrayList<LocatedGQLOperation>();
+        for (var operation : jadxOperations) {
+            if (!unmatchedDexOperations.remove(operation)) {
+                jadxOnly.add(operation);
+            }
+        }
+        var dexOnly = dexOperations.stream().filter(o -> unmatchedDexOperations.remove(o)).toList();
+        var resolvedDefinitions = new HashSet<String>();
+        jadxOperations.forEach(o -> resolvedDefinitions.add(o.operation().definition()));
+        dexOperations.forEach(o -> resolvedDefinitions.add(o.operation().definition()));
+        // Data class style definitions have escaped newlines removed before they're reported.
+        var unresolvedDefinitions = APKAnalysisStepStringConstants.getMatches(context, OPERATION_DEFINITION_CONSTANT).stream().filter(
+                c -> !resolvedDefinitions.contains(c.value()) && !resolvedDefinitions.contains(c.value().replace("\\n", ""))
+        ).peek(
+                c -> LOG.debug("No operation resolved from the definition in {}: {}", c.sourceClass(), c.value().lines().findFirst().orElse(""))
+        ).count();
+        var result = new Result(jadxOperations.size() - jadxOnly.size(), jadxOnly, dexOnly, (int) unresolvedDefinitions);
+
+        var phase = context.getMetrics().getPhase(APKAnalysisStepScheduler.getPhaseName(this));
+        phase.count("matched", result.matched());
+        phase.count("jadxOnly", jadxOnly.size());
+        phase.count("dexOnly", dexOnly.size());
+        phase.count("unresolvedDefinitions", unresolvedDefinitions);
+        this.report(result);
+        return result;
+    }
+
+    @Override
+    public void replay(Result result, APKAnalysisContext context) {
+        this.report(result);
+    }
+
+    private void report(Result result) {
+        if (result.unresolvedDefinitions() > 0) {
+            LOG.warn("{} string constants look like operation definitions but neither engine resolved an operation from them.",
+                     result.unresolvedDefinitions());
+        }
+        if (result.isConsistent()) {
+            LOG.info("Cross-check passed, both engines found the same {} operations.", result.matched());
+            return;
+        }
+        LOG.warn("Cross-check failed, {} operations matched, {} were only found by jadx and {} only by the DEX engine.",
+                 result.matched(), result.jadxOnly().size(), result.dexOnly().size());
+        var reported = 0;
+        for (var operation : result.jadxOnly()) {
+            this.reportDifference(reported++, "jadx", operation);
+        }
+        for (var operation : result.dexOnly()) {
+            this.reportDifference(reported++, "the DEX engine", operation);
+        }
+    }
+
+    private void reportDifference(int index, String engine, LocatedGQLOperation operation) {
+        var message = "Only found by {}: {} ({}) in {}, read from {}.";
+        var args = new Object[]{engine, operation.operation().name(), operation.operation().id(), operation.operationClass(), operation.sourceClass()};
+        if (index < MAX_REPORTED_DIFFERENCES) {
+            LOG.warn(message, args);
+        } else {
+            LOG.debug(message, args);
+        }
+    }
+
+    @Override
+    public List<StringRule> getStringRules() {
+        return List.of(OPERATION_DEFINITION_CONSTANT);
+    }
+
+    @Override
+    public Set<APKModelPart> getModelParts() {
+        // Nothing is read from the APK directly, but the result only covers the classes the compared steps were limited to.
+        return Set.of(APKModelPart.CODE, APKModelPart.DEX_CODE);
+    }
+
+    @Override
+    public Type getResultType() {
+        return Result.class;
+    }
+
+    @Override
+    public Set<Class<? extends IAPKAnalysisStep<?>>> getDependencies() {
+        return Set.of(APKAnalysisStepGQLOperations.class, APKAnalysisStepDexGQLOperations.class, APKAnalysisStepStringConstants.class);
+    }
+
+    /**
+     * The outcome of a cross-check.
+     *
+     * @param matched               the number of operations both engines found.
+     * @param jadxOnly              the operations only the jadx engine found.
+     * @param dexOnly               the operations only the DEX engine found.
+     * @param unresolvedDefinitions the number of string constants that look like operation definitions but that
+     *                              neither engine resolved an operation from.
+     */
+    public record Result(
+            int matched,
+            List<LocatedGQLOperation> jadxOnly,
+            List<LocatedGQLOperation> dexOnly,
+            int unresolvedDefinitions
+    ) {
+
+        /**
+         * Checks if both engines found exactly the same operations.
+         *
+         * @return true if there were no differences.
+         */
+        public boolean isConsistent() {
+            return this.jadxOnly.isEmpty() && this.dexOnly.isEmpty();
+        }
+
+    }
+
+}
@@ -2,238 +2,460 @@ package com.tridevmc.fedup.extract.internal.apk;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.gson.reflect.TypeToken;
+import com.tridevmc.fedup.extract.api.apk.AnalysisMode;
+import com.tridevmc.fedup.extract.internal.gql.LocatedGQLOperation;
 import com.tridevmc.fedup.extract.internal.gql.RedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.metrics.AnalysisPhaseMetrics;
+import com.tridevmc.fedup.extract.internal.metrics.HeapUsage;
+import com.tridevmc.fedup.extract.internal.strings.StringRule;
+import com.tridevmc.fedup.extract.internal.strings.StringRuleMatcher;
 import jadx.api.JadxDecompiler;
 import jadx.api.JavaClass;
 import jadx.api.JavaMethod;
-import jadx.core.dex.attributes.AType;
-import jadx.core.dex.attributes.AttrNode;
-import jadx.core.dex.attributes.AttributeStorage;
-import jadx.core.dex.attributes.FieldInitInsnAttr;
 import jadx.core.dex.instructions.ConstStringNode;
-import jadx.core.dex.nodes.FieldNode;
+import jadx.core.dex.instructions.args.ArgType;
+import jadx.core.dex.nodes.ClassNode;
+import jadx.core.dex.nodes.InsnNode;
+import jadx.core.dex.nodes.ProcessState;
 import org.tinylog.Logger;
 import org.tinylog.TaggedLogger;
 
-import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.function.Predicate;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
-public class APKAnalysisStepGQLOperations implements IAPKAnalysisStep<List<RedditGQLOperation>> {
-
-    private static final Field ATTR_NODE_STORAGE;
+public class APKAnalysisStepGQLOperations implements IAPKAnalysisStep<List<LocatedGQLOperation>> {
 
     private static final TaggedLogger LOG = Logger.tag(APKAnalyzer.class.getCanonicalName());
 
-    static {
-        try {
-            ATTR_NODE_STORAGE = AttrNode.class.getDeclaredField("storage");
-            ATTR_NODE_STORAGE.setAccessible(true);
-        } catch (NoSuchFieldException e) {
-            throw new RuntimeException(e);
-        }
+    // Batch sizes used in low-memory mode, in classes.
+    private static final int INITIAL_BATCH_SIZE = 1024;
+    private static final int MIN_BATCH_SIZE = 64;
+    private static final int MAX_BATCH_SIZE = 16384;
+
+    // Rules used to tell apart the strings passed to a constructor taking at least three strings, indexed by the constants below.
+    private static final StringRuleMatcher OPERATION_ARGUMENT_MATCHER = StringRuleMatcher.compile(List.of(
+            // An operationId is 12 characters long and contains only numbers and lowercase letters.
+            StringRule.shaped("operationId", StringRule.Shape.of(StringRule.CharClass.of("0-9a-z"), 12, 12)),
+            // An operation name contains only numbers and lowercase letters and starts with a character that is its own
+            // upper case, which leaves numbers.
+            StringRule.shaped("operationName", new StringRule.Shape(StringRule.CharClass.of("0-9"), StringRule.CharClass.of("0-9a-z"), 1, Integer.MAX_VALUE)),
+            // An operation definition is a string that contains the word "query" or "mutation".
+            StringRule.containing("operationDefinition", true, "query", "mutation")
+    ));
+    private static final int OPERATION_ID_RULE = 0;
+    private static final int OPERATION_NAME_RULE = 1;
+    private static final int OPERATION_DEFINITION_RULE = 2;
+
+    @Override
+    public List<LocatedGQLOperation> perform(APKAnalysisContext context) {
+        return findGQLOperations(context);
     }
 
     @Override
-    public List<RedditGQLOperation> perform(JadxDecompiler jadx) {
-        return findGQLOperations(jadx);
+    public Set<APKModelPart> getModelParts() {
+        return Set.of(APKModelPart.CODE);
     }
 
-    private List<RedditGQLOperation> findGQLOperations(JadxDecompiler jadx) {
-        // Find all classes with 3 final fields and a constructor that takes 3 strings.
-        Predicate<JavaClass> operationClassPredicate = javaClass -> {
-            var fields = javaClass.getFields();
-            if (fields.size() != 3) {
-                return false;
+    @Override
+    public Type getResultType() {
+        return new TypeToken<List<LocatedGQLOperation>>() {
+        }.getType();
+    }
+
+    @Override
+    public void replay(List<LocatedGQLOperation> result, APKAnalysisContext context) {
+        result.forEach(o -> context.getListener().onGQLOperation(o.operation()));
+    }
+
+    private List<LocatedGQLOperation> findGQLOperations(APKAnalysisContext context) {
+        if (context.getClassScope().map(Set::isEmpty).orElse(false)) {
+            // Nothing changed since the previous snapshot, so there's no need to load the APK at all.
+            return List.of();
+        }
+        // Parallel streams run in the pool they're started from, so scanning within this pool limits it to the configured thread count.
+        var pool = new ForkJoinPool(context.getOptions().getThreads(), this.getPhase(context).trackingWorkerThreadFactory(), null, false);
+        var operations = new ArrayList<LocatedGQLOperation>();
+        APKAnalysisTimeoutException timeout;
+        try {
+            pool.submit(() -> this.scanForGQLOperations(context, operations)).join();
+            return operations;
+        } catch (APKAnalysisTimeoutException e) {
+            timeout = e;
+        } finally {
+            pool.shutdown();
+            try {
+                // The pool's threads only add what they did to the metrics as they terminate.
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            for (var field : fields) {
-                if (!field.getAccessFlags().isFinal()
-                        || !field.getType().isObject()
-                        || !field.getType().getObject().equals("java.lang.String")) {
-                    return false;
+        }
+        // Operations are added in class order, so what was found before running out of time is a prefix of the full result.
+        throw timeout.withPartialResult(List.copyOf(operations));
+    }
+
+    private AnalysisPhaseMetrics getPhase(APKAnalysisContext context) {
+        return context.getMetrics().getPhase(APKAnalysisStepScheduler.getPhaseName(this));
+    }
+
+    private void scanForGQLOperations(APKAnalysisContext context, List<LocatedGQLOperation> operations) {
+        if (context.getOptions().isLowMemory()) {
+            this.scanForGQLOperationsInBatches(context, operations);
+        } else {
+            this.resolveGQLOperations(context, findPotentialRedditGQLOperationClasses(context), operations);
+        }
+    }
+
+    /**
+     * Scans the classes a batch at a time, unloading everything jadx loaded for a batch before moving on to the next so
+     * decompiled code never accumulates. Batches shrink when the live heap gets close to the memory budget and grow
+     * again when there's room.
+     */
+    private void scanForGQLOperationsInBatches(APKAnalysisContext context, List<LocatedGQLOperation> operations) {
+        var jadx = context.getJadx();
+        var options = context.getOptions();
+        var classScope = context.getClassScope();
+        var phase = this.getPhase(context);
+        var classes = jadx.getRoot().getClasses().stream().filter(
+                c -> options.isClassIncluded(c.getClassInfo().getFullName())
+        ).filter(
+                c -> classScope.map(scope -> scope.contains(c.getRawName())).orElse(true)
+        ).toList();
+
+        var batchSize = INITIAL_BATCH_SIZE;
+        var warnedAboutBudget = false;
+        for (int start = 0; start < classes.size(); ) {
+            context.checkTimeBudget(this);
+            var batch = classes.subList(start, Math.min(classes.size(), start + batchSize));
+            start += batch.size();
+            phase.count("classesVisited", batch.size());
+            phase.count("batches");
+            this.resolveGQLOperations(context, this.filterPotentialRedditGQLOperationClasses(context, batch), operations);
+            phase.count("classesUnloaded", this.unloadClasses(jadx));
+
+            var liveBytes = HeapUsage.getLiveBytes();
+            var budgetBytes = options.getMemoryBudgetBytes();
+            if (liveBytes > budgetBytes / 4 * 3) {
+                if (batchSize == MIN_BATCH_SIZE && liveBytes > budgetBytes && !warnedAboutBudget) {
+                    LOG.warn("{} MB of heap is live with the smallest batch size, the memory budget of {} MB is too small for this APK.",
+                             liveBytes / (1024 * 1024), budgetBytes / (1024 * 1024));
+                    warnedAboutBudget = true;
                 }
+                batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+            } else if (liveBytes < budgetBytes / 2) {
+                batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
             }
-            return javaClass.getMethods().stream().anyMatch(
-                    m -> {
-                        if (!m.getAccessFlags().isConstructor()) {
-                            return false;
-                        }
-                        var args = m.getArguments();
-                        if (args.size() != 3) {
-                            return false;
-                        }
-                        for (var arg : args) {
-                            if (!arg.isObject() || !arg.getObject().equals("java.lang.String")) {
-                                return false;
-                            }
-                        }
-                        return true;
-                    }
+        }
+    }
+
+    private List<JavaClass> filterPotentialRedditGQLOperationClasses(APKAnalysisContext context, List<ClassNode> classes) {
+        var jadx = context.getJadx();
+        var phase = this.getPhase(context);
+        Stream<JavaClass> candidates;
+        if (context.getOptions().getMode() == AnalysisMode.TARGETED) {
+            candidates = classes.parallelStream().peek(
+                    c -> context.checkTimeBudget(this)
+            ).filter(
+                    this::isPotentialRedditGQLOperationClassSignature
+            ).toList().stream().map(
+                    c -> (JavaClass) jadx.getJavaNodeByRef(c)
             );
-        };
-        List<JavaClass> classesWithInners = jadx.getClassesWithInners();
-        List<JavaClass> potentialRedditGQLOperationClasses = classesWithInners.stream().filter(
-                operationClassPredicate
-        ).toList();
+        } else {
+            candidates = classes.stream().map(
+                    c -> (JavaClass) jadx.getJavaNodeByRef(c)
+            ).toList().parallelStream().peek(
+                    c -> context.checkTimeBudget(this)
+            ).filter(
+                    this::isPotentialRedditGQLOperationClass
+            );
+        }
+        return candidates.peek(c -> phase.count("candidateClasses")).toList();
+    }
 
+    /**
+     * Unloads every top level class jadx has loaded, including the decompiled code and instructions of their inner classes.
+     * Usage information is kept, and the static initializer index only holds the text of what it found, so unloaded
+     * classes can still be reached as cross-references and are reloaded by jadx if they are decompiled again.
+     *
+     * @param jadx the decompiler to unload classes from.
+     * @return the number of classes unloaded.
+     */
+    private int unloadClasses(JadxDecompiler jadx) {
+        var unloaded = 0;
+        for (var classNode : jadx.getRoot().getClasses()) {
+            if (classNode.isInner() || classNode.getState() == ProcessState.NOT_LOADED) {
+                continue;
+            }
+            // Jadx holds both of these while decompiling, so a class is never unloaded while another step is decompiling it.
+            synchronized (classNode) {
+                synchronized (classNode.getClassInfo()) {
+                    classNode.unload();
+                }
+            }
+            unloaded++;
+        }
+        return unloaded;
+    }
+
+    private void resolveGQLOperations(APKAnalysisContext context, List<JavaClass> potentialRedditGQLOperationClasses, List<LocatedGQLOperation> operations) {
         // Find all instances where the constructor of the previous classes are called, then store the values of all the strings passed to the constructor.
-        List<PotentialRedditGQLOperationClass> potentialOperations = potentialRedditGQLOperationClasses.stream().map(
-                clazz -> new PotentialRedditGQLOperationClass(clazz, clazz.getMethods().stream().filter(
+        // Classes are processed in parallel, but results are collected in class order so the output doesn't depend on the thread count.
+        // Each operation is passed to the listener as soon as it and every operation before it have been found.
+        Stream<PotentialRedditGQLOperationClass> potentialOperations = potentialRedditGQLOperationClasses.parallelStream().map(
+                clazz -> new PotentialRedditGQLOperationClass(clazz.getRawName(), clazz.getMethods().stream().filter(
                         m -> m.getAccessFlags().isConstructor()
-                ).flatMap(constructor -> getArgumentSetsForConstructor(constructor).stream().filter(Objects::nonNull)).toList())
-        ).filter(PotentialRedditGQLOperationClass::hasAnyArgumentSets).toList();
-
-        return potentialOperations.stream().flatMap(
-                p -> p.argumentSets.stream().map(
-                        a -> new RedditGQLOperation(
-                                a.arg0,
-                                a.arg1,
-                                a.arg2
+                ).flatMap(constructor -> getArgumentSetsForConstructor(context, constructor).stream().filter(Objects::nonNull)).toList())
+        ).filter(PotentialRedditGQLOperationClass::hasAnyArgumentSets);
+
+        var listener = context.getListener();
+        potentialOperations.flatMap(
+                p -> p.argumentSets().stream().map(
+                        a -> new LocatedGQLOperation(
+                                p.rawName(),
+                                a.sourceClass,
+                                new RedditGQLOperation(
+                                        a.arg0,
+                                        a.arg1,
+                                        a.arg2
+                                )
                         )
                 )
+        ).forEachOrdered(o -> {
+            listener.onGQLOperation(o.operation());
+            operations.add(o);
+        });
+    }
+
+    private List<JavaClass> findPotentialRedditGQLOperationClasses(APKAnalysisContext context) {
+        var jadx = context.getJadx();
+        var options = context.getOptions();
+        var classScope = context.getClassScope();
+        var phase = this.getPhase(context);
+        if (options.getMode() == AnalysisMode.TARGETED) {
+            // Only signatures are checked up front, everything else is decompiled lazily when a constructor's uses are resolved.
+            return jadx.getRoot().getClasses().parallelStream().filter(
+                    c -> options.isClassIncluded(c.getClassInfo().getFullName())
+            ).filter(
+                    c -> classScope.map(scope -> scope.contains(c.getRawName())).orElse(true)
+            ).peek(
+                    c -> context.checkTimeBudget(this)
+            ).peek(
+                    c -> phase.count("classesVisited")
+            ).filter(
+                    this::isPotentialRedditGQLOperationClassSignature
+            ).toList().stream().map(
+                    c -> (JavaClass) jadx.getJavaNodeByRef(c)
+            ).peek(
+                    c -> phase.count("candidateClasses")
+            ).toList();
+        }
+
+        List<JavaClass> classesWithInners = jadx.getClassesWithInners();
+        return classesWithInners.parallelStream().filter(
+                c -> options.isClassIncluded(c.getFullName())
+        ).filter(
+                c -> classScope.map(scope -> scope.contains(c.getRawName())).orElse(true)
+        ).peek(
+                c -> context.checkTimeBudget(this)
+        ).peek(
+                c -> phase.count("classesVisited")
+        ).filter(
+                this::isPotentialRedditGQLOperationClass
+        ).peek(
+                c -> phase.count("candidateClasses")
         ).toList();
     }
 
-    private List<ArgumentSet> getArgumentSetsForConstructor(JavaMethod constructor) {
+    /**
+     * Checks if the given class has 3 final string fields and a constructor that takes 3 strings, like a RedditGQLOperation.
+     * <p>
+     * Package-private so the class scan can be benchmarked on its own.
+     *
+     * @param javaClass The class to check, this will be decompiled if it hasn't been already.
+     * @return true if the class looks like a RedditGQLOperation, false otherwise.
+     */
+    boolean isPotentialRedditGQLOperationClass(JavaClass javaClass) {
+        var fields = javaClass.getFields();
+        if (fields.size() != 3) {
+            return false;
+        }
+        for (var field : fields) {
+            if (!field.getAccessFlags().isFinal()
+                    || !field.getType().isObject()
+                    || !field.getType().getObject().equals("java.lang.String")) {
+                return false;
+            }
+        }
+        return javaClass.getMethods().stream().anyMatch(
+                m -> {
+                    if (!m.getAccessFlags().isConstructor()) {
+                        return false;
+                    }
+                    var args = m.getArguments();
+                    if (args.size() != 3) {
+                        return false;
+                    }
+                    for (var arg : args) {
+                        if (!arg.isObject() || !arg.getObject().equals("java.lang.String")) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+        );
+    }
 
+    /**
+     * Checks for the same shape as the full operation class predicate, but only looks at the signatures jadx read from the DEX files.
+     * <p>
+     * Going through {@link JavaClass#getFields()} or {@link JavaClass#getMethods()} decompiles the class, so this avoids decompiling every class in the APK.
+     *
+     * @param classNode The class to check.
+     * @return true if the class looks like a RedditGQLOperation, false otherwise.
+     */
+    private boolean isPotentialRedditGQLOperationClassSignature(ClassNode classNode) {
+        var fields = classNode.getFields();
+        if (fields.size() != 3) {
+            return false;
+        }
+        for (var field : fields) {
+            if (!field.getAccessFlags().isFinal() || !isStringType(field.getType())) {
+                return false;
+            }
+        }
+        return classNode.getMethods().stream().anyMatch(
+                m -> m.isConstructor() && m.getArgTypes().size() == 3 && m.getArgTypes().stream().allMatch(this::isStringType)
+        );
+    }
+
+    private boolean isStringType(ArgType type) {
+        return type.isObject() && type.getObject().equals("java.lang.String");
+    }
+
+    private List<ArgumentSet> getArgumentSetsForConstructor(APKAnalysisContext context, JavaMethod constructor) {
+        context.checkTimeBudget(this);
+        var phase = this.getPhase(context);
         var stringArguments = constructor.getArguments().stream().filter(
                 a -> a.isObject() && a.getObject().equals("java.lang.String")
         ).toList();
+        List<ArgumentSet> argumentSets;
+        String strategy;
         if (constructor.getArguments().size() == 3 && stringArguments.size() == 3) {
-            return getArgumentSetsForDataClassStyleConstructor(constructor);
+            strategy = "dataClassStyle";
+            argumentSets = getArgumentSetsForDataClassStyleConstructor(context, constructor);
         } else if (constructor.getArguments().size() == 0) {
-            return Lists.newArrayList(getArgumentSetsForNoArgConstructor(constructor));
+            strategy = "noArg";
+            var argumentSet = getArgumentSetsForNoArgConstructor(constructor);
+            if (argumentSet == null) {
+                phase.count("rejectedArgumentSets.noArg");
+            }
+            argumentSets = Lists.newArrayList(argumentSet);
         } else if (stringArguments.size() >= 3) {
-            return getArgumentSetsForStringConstructor(constructor);
+            strategy = "string";
+            argumentSets = getArgumentSetsForStringConstructor(context, constructor);
         } else {
             LOG.debug("Found unknown constructor: " + constructor.toString());
+            phase.count("constructors.unknown");
             return ImmutableList.of();
         }
+        phase.count("constructors." + strategy);
+        phase.count("argumentSets." + strategy, argumentSets.stream().filter(Objects::nonNull).count());
+        return argumentSets;
     }
 
     /**
      * This is assumed to be a constructor that takes at least three string arguments, so we just want to find the ones that are most likely to be the operation id, name, and definition.
      *
+     * @param context     The context of the analysis.
      * @param constructor The constructor to find the argument sets for.
      * @return The list of argument sets found.
      */
-    private List<ArgumentSet> getArgumentSetsForStringConstructor(JavaMethod constructor) {
+    List<ArgumentSet> getArgumentSetsForStringConstructor(APKAnalysisContext context, JavaMethod constructor) {
         LOG.debug("Found potential RedditGQLOperation constructor: " + constructor.toString());
-        Predicate<String> operationIdPredicate = s -> {
-            // An operationId is 12 characters long and contains only numbers and lowercase letters.
-            return s.length() == 12 && s.chars().allMatch(
-                    c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')
-            );
-        };
-        Predicate<String> operationNamePredicate = s -> {
-            // An operation name is a string that starts with an uppercase letter and contains only letters and numbers.
-            var firstChar = s.charAt(0);
-            var isAlphaNumeric = s.chars().allMatch(
-                    c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')
-            );
-            return firstChar == Character.toUpperCase(firstChar) && isAlphaNumeric;
-        };
-        Predicate<String> operationDefinitionPredicate = s -> {
-            // An operation definition is a string that contains the word "query" or "mutation".
-            var sLower = s.toLowerCase();
-            return sLower.contains("query") || sLower.contains("mutation");
-        };
-
         var argCount = constructor.getArguments().size();
-        return constructor.getUseIn().stream().flatMap(
-                javaNode -> {
-                    if (javaNode instanceof JavaMethod && javaNode.getFullName().contains("<clinit>")) {
-                        // Static initializer, this is likely a class used to store constants.
-                        var declaringClass = javaNode.getDeclaringClass();
-                        return declaringClass.getFields().stream().map(
-                                field -> {
-                                    FieldNode fieldNode = field.getFieldNode();
-                                    if (fieldNode.getType().isObject() &&
-                                            Objects.equals(fieldNode.getType().getObject(), constructor.getDeclaringClass().getRawName())) {
-                                        var attributeStorageFromNode = getAttributeStorageFromNode(fieldNode);
-                                        var fieldInitInsnAttr = (FieldInitInsnAttr) attributeStorageFromNode.get(AType.FIELD_INIT_INSN);
-                                        if (fieldInitInsnAttr != null) {
-                                            var arguments = fieldInitInsnAttr.getInsn().getArguments();
-                                            var insnArgs = StreamSupport.stream(arguments.spliterator(), false).toList();
-                                            return insnArgs;
-                                        }
-                                    }
-                                    return null;
-                                }
-                        ).filter(f -> f != null && f.size() == argCount);
-                    }
-                    return Stream.empty();
-                }
+        // Static initializers are likely classes used to store constants.
+        return context.getStaticInitializers().getInitializersCalling(constructor.getMethodNode(), () -> context.checkTimeBudget(this)).stream().filter(
+                f -> f.args().size() == argCount
         ).map(
                 f -> {
-                    var stringArgs = f.stream().filter(a -> a.getType().isObject() && a.getType().getObject().equals("java.lang.String")).map(a -> {
-                        var s = a.toString();
+                    var stringArgs = f.args().stream().filter(a -> a.type().isObject() && a.type().getObject().equals("java.lang.String")).map(a -> {
+                        var s = a.text();
                         var l = s.length();
                         return s.substring(2, l - 2);
                     }).toList();
-                    if (stringArgs.size() >= 3) {
-                        var operationId = stringArgs.stream().filter(operationIdPredicate).findFirst().orElse(null);
-                        var operationName = stringArgs.stream().filter(operationNamePredicate).findFirst().orElse(null);
-                        var operationDefinition = stringArgs.stream().filter(operationDefinitionPredicate).findFirst().orElse(null);
-                        if (operationId != null && operationName != null && operationDefinition != null) {
-                            return new ArgumentSet(operationId, operationName, operationDefinition);
-                        } else {
-                            LOG.debug("Unknown constructor: " + constructor);
-                        }
+                    var argumentSet = findStringConstructorArgumentSet(stringArgs, f.holderClass());
+                    if (argumentSet == null) {
+                        LOG.debug("Unknown constructor: " + constructor);
+                        this.getPhase(context).count("rejectedArgumentSets.string");
                     }
-                    return null;
+                    return argumentSet;
                 }
         ).filter(Objects::nonNull).toList();
     }
 
+    /**
+     * Picks the operation id, name, and definition out of the strings passed to a constructor that takes at least three strings.
+     * <p>
+     * Shared with the DEX engine so both engines accept and reject exactly the same constructor calls.
+     *
+     * @param stringArgs  The strings passed to the constructor, in order.
+     * @param sourceClass The raw name of the class the constructor is called from.
+     * @return The argument set, or null if the strings don't look like an operation.
+     */
+    static ArgumentSet findStringConstructorArgumentSet(List<String> stringArgs, String sourceClass) {
+        if (stringArgs.size() < 3) {
+            return null;
+        }
+        String operationId = null;
+        String operationName = null;
+        String operationDefinition = null;
+        for (var arg : stringArgs) {
+            // Each argument is classified against all three rules at once, the first argument matching a rule wins it.
+            var matches = OPERATION_ARGUMENT_MATCHER.match(arg);
+            if (operationId == null && StringRuleMatcher.matches(matches, OPERATION_ID_RULE)) {
+                operationId = arg;
+            }
+            if (operationName == null && StringRuleMatcher.matches(matches, OPERATION_NAME_RULE)) {
+                operationName = arg;
+            }
+            if (operationDefinition == null && StringRuleMatcher.matches(matches, OPERATION_DEFINITION_RULE)) {
+                operationDefinition = arg;
+            }
+        }
+        if (operationId != null && operationName != null && operationDefinition != null) {
+            return new ArgumentSet(operationId, operationName, operationDefinition, sourceClass);
+        }
+        return null;
+    }
+
     /**
      * Gets arguments that are passed to the given data class style constructor.
      * This constructor is assumed to take three String arguments and nothing else.
      * The order is assumed to be operationId, operationName, operationDefinition.
      *
+     * @param context     The context of the analysis.
      * @param constructor The constructor to get the arguments for.
      * @return The list of argument sets found.
      */
-    private List<ArgumentSet> getArgumentSetsForDataClassStyleConstructor(JavaMethod constructor) {
+    List<ArgumentSet> getArgumentSetsForDataClassStyleConstructor(APKAnalysisContext context, JavaMethod constructor) {
         LOG.debug("Found data class style constructor: " + constructor);
         // This is assumed to be a constructor that takes three string arguments, so we just want to find the uses and extract the values passed.
-        var clazz = constructor.getDeclaringClass();
-        return constructor.getUseIn().stream().flatMap(
-                javaNode -> {
-                    if (constructor.getFullName().contains("firebase")) {
-                        LOG.debug("Found use in: " + javaNode);
-                    }
-                    if (javaNode instanceof JavaMethod && javaNode.getFullName().contains("<clinit>")) {
-                        // Static initializer, this is likely a class used to store constants.
-                        var declaringClass = javaNode.getDeclaringClass();
-                        return declaringClass.getFields().stream().map(
-                                field -> {
-                                    FieldNode fieldNode = field.getFieldNode();
-                                    if (fieldNode.getType().isObject() &&
-                                            Objects.equals(fieldNode.getType().getObject(), clazz.getFullName())) {
-                                        var attributeStorageFromNode = getAttributeStorageFromNode(fieldNode);
-                                        var fieldInitInsnAttr = (FieldInitInsnAttr) attributeStorageFromNode.get(AType.FIELD_INIT_INSN);
-                                        if (fieldInitInsnAttr != null) {
-                                            var arguments = fieldInitInsnAttr.getInsn().getArguments();
-                                            var insnArgs = StreamSupport.stream(arguments.spliterator(), false).toList();
-                                            return insnArgs;
-                                        }
-                                    }
-                                    return null;
-                                }
-                        ).filter(f -> f != null && f.size() == 3);
-                    }
-                    return Stream.empty();
-                }
+        // Static initializers are likely classes used to store constants.
+        return context.getStaticInitializers().getInitializersCalling(constructor.getMethodNode(), () -> context.checkTimeBudget(this)).stream().filter(
+                f -> f.args().size() == 3
         ).map(
                 f -> {
-                    var arg0 = f.get(0).toString();
-                    var arg1 = f.get(1).toString();
-                    var arg2 = f.get(2).toString();
+                    var arg0 = f.args().get(0).text();
+                    var arg1 = f.args().get(1).text();
+                    var arg2 = f.args().get(2).text();
                     arg0 = arg0.substring(2, arg0.length() - 2);
                     arg1 = arg1.substring(2, arg1.length() - 2);
                     arg2 = arg2.substring(2, arg2.length() - 2);
@@ -242,7 +464,8 @@ public class APKAnalysisStepGQLOperations implements IAPKAnalysisStep<List<Reddi
                     return new ArgumentSet(
                             arg0,
                             arg1,
-                            arg2
+                            arg2,
+                            f.holderClass()
                     );
                 }
         ).toList();
@@ -256,22 +479,28 @@ public class APKAnalysisStepGQLOperations implements IAPKAnalysisStep<List<Reddi
      * @param constructor The constructor to get the values from.
      * @return The values assigned to the fields of the class by the given default constructor.
      */
-    private ArgumentSet getArgumentSetsForNoArgConstructor(JavaMethod constructor) {
+    ArgumentSet getArgumentSetsForNoArgConstructor(JavaMethod constructor) {
         LOG.debug("Found no-arg constructor: " + constructor);
         // This is assumed to be a constructor that takes no arguments, so we need to scan the actual code to find any string literals.
         var methodNode = constructor.getMethodNode();
-        methodNode.reload();
-        var constStrings = Arrays.stream(methodNode.getInstructions())
+        InsnNode[] instructions;
+        // Reloading unloads the method first, so it must not overlap with jadx decompiling the class on another thread.
+        // Jadx locks on the class info of the top level class while decompiling, so take the same lock here.
+        synchronized (methodNode.getParentClass().getTopParentClass().getClassInfo()) {
+            methodNode.reload();
+            instructions = methodNode.getInstructions();
+        }
+        var constStrings = Arrays.stream(instructions)
                 .filter(i -> i instanceof ConstStringNode)
                 .map(n -> ((ConstStringNode) n).getString())
                 .toList();
-        if (methodNode.getInstructions().length == 0) {
+        if (instructions.length == 0) {
             LOG.debug("No instructions for method: " + constructor.getFullName());
             return null;
         }
         if (constStrings.size() == 0) {
             LOG.debug("No const strings for method: " + constructor.getFullName());
-            LOG.debug(Arrays.toString(methodNode.getInstructions()));
+            LOG.debug(Arrays.toString(instructions));
             return null;
         }
         if (constStrings.size() == 3) {
@@ -281,7 +510,8 @@ public class APKAnalysisStepGQLOperations implements IAPKAnalysisStep<List<Reddi
             return new ArgumentSet(
                     arg0,
                     arg1,
-                    arg2
+                    arg2,
+                    constructor.getDeclaringClass().getRawName()
             );
         } else {
             LOG.debug("Unknown constructor: " + constructor.getFullName());
@@ -290,53 +520,31 @@ public class APKAnalysisStepGQLOperations implements IAPKAnalysisStep<List<Reddi
         return null;
     }
 
-    private AttributeStorage getAttributeStorageFromNode(AttrNode node) {
-        try {
-            AttributeStorage storage = (AttributeStorage) ATTR_NODE_STORAGE.get(node);
-            return storage;
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
 
-    private record ArgumentSet(
+    /**
+     * The values found for a single operation, package-private along with the constructor strategies so each strategy can be benchmarked on its own.
+     */
+    record ArgumentSet(
             String arg0,
             String arg1,
-            String arg2
+            String arg2,
+            String sourceClass
     ) {
 
     }
 
-    private static final class PotentialRedditGQLOperationClass {
-
-        private JavaClass clazz;
-        private List<ArgumentSet> argumentSets;
-
-        private PotentialRedditGQLOperationClass(
-                JavaClass clazz,
-                List<ArgumentSet> argumentSets
-        ) {
-            this.clazz = clazz;
-            this.argumentSets = argumentSets;
-        }
-
-        private void addArgumentSet(ArgumentSet argumentSet) {
-            this.argumentSets.add(argumentSet);
-        }
+    /**
+     * The operations resolved for a class, only the name of the class is kept so it can be unloaded from jadx.
+     */
+    private record PotentialRedditGQLOperationClass(
+            String rawName,
+            List<ArgumentSet> argumentSets
+    ) {
 
         public boolean hasAnyArgumentSets() {
             return !this.argumentSets.isEmpty();
         }
 
-        @Override
-        public String toString() {
-            return "PotentialRedditGQLOperationClass{" +
-                    "clazz=" + clazz +
-                    ", argumentSets=" + argumentSets +
-                    '}';
-        }
-
     }
 
 }
@@ -1,23 +1,54 @@
 package com.tridevmc.fedup.extract.internal.apk;
 
-import jadx.api.JadxDecompiler;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.File;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.util.ArrayList;
+import com.tridevmc.fedup.extract.internal.metrics.AnalysisPhaseMetrics;
+import jadx.core.xmlgen.ResContainer;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class APKAnalysisStepOAuthClientID implements IAPKAnalysisStep<String> {
 
+    private static final TaggedLogger LOG = Logger.tag(APKAnalysisStepOAuthClientID.class.getCanonicalName());
+
+    private static final Pattern DEFAULT_STRINGS_PATTERN = Pattern.compile("res/values/strings\\.xml");
+    private static final Pattern QUALIFIED_STRINGS_PATTERN = Pattern.compile("res/values-[^/]+/strings\\.xml");
+    private static final Pattern VALUES_PATTERN = Pattern.compile("res/values(-[^/]+)?/[^/]+\\.xml");
+
+    private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+        var factory = XMLInputFactory.newInstance();
+        // Resources are generated by jadx so should never have a DTD, but there's no reason to allow one either.
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+
+    @Override
+    public String perform(APKAnalysisContext context) {
+        var resources = context.getResourceTables().stream().flatMap(r -> r.getSubFiles().stream()).toList();
+        return this.findRawOAuthClientId(resources, context.getMetrics().getPhase(APKAnalysisStepScheduler.getPhaseName(this)));
+    }
+
+    @Override
+    public Set<APKModelPart> getModelParts() {
+        return Set.of(APKModelPart.RESOURCES);
+    }
+
     @Override
-    public String perform(JadxDecompiler jadx) {
-        return findRawOAuthClientId(jadx);
+    public Type getResultType() {
+        return String.class;
     }
 
     private String determineOAuthClientIdKey() {
@@ -25,72 +56,127 @@ public class APKAnalysisStepOAuthClientID implements IAPKAnalysisStep<String> {
         return "oauth_client_id";
     }
 
-    private String findRawOAuthClientId(JadxDecompiler jadx) {
-        // Iterate over the entries in the APK file and find any XML files to scan.
-        // For each XML file, scan it for the string "oauth_client_id" and extract the value.
-        // Return the first value found.
+    /**
+     * Finds the OAuth client ID in the given decoded resources, package-private so the scan can be benchmarked without an APK.
+     *
+     * @param resources the decoded resource files to scan.
+     * @param phase     the metrics phase to count the scanned resources under.
+     * @return the raw OAuth client ID.
+     */
+    String findRawOAuthClientId(List<ResContainer> resources, AnalysisPhaseMetrics phase) {
+        // Scan the decoded resource tables a tier at a time, starting with the files the ID is most likely to be in.
+        // A string resource named after the key is conclusive, anything else is only used if nothing better turns up.
         var oauthClientIdKey = this.determineOAuthClientIdKey();
+        var resourcesByPriority = resources.stream().filter(
+                r -> r.getName().endsWith(".xml")
+        ).collect(Collectors.groupingBy(r -> this.getPriority(r.getName()), TreeMap::new, Collectors.toList()));
+
+        OAuthClientIDCandidate fallback = null;
+        for (Map.Entry<Integer, List<ResContainer>> tier : resourcesByPriority.entrySet()) {
+            phase.count("resourcesVisited", tier.getValue().size());
+            var candidates = tier.getValue().parallelStream().map(
+                    r -> this.scanResource(r, oauthClientIdKey, phase)
+            ).filter(Objects::nonNull).toList();
+            phase.count("candidates", candidates.size());
+            var confident = candidates.stream().filter(OAuthClientIDCandidate::confident).findFirst();
+            if (confident.isPresent()) {
+                return confident.get().value();
+            }
+            if (fallback == null) {
+                fallback = candidates.stream().findFirst().orElse(null);
+            }
+        }
+        if (fallback == null) {
+            throw new RuntimeException("Failed to find raw OAuth client ID.");
+        }
+        return fallback.value();
+    }
 
-        return jadx.getResources().stream().flatMap(p -> p.loadContent().getSubFiles().stream()).filter(p -> p.getName().endsWith(".xml"))
-                .flatMap(
-                        p -> {
-                            try {
-                                var s = p.getText().getCodeStr();
-                                // Make a temp file to hold the XML data.
-                                var tempFile = File.createTempFile("fedup-extract", ".xml");
-                                Files.write(tempFile.toPath(), s.getBytes(StandardCharsets.UTF_8));
-                                var documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-                                var document = documentBuilder.parse(tempFile);
-                                document.normalize();
-
-                                var nodesOut = new ArrayList<OAuthClientIDCandidate>();
-                                var nodesToParse = new ArrayList<Node>();
-                                nodesToParse.add(document.getDocumentElement());
-                                while (!nodesToParse.isEmpty()) {
-                                    var node = nodesToParse.remove(0);
-                                    if (node.hasChildNodes()) {
-                                        for (int i = 0; i < node.getChildNodes().getLength(); i++) {
-                                            nodesToParse.add(node.getChildNodes().item(i));
-                                        }
-                                    }
-                                    if (node.hasAttributes()) {
-                                        // Scan all the attributes of this node to see if any of them are the OAuth client ID key.
-                                        for (int i = 0; i < node.getAttributes().getLength(); i++) {
-                                            var attribute = node.getAttributes().item(i);
-                                            if (attribute.getNodeName().equals(oauthClientIdKey)) {
-                                                // Found the OAuth client ID key, return the value.
-                                                nodesOut.add(new OAuthClientIDCandidate(attribute.getNodeName(),
-                                                                                        attribute.getNodeValue()));
-                                            } else if (attribute.getNodeValue().equals(oauthClientIdKey)) {
-                                                if (attribute.getNodeName().equals("name")) {
-                                                    // This likely contains the value as raw text in a child node, extract it.
-                                                    var childValue = node.getFirstChild().getTextContent();
-                                                    nodesOut.add(new OAuthClientIDCandidate(attribute.getNodeValue(),
-                                                                                            childValue));
-                                                } else {
-                                                    // Found the OAuth client ID key, return the value.
-                                                    nodesOut.add(new OAuthClientIDCandidate(attribute.getNodeValue(),
-                                                                                            attribute.getNodeName()));
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                                return nodesOut.stream();
-                            } catch (IOException | ParserConfigurationException | SAXException e) {
-                                throw new RuntimeException(e);
-                            }
+    private int getPriority(String name) {
+        if (DEFAULT_STRINGS_PATTERN.matcher(name).matches()) {
+            return 0;
+        } else if (QUALIFIED_STRINGS_PATTERN.matcher(name).matches()) {
+            return 1;
+        } else if (VALUES_PATTERN.matcher(name).matches()) {
+            return 2;
+        }
+        return 3;
+    }
+
+    /**
+     * Scans a single resource for the OAuth client ID key, returning as soon as a confident match is found.
+     *
+     * @param resource         the resource to scan.
+     * @param oauthClientIdKey the key the client ID is stored under.
+     * @param phase            the metrics phase to count parsed resources under.
+     * @return the best candidate found in the resource, or null if there were none.
+     */
+    private OAuthClientIDCandidate scanResource(ResContainer resource, String oauthClientIdKey, AnalysisPhaseMetrics phase) {
+        var text = resource.getText().getCodeStr();
+        if (!text.contains(oauthClientIdKey)) {
+            // Most resources won't mention the key at all, so don't bother parsing them.
+            return null;
+        }
+        phase.count("resourcesParsed");
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.get().createXMLStreamReader(new StringReader(text));
+            OAuthClientIDCandidate candidate = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    var attributeName = reader.getAttributeLocalName(i);
+                    var attributeValue = reader.getAttributeValue(i);
+                    if (attributeName.equals(oauthClientIdKey)) {
+                        candidate = Objects.requireNonNullElse(candidate, new OAuthClientIDCandidate(attributeName, attributeValue, false));
+                    } else if (attributeValue.equals(oauthClientIdKey)) {
+                        if (attributeName.equals("name")) {
+                            // This contains the value as raw text, which is exactly what a string resource looks like.
+                            return new OAuthClientIDCandidate(attributeValue, this.readText(reader), true);
                         }
-                ).filter(
-                        Objects::nonNull
-                ).findFirst().map(
-                        OAuthClientIDCandidate::value
-                ).orElseThrow(
-                        () -> new RuntimeException("Failed to find raw OAuth client ID.")
-                );
+                        candidate = Objects.requireNonNullElse(candidate, new OAuthClientIDCandidate(attributeValue, attributeName, false));
+                    }
+                }
+            }
+            return candidate;
+        } catch (XMLStreamException e) {
+            LOG.warn("Failed to scan resource {} for the OAuth client ID: {}", resource.getName(), e.getMessage());
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads all the text inside the current element, including the text of any nested elements.
+     *
+     * @param reader the reader, positioned on a start element.
+     * @return the text content of the element.
+     * @throws XMLStreamException if the XML is malformed.
+     */
+    private String readText(XMLStreamReader reader) throws XMLStreamException {
+        var text = new StringBuilder();
+        var depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> depth++;
+                case XMLStreamConstants.END_ELEMENT -> depth--;
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> text.append(reader.getText());
+                default -> {
+                }
+            }
+        }
+        return text.toString();
     }
 
-    private record OAuthClientIDCandidate(String name, String value) {
+    private record OAuthClientIDCandidate(String name, String value, boolean confident) {
 
     }
 
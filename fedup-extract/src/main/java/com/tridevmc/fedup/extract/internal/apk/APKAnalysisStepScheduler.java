@@ -0,0 +1,179 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs analysis steps against a shared {@link APKAnalysisContext}, performing steps in parallel whenever their dependencies allow it.
+ * <p>
+ * A step that runs out of time keeps whatever partial result it left behind, and every step depending on it is skipped.
+ */
+public class APKAnalysisStepScheduler {
+
+    private static final TaggedLogger LOG = Logger.tag(APKAnalysisStepScheduler.class.getCanonicalName());
+
+    private final ImmutableList<IAPKAnalysisStep<?>> steps;
+    private final int maxThreads;
+
+    /**
+     * Creates a scheduler for the given steps.
+     *
+     * @param steps      the steps to schedule, there may only be one step of each type.
+     * @param maxThreads the maximum number of steps that may run at the same time.
+     */
+    public APKAnalysisStepScheduler(List<? extends IAPKAnalysisStep<?>> steps, int maxThreads) {
+        this.steps = ImmutableList.copyOf(steps);
+        this.maxThreads = Math.max(1, Math.min(maxThreads, this.steps.size()));
+        this.validate();
+    }
+
+    /**
+     * Gets the steps run by this scheduler.
+     *
+     * @return the scheduled steps.
+     */
+    public ImmutableList<IAPKAnalysisStep<?>> getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * Performs all the steps, storing their results in the given context.
+     *
+     * @param context the context to perform the steps with.
+     */
+    public void run(APKAnalysisContext context) {
+        var threadFactory = new ThreadFactoryBuilder().setNameFormat("fedup-analysis-step-%d").setDaemon(true).build();
+        var executor = Executors.newFixedThreadPool(this.maxThreads, threadFactory);
+        try {
+            var futures = new HashMap<Class<?>, CompletableFuture<?>>();
+            for (var step : this.sortedSteps()) {
+                var dependencies = step.getDependencies().stream().map(futures::get).toArray(CompletableFuture[]::new);
+                var future = CompletableFuture.allOf(dependencies).thenRunAsync(
+                        () -> this.performStep(step, context),
+                        executor
+                );
+                futures.put(step.getClass(), future);
+            }
+            CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> void performStep(IAPKAnalysisStep<T> step, APKAnalysisContext context) {
+        var phase = context.getMetrics().getPhase(getPhaseName(step));
+        // Jadx and the DEX files are loaded by whichever step needs them first, under phases of their own.
+        try (var timer = phase.timeExclusive()) {
+            // Scoped code steps only see part of the APK, so their results must never be read from or written to the cache.
+            var cacheable = context.getClassScope().isEmpty() || step.getModelParts().stream().noneMatch(APKModelPart::isCode);
+            var cacheEntry = context.getCacheEntry().filter(e -> cacheable);
+            var cachedResult = cacheEntry.flatMap(e -> e.getStepResult(step));
+            if (cachedResult.isPresent()) {
+                LOG.debug("Using cached result for step {}.", step.getClass().getSimpleName());
+                phase.count("cached");
+                step.replay(cachedResult.get(), context);
+                context.putResult(step.getClass(), cachedResult.get());
+                return;
+            }
+            // Anything depending on a partial result would only produce a misleading one of its own.
+            if (step.getDependencies().stream().anyMatch(context::isCutShort)) {
+                LOG.warn("Skipping step {}, a step it depends on didn't complete.", step.getClass().getSimpleName());
+                phase.count("skipped");
+                context.cutShort(step);
+                return;
+            }
+            if (context.isOutOfTime()) {
+                LOG.warn("Skipping step {}, the analysis ran out of time.", step.getClass().getSimpleName());
+                phase.count("skipped");
+                context.cutShort(step);
+                return;
+            }
+            LOG.debug("Performing step {}.", step.getClass().getSimpleName());
+            context.startStep(step);
+            T result;
+            try {
+                result = Objects.requireNonNull(step.perform(context),
+                                                () -> step.getClass().getSimpleName() + " returned no result.");
+            } catch (APKAnalysisTimeoutException e) {
+                LOG.warn("{} {}", e.getMessage(), e.getPartialResult() == null ? "Nothing it found is kept." : "Keeping what it found so far.");
+                phase.count("timedOut");
+                context.cutShort(step);
+                if (e.getPartialResult() != null) {
+                    // Partial results are never cached, the next analysis should get the chance to complete the step.
+                    context.putResult(step.getClass(), e.getPartialResult());
+                }
+                return;
+            }
+            cacheEntry.ifPresent(e -> e.putStepResult(step, result));
+            context.putResult(step.getClass(), result);
+        }
+    }
+
+    /**
+     * Gets the name of the metrics phase the given step is measured under, steps use this to record their own counters.
+     *
+     * @param step the step to get the phase name of.
+     * @return the name of the phase.
+     */
+    public static String getPhaseName(IAPKAnalysisStep<?> step) {
+        return "step." + step.getName();
+    }
+
+    private void validate() {
+        var stepTypes = new HashMap<Class<?>, IAPKAnalysisStep<?>>();
+        for (var step : this.steps) {
+            if (stepTypes.put(step.getClass(), step) != null) {
+                throw new IllegalArgumentException("Duplicate analysis step " + step.getClass().getSimpleName());
+            }
+        }
+        for (var step : this.steps) {
+            for (var dependency : step.getDependencies()) {
+                if (!stepTypes.containsKey(dependency)) {
+                    throw new IllegalArgumentException(step.getClass().getSimpleName() + " depends on unscheduled step " + dependency.getSimpleName());
+                }
+            }
+        }
+        // Sorting fails on cycles, so do it once up front rather than when the steps are run.
+        this.sortedSteps();
+    }
+
+    /**
+     * Sorts the steps so that every step comes after its dependencies.
+     *
+     * @return the steps in dependency order.
+     */
+    private List<IAPKAnalysisStep<?>> sortedSteps() {
+        var sorted = new LinkedHashMap<Class<?>, IAPKAnalysisStep<?>>();
+        var remaining = new LinkedHashMap<Class<?>, IAPKAnalysisStep<?>>();
+        this.steps.forEach(s -> remaining.put(s.getClass(), s));
+        while (!remaining.isEmpty()) {
+            var ready = remaining.values().stream().filter(
+                    s -> sorted.keySet().containsAll(s.getDependencies())
+            ).toList();
+            if (ready.isEmpty()) {
+                throw new IllegalArgumentException("Analysis steps have a dependency cycle: " + remaining.keySet());
+            }
+            ready.forEach(s -> {
+                remaining.remove(s.getClass());
+                sorted.put(s.getClass(), s);
+            });
+        }
+        return ImmutableList.copyOf(sorted.values());
+    }
+
+}
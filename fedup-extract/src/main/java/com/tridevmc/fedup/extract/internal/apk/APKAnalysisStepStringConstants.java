@@ -0,0 +1,188 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.reflect.TypeToken;
+import com.tridevmc.fedup.extract.internal.dex.DexFile;
+import com.tridevmc.fedup.extract.internal.dex.DexOpcodes;
+import com.tridevmc.fedup.extract.internal.metrics.AnalysisPhaseMetrics;
+import com.tridevmc.fedup.extract.internal.strings.StringConstant;
+import com.tridevmc.fedup.extract.internal.strings.StringRule;
+import com.tridevmc.fedup.extract.internal.strings.StringRuleMatcher;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks every string constant loaded by code in the APK against the {@link StringRule}s registered by the other steps
+ * through {@link IAPKAnalysisStep#getStringRules()}, in one pass over the DEX files however many rules there are.
+ * <p>
+ * Each distinct string is only matched once per DEX file, no matter how many methods load it. Steps read the constants
+ * matching their rules with {@link #getMatches(APKAnalysisContext, StringRule)}.
+ */
+public class APKAnalysisStepStringConstants implements IAPKAnalysisStep<Map<String, List<StringConstant>>> {
+
+    private final StringRuleMatcher matcher;
+
+    /**
+     * Creates the step.
+     *
+     * @param rules the rules to match, as registered by the other steps.
+     */
+    public APKAnalysisStepStringConstants(List<StringRule> rules) {
+        this.matcher = StringRuleMatcher.compile(rules);
+    }
+
+    /**
+     * Creates the step for the rules registered by the given steps, if any are.
+     *
+     * @param steps the steps to collect rules from.
+     * @return the given steps with this step added, or the given steps unchanged if none of them registered rules.
+     */
+    public static List<IAPKAnalysisStep<?>> addIfNeeded(List<? extends IAPKAnalysisStep<?>> steps) {
+        var rules = steps.stream().flatMap(s -> s.getStringRules().stream()).distinct().toList();
+        if (rules.isEmpty()) {
+            return ImmutableList.copyOf(steps);
+        }
+        return ImmutableList.<IAPKAnalysisStep<?>>builder().addAll(steps).add(new APKAnalysisStepStringConstants(rules)).build();
+    }
+
+    /**
+     * Gets the string constants matching the given rule, the step reading them must depend on this step.
+     *
+     * @param context the context of the analysis.
+     * @param rule    the rule, as registered by the step.
+     * @return the matching constants, in the order the DEX files define the classes loading them.
+     */
+    public static List<StringConstant> getMatches(APKAnalysisContext context, StringRule rule) {
+        return context.getResult(APKAnalysisStepStringConstants.class).getOrDefault(rule.name(), List.of());
+    }
+
+    @Override
+    public Map<String, List<StringConstant>> perform(APKAnalysisContext context) {
+        if (context.getClassScope().map(Set::isEmpty).orElse(false)) {
+            // Nothing changed since the previous snapshot, so there's no need to read the DEX files at all.
+            return this.createResult();
+        }
+        // Parallel streams run in the pool they're started from, so scanning within this pool limits it to the configured thread count.
+        var pool = new ForkJoinPool(context.getOptions().getThreads(), this.getPhase(context).trackingWorkerThreadFactory(), null, false);
+        try {
+            return pool.submit(() -> this.findMatches(context)).join();
+        } finally {
+            pool.shutdown();
+            try {
+                // The pool's threads only add what they did to the metrics as they terminate.
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public Set<APKModelPart> getModelParts() {
+        return Set.of(APKModelPart.DEX_CODE);
+    }
+
+    @Override
+    public Type getResultType() {
+        return new TypeToken<Map<String, List<StringConstant>>>() {
+        }.getType();
+    }
+
+    private AnalysisPhaseMetrics getPhase(APKAnalysisContext context) {
+        return context.getMetrics().getPhase(APKAnalysisStepScheduler.getPhaseName(this));
+    }
+
+    private Map<String, List<StringConstant>> createResult() {
+        var result = new LinkedHashMap<String, List<StringConstant>>();
+        this.matcher.getRules().forEach(r -> result.put(r.name(), new ArrayList<>()));
+        return result;
+    }
+
+    private Map<String, List<StringConstant>> findMatches(APKAnalysisContext context) {
+        var options = context.getOptions();
+        var classScope = context.getClassScope();
+        var phase = this.getPhase(context);
+
+        // Classes defined in more than one DEX file are only read from the first, like the runtime would.
+        var seen = new HashSet<String>();
+        var classes = new ArrayList<ClassStrings>();
+        for (var dexFile : context.getDexFiles()) {
+            for (var classDef : dexFile.getClassDefs()) {
+                var className = classDef.getClassName();
+                if (seen.add(classDef.descriptor()) && options.isClassIncluded(className)
+                        && classScope.map(scope -> scope.contains(className)).orElse(true)) {
+                    classes.add(new ClassStrings(dexFile, classDef, null));
+                }
+            }
+        }
+        var classStrings = classes.parallelStream().peek(
+                c -> context.checkTimeBudget(this)
+        ).map(
+                c -> new ClassStrings(c.dexFile(), c.classDef(), this.getConstStringIndices(c.dexFile(), c.classDef()))
+        ).toList();
+        phase.count("classesVisited", classStrings.size());
+
+        // Match every distinct string once per DEX file, the same constant is typically loaded in many places.
+        var usedStrings = new IdentityHashMap<DexFile, TreeSet<Integer>>();
+        for (var c : classStrings) {
+            var used = usedStrings.computeIfAbsent(c.dexFile(), d -> new TreeSet<>());
+            for (var index : c.stringIndices()) {
+                used.add(index);
+            }
+        }
+        var matches = new IdentityHashMap<DexFile, long[]>();
+        usedStrings.forEach((dexFile, used) -> {
+            var dexMatches = new long[dexFile.getStringCount()];
+            used.parallelStream().forEach(i -> dexMatches[i] = this.matcher.match(dexFile.getString(i)));
+            matches.put(dexFile, dexMatches);
+            phase.count("stringsMatched", used.size());
+        });
+
+        var result = this.createResult();
+        var rules = this.matcher.getRules();
+        for (var c : classStrings) {
+            var dexMatches = matches.get(c.dexFile());
+            for (var index : c.stringIndices()) {
+                for (var ruleMatches = dexMatches[index]; ruleMatches != 0; ruleMatches &= ruleMatches - 1) {
+                    var rule = rules.get(Long.numberOfTrailingZeros(ruleMatches));
+                    result.get(rule.name()).add(new StringConstant(c.classDef().getClassName(), c.dexFile().getString(index)));
+                }
+            }
+        }
+        result.forEach((rule, constants) -> phase.count("matches." + rule, constants.size()));
+        return result;
+    }
+
+    /**
+     * Gets the distinct strings loaded by the code of a class, in the order they're first loaded.
+     */
+    private int[] getConstStringIndices(DexFile dexFile, DexFile.ClassDef classDef) {
+        var indices = new LinkedHashSet<Integer>();
+        for (var method : classDef.methods()) {
+            var insns = dexFile.getInstructions(method.codeOffset());
+            for (int pos = 0; pos < insns.length; pos += DexOpcodes.getSize(insns, pos)) {
+                var opcode = insns[pos] & 0xff;
+                if (opcode == DexOpcodes.CONST_STRING || opcode == DexOpcodes.CONST_STRING_JUMBO) {
+                    indices.add(DexOpcodes.getIndex(insns, pos));
+                }
+            }
+        }
+        return indices.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private record ClassStrings(DexFile dexFile, DexFile.ClassDef classDef, int[] stringIndices) {
+
+    }
+
+}
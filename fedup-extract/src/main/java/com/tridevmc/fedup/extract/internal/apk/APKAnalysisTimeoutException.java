@@ -0,0 +1,58 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown by {@link APKAnalysisContext#checkTimeBudget(IAPKAnalysisStep)} when a step runs out of time, the scheduler
+ * stops the step and records its phase as skipped.
+ * <p>
+ * Steps that can report what they found before running out of time catch this and throw it again with
+ * {@link #withPartialResult(Object)}.
+ */
+public class APKAnalysisTimeoutException extends CancellationException {
+
+    private final String phase;
+    private final transient Object partialResult;
+
+    // Neither constructor takes a cause, so fork join pools rethrow this instance instead of wrapping it in a copy.
+    APKAnalysisTimeoutException(String phase, String message) {
+        this(phase, message, null);
+    }
+
+    private APKAnalysisTimeoutException(String phase, String message, Object partialResult) {
+        super(message);
+        this.phase = phase;
+        this.partialResult = partialResult;
+    }
+
+    /**
+     * Creates a copy of this exception carrying what the step found before it ran out of time.
+     *
+     * @param partialResult the partial result of the step.
+     * @return the new exception.
+     */
+    public APKAnalysisTimeoutException withPartialResult(Object partialResult) {
+        var exception = new APKAnalysisTimeoutException(this.phase, this.getMessage(), partialResult);
+        exception.setStackTrace(this.getStackTrace());
+        return exception;
+    }
+
+    /**
+     * Gets the name of the metrics phase of the step that ran out of time.
+     *
+     * @return the phase name.
+     */
+    public String getPhase() {
+        return this.phase;
+    }
+
+    /**
+     * Gets what the step found before it ran out of time.
+     *
+     * @return the partial result, or null if the step has nothing to report.
+     */
+    public Object getPartialResult() {
+        return this.partialResult;
+    }
+
+}
@@ -1,53 +1,360 @@
 package com.tridevmc.fedup.extract.internal.apk;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonParseException;
+import com.tridevmc.fedup.extract.api.apk.APKAnalysisOptions;
+import com.tridevmc.fedup.extract.api.apk.AnalysisEngine;
+import com.tridevmc.fedup.extract.api.apk.AnalysisMode;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisListener;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisMetrics;
 import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
 import com.tridevmc.fedup.extract.api.apk.IAPKAnalyzer;
+import com.tridevmc.fedup.extract.api.apk.IAPKIncrementalAnalysisResult;
 import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.cache.AnalysisCache;
+import com.tridevmc.fedup.extract.internal.dex.DexClassIndex;
+import com.tridevmc.fedup.extract.internal.dex.DexFile;
+import com.tridevmc.fedup.extract.internal.gql.GQLOperationDiff;
+import com.tridevmc.fedup.extract.internal.gql.LocatedGQLOperation;
+import com.tridevmc.fedup.extract.internal.gql.RedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.metrics.AnalysisMetrics;
+import com.tridevmc.fedup.extract.internal.metrics.HeapUsage;
 import jadx.api.JadxArgs;
 import jadx.api.JadxDecompiler;
+import jadx.api.impl.NoOpCodeCache;
 import org.tinylog.Logger;
 import org.tinylog.TaggedLogger;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 
 public class APKAnalyzer implements IAPKAnalyzer {
 
     private final File apkFile;
+    private final APKInput input;
+    private final APKAnalysisOptions options;
+    private final APKAnalysisStepScheduler scheduler;
+    private final AnalysisCache cache;
     private JadxDecompiler jadx;
+    private volatile AnalysisMetrics metrics;
 
     private static final TaggedLogger LOG = Logger.tag(APKAnalyzer.class.getCanonicalName());
 
     public APKAnalyzer(File apkFile) {
+        this(apkFile, APKAnalysisOptions.defaults());
+    }
+
+    public APKAnalyzer(File apkFile, APKAnalysisOptions options) {
         this.apkFile = apkFile;
+        this.input = APKInput.of(apkFile);
+        this.options = options;
+        this.scheduler = new APKAnalysisStepScheduler(
+                APKAnalysisStepStringConstants.addIfNeeded(switch (options.getEngine()) {
+                    case JADX -> List.of(
+                            new APKAnalysisStepGQLOperations(),
+                            new APKAnalysisStepOAuthClientID()
+                    );
+                    case DEX -> List.of(
+                            new APKAnalysisStepDexGQLOperations(),
+                            new APKAnalysisStepOAuthClientID()
+                    );
+                    // The jadx engine's operations are the result, so only they are reported to the listener.
+                    case CROSS_CHECK -> List.of(
+                            new APKAnalysisStepGQLOperations(),
+                            new APKAnalysisStepDexGQLOperations(false),
+                            new APKAnalysisStepGQLEngineCrossCheck(),
+                            new APKAnalysisStepOAuthClientID()
+                    );
+                }),
+                Runtime.getRuntime().availableProcessors()
+        );
+        this.cache = options.getCacheDir() == null ? null : new AnalysisCache(options.getCacheDir(), options.getCacheMaxSizeBytes());
+    }
+
+    @Override
+    public IAPKAnalysisResult analyzeAPK(IAPKAnalysisListener listener) {
+        var metrics = this.startMetrics();
+        try (var timer = metrics.getPhase("analysis").time()) {
+            var stopwatch = Stopwatch.createStarted();
+            // Closing the entry evicts from the cache once, after everything this analysis caches has been written.
+            try (var cacheEntry = this.openCacheEntry()) {
+                if (cacheEntry != null) {
+                    var cachedResult = cacheEntry.getResult();
+                    if (cachedResult.isPresent()) {
+                        LOG.info("Using cached analysis of {}, loaded in {}.", this.apkFile.getName(), stopwatch);
+                        metrics.getPhase("analysis").count("cached");
+                        cachedResult.get().getGQLOperations().forEach(listener::onGQLOperation);
+                        return cachedResult.get();
+                    }
+                }
+                // Steps report every operation they find, duplicates are only passed on once like they are kept in the result.
+                var context = new APKAnalysisContext(this.options, () -> this.getJadxDecompiler(metrics), () -> this.readDexFiles(metrics),
+                                                     () -> this.input.readResourceTables(this.getJadxDecompiler(metrics)),
+                                                     cacheEntry, null, new DistinctGQLOperationListener(listener), metrics);
+                this.scheduler.run(context);
+                LOG.info("Analysis steps completed in {}.", stopwatch);
+                var gqlOperations = context.findResult(this.getGQLOperationsStep()).orElse(List.of());
+                var rawOAuthTokenId = context.findResult(APKAnalysisStepOAuthClientID.class).orElse(null);
+                var result = this.createResult(gqlOperations, rawOAuthTokenId, context, metrics);
+                if (cacheEntry != null && !result.isPartial()) {
+                    cacheEntry.putResult(result);
+                }
+                return result;
+            }
+        } finally {
+            this.finishMetrics(metrics);
+        }
+    }
+
+    @Override
+    public IAPKIncrementalAnalysisResult analyzeAPKIncrementally(File previousSnapshotFile, IAPKAnalysisListener listener) {
+        var metrics = this.startMetrics();
+        try (var timer = metrics.getPhase("analysis").time()) {
+            return this.analyzeAPKIncrementally(previousSnapshotFile, listener, metrics);
+        } finally {
+            this.finishMetrics(metrics);
+        }
+    }
+
+    private IAPKIncrementalAnalysisResult analyzeAPKIncrementally(File previousSnapshotFile, IAPKAnalysisListener listener, AnalysisMetrics metrics) {
+        var stopwatch = Stopwatch.createStarted();
+        var dexFiles = this.readDexFiles(metrics);
+        DexClassIndex index;
+        var fingerprintPhase = metrics.getPhase("dex.fingerprint");
+        try (var timer = fingerprintPhase.time()) {
+            index = DexClassIndex.build(dexFiles);
+            fingerprintPhase.count("classesVisited", index.fingerprints().size());
+        }
+        LOG.info("Fingerprinted {} classes in {}.", index.fingerprints().size(), stopwatch);
+        var previous = this.readSnapshot(previousSnapshotFile);
+        Set<String> classScope = null;
+        var gqlOperations = new ArrayList<LocatedGQLOperation>();
+        // Shared by the carried forward operations and the steps, so an operation found by both is only passed on once.
+        var distinctListener = new DistinctGQLOperationListener(listener);
+        if (previous != null) {
+            var rescannedClasses = index.withNeighbours(index.getChangedClasses(previous.classFingerprints()));
+            LOG.info("{} classes changed since the previous snapshot, or depend on classes that did.", rescannedClasses.size());
+            fingerprintPhase.count("classesChanged", rescannedClasses.size());
+            classScope = rescannedClasses;
+            // Operations found outside the rescanned classes are still valid as long as the classes they came from still exist.
+            // A rescanned holder may no longer create the operation at all, while one that still does refers to the
+            // operation class, making it a neighbour that's rescanned and found again.
+            previous.gqlOperations().stream().filter(
+                    o -> !rescannedClasses.contains(o.operationClass())
+                            && !rescannedClasses.contains(o.sourceClass())
+                            && index.fingerprints().containsKey(o.operationClass())
+                            && index.fingerprints().containsKey(o.sourceClass())
+            ).forEach(gqlOperations::add);
+            gqlOperations.forEach(o -> distinctListener.onGQLOperation(o.operation()));
+        }
+        String rawOAuthTokenId;
+        APKAnalysisResult result;
+        try (var cacheEntry = this.openCacheEntry()) {
+            var context = new APKAnalysisContext(this.options, () -> this.getJadxDecompiler(metrics), () -> dexFiles,
+                                                 () -> this.input.readResourceTables(this.getJadxDecompiler(metrics)),
+                                                 cacheEntry, classScope, distinctListener, metrics);
+            this.scheduler.run(context);
+            LOG.info("Analysis steps completed in {}.", stopwatch);
+
+            gqlOperations.addAll(context.findResult(this.getGQLOperationsStep()).orElse(List.of()));
+            rawOAuthTokenId = context.findResult(APKAnalysisStepOAuthClientID.class).orElse(null);
+            result = this.createResult(gqlOperations, rawOAuthTokenId, context, metrics);
+            if (cacheEntry != null && !result.isPartial()) {
+                cacheEntry.putResult(result);
+            }
+        }
+
+        var previousOperations = previous == null ? List.<RedditGQLOperation>of() : previous.gqlOperations().stream().map(LocatedGQLOperation::operation).toList();
+        var diff = GQLOperationDiff.between(previousOperations, result.getGQLOperations());
+        var snapshot = new APKAnalysisSnapshot(
+                AnalysisCache.getExtractorVersion(),
+                this.options.getIncludedPackages(),
+                this.options.getExcludedPackages(),
+                this.options.getEngine(),
+                // Without fingerprints every class counts as changed, so the next analysis redoes what this one didn't finish.
+                result.isPartial() ? Map.of() : index.fingerprints(),
+                gqlOperations,
+                rawOAuthTokenId
+        );
+        return new APKIncrementalAnalysisResult(result, diff, previous != null, snapshot);
+    }
+
+    /**
+     * Opens the cache entry for the APK being analyzed.
+     *
+     * @return the entry, or null if caching is disabled or the analysis saves sources, which only happens as jadx is
+     * loaded and so would be skipped entirely by a cached result.
+     */
+    private AnalysisCache.Entry openCacheEntry() {
+        if (this.cache == null || this.options.getMode() == AnalysisMode.SAVE_SOURCES) {
+            return null;
+        }
+        return this.cache.open(this.apkFile, this.options);
+    }
+
+    /**
+     * Gets the step whose operations are used for the result, with {@link AnalysisEngine#CROSS_CHECK} that's the jadx engine.
+     *
+     * @return the type of the step.
+     */
+    private Class<? extends IAPKAnalysisStep<List<LocatedGQLOperation>>> getGQLOperationsStep() {
+        return this.options.getEngine() == AnalysisEngine.DEX ? APKAnalysisStepDexGQLOperations.class : APKAnalysisStepGQLOperations.class;
+    }
+
+    private List<DexFile> readDexFiles(AnalysisMetrics metrics) {
+        var stopwatch = Stopwatch.createStarted();
+        var readPhase = metrics.getPhase("dex.read");
+        List<DexFile> dexFiles;
+        try (var timer = readPhase.time()) {
+            dexFiles = this.input.readDexFiles();
+            readPhase.count("dexFiles", dexFiles.size());
+        }
+        LOG.info("Read {} DEX files from {} in {}.", dexFiles.size(), this.apkFile.getName(), stopwatch);
+        return dexFiles;
+    }
+
+    private APKAnalysisResult createResult(List<LocatedGQLOperation> gqlOperations, String rawOAuthTokenId,
+                                           APKAnalysisContext context, AnalysisMetrics metrics) {
+        ImmutableList<IRedditGQLOperation> gqlOperationsImmutable = ImmutableList.copyOf(
+                gqlOperations.stream().map(LocatedGQLOperation::operation).toList()
+        );
+        var skippedPhases = context.getSkippedPhases();
+        if (!skippedPhases.isEmpty()) {
+            LOG.warn("Analysis of {} was cut short by its time budget in {}, the result is partial and only holds the {} operations found so far.",
+                     this.apkFile.getName(), String.join(", ", skippedPhases), gqlOperationsImmutable.size());
+            metrics.getPhase("analysis").count("skippedPhases", skippedPhases.size());
+        }
+        return new APKAnalysisResult(gqlOperationsImmutable, rawOAuthTokenId, skippedPhases);
+    }
+
+    private APKAnalysisSnapshot readSnapshot(File snapshotFile) {
+        if (snapshotFile == null || !snapshotFile.isFile()) {
+            return null;
+        }
+        try (var reader = Files.newBufferedReader(snapshotFile.toPath())) {
+            var snapshot = APKAnalysisSnapshot.read(reader);
+            if (snapshot == null || !snapshot.isCompatibleWith(this.options)) {
+                LOG.info("Previous snapshot {} was created by a different extractor version or with different options, analyzing the whole APK.", snapshotFile);
+                return null;
+            }
+            return snapshot;
+        } catch (IOException | JsonParseException e) {
+            LOG.warn(e, "Failed to read previous snapshot {}, analyzing the whole APK.", snapshotFile);
+            return null;
+        }
     }
 
     @Override
-    public IAPKAnalysisResult analyzeAPK() {
-        var oAuthClientIdAnalysisStep = new APKAnalysisStepOAuthClientID();
-        var gqlOperationAnalysisStep = new APKAnalysisStepGQLOperations();
-        var gqlOperations = gqlOperationAnalysisStep.perform(getJadxDecompiler());
-        var rawOAuthTokenId = oAuthClientIdAnalysisStep.perform(getJadxDecompiler());
-        ImmutableList<IRedditGQLOperation> gqlOperationsImmutable = ImmutableList.copyOf(gqlOperations);
-        return new APKAnalysisResult(gqlOperationsImmutable, rawOAuthTokenId);
+    public IAPKAnalysisMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    private AnalysisMetrics startMetrics() {
+        var metrics = new AnalysisMetrics(this.apkFile.getName());
+        this.metrics = metrics;
+        if (this.options.isLowMemory()) {
+            HeapUsage.resetPeak();
+        }
+        return metrics;
     }
 
-    private JadxDecompiler getJadxDecompiler() {
+    private void finishMetrics(AnalysisMetrics metrics) {
+        if (this.options.isLowMemory()) {
+            var peakBytes = HeapUsage.getPeakBytes();
+            var budgetBytes = this.options.getMemoryBudgetBytes();
+            var phase = metrics.getPhase("analysis");
+            phase.count("peakHeapBytes", peakBytes);
+            phase.count("memoryBudgetBytes", budgetBytes);
+            if (peakBytes > budgetBytes) {
+                LOG.warn("Peak heap usage of {} MB exceeded the memory budget of {} MB.", peakBytes / (1024 * 1024), budgetBytes / (1024 * 1024));
+            } else {
+                LOG.info("Peak heap usage was {} MB of a {} MB memory budget.", peakBytes / (1024 * 1024), budgetBytes / (1024 * 1024));
+            }
+        }
+        metrics.finish();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.jadx != null) {
+            this.jadx.close();
+            this.jadx = null;
+        }
+    }
+
+    private synchronized JadxDecompiler getJadxDecompiler(AnalysisMetrics metrics) {
         if (this.jadx == null) {
             var jadxArgs = new JadxArgs();
-            jadxArgs.setInputFile(
-                    this.apkFile
-            );
+            if (!this.input.isBundle()) {
+                jadxArgs.setInputFile(
+                        this.apkFile
+                );
+            }
             jadxArgs.setOutDir(
-                    new File("jadx-out")
+                    this.options.getSourceOutputDir()
             );
+            jadxArgs.setThreadsCount(this.options.getThreads());
+            if (this.options.isLowMemory()) {
+                // Decompiled code is only ever read once by the analysis, so there's no point keeping it around.
+                jadxArgs.setCodeCache(new NoOpCodeCache());
+            }
+            var saveSources = this.options.getMode() == AnalysisMode.SAVE_SOURCES;
+            var modelParts = this.scheduler.getSteps().stream().flatMap(s -> s.getModelParts().stream()).collect(Collectors.toSet());
+            if (!saveSources && !modelParts.contains(APKModelPart.CODE)) {
+                // Code is read straight from the DEX files, so jadx only needs to load the resources.
+                jadxArgs.setClassFilter(className -> false);
+            } else if (!this.options.getIncludedPackages().isEmpty() || !this.options.getExcludedPackages().isEmpty()) {
+                jadxArgs.setClassFilter(this.options::isClassIncluded);
+            }
+            if (!saveSources && !modelParts.contains(APKModelPart.RESOURCES)) {
+                jadxArgs.setSkipResources(true);
+            }
             var jadx = new JadxDecompiler(jadxArgs);
-            jadx.load();
-            jadx.save();
+            // Bundles are read in place rather than through an input file, jadx only decodes the resources of input files
+            // so the resource tables of a bundle are decoded separately when a step asks for them.
+            this.input.addTo(jadx, saveSources || modelParts.contains(APKModelPart.CODE));
+            var stopwatch = Stopwatch.createStarted();
+            var loadPhase = metrics.getPhase("jadx.load");
+            try (var timer = loadPhase.time()) {
+                jadx.load();
+                loadPhase.count("classesLoaded", jadx.getRoot().getClasses().size());
+            }
+            LOG.info("Loaded {} in {}.", this.apkFile.getName(), stopwatch);
+            if (saveSources) {
+                // Saving is only needed by anyone who wants to browse the sources, the analysis steps work on the loaded model.
+                stopwatch.reset().start();
+                var savePhase = metrics.getPhase("jadx.save");
+                long diskUsage;
+                try (var timer = savePhase.time()) {
+                    jadx.save();
+                    diskUsage = this.getDiskUsage(this.options.getSourceOutputDir());
+                    savePhase.count("bytesWritten", diskUsage);
+                }
+                LOG.info("Saved sources to {} in {}, using {} bytes on disk.",
+                         this.options.getSourceOutputDir(),
+                         stopwatch,
+                         diskUsage);
+            }
             this.jadx = jadx;
         }
         return this.jadx;
     }
 
+    private long getDiskUsage(File dir) {
+        try (var files = Files.walk(dir.toPath())) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 }
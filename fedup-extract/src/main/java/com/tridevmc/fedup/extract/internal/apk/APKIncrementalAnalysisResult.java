@@ -0,0 +1,34 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.apk.IAPKIncrementalAnalysisResult;
+import com.tridevmc.fedup.extract.api.gql.IGQLOperationDiff;
+
+public record APKIncrementalAnalysisResult(
+        IAPKAnalysisResult result,
+        IGQLOperationDiff diff,
+        boolean incremental,
+        APKAnalysisSnapshot snapshot
+) implements IAPKIncrementalAnalysisResult {
+
+    @Override
+    public IAPKAnalysisResult getResult() {
+        return this.result;
+    }
+
+    @Override
+    public IGQLOperationDiff getDiff() {
+        return this.diff;
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return this.incremental;
+    }
+
+    @Override
+    public void writeSnapshot(Appendable out) {
+        this.snapshot.write(out);
+    }
+
+}
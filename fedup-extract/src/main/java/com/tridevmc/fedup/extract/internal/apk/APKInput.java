@@ -0,0 +1,331 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.tridevmc.fedup.extract.internal.dex.DexFile;
+import jadx.api.JadxDecompiler;
+import jadx.api.ResourceFile;
+import jadx.api.ResourceType;
+import jadx.api.plugins.input.data.impl.EmptyLoadResult;
+import jadx.core.xmlgen.ResContainer;
+import jadx.core.xmlgen.ResTableParser;
+import jadx.plugins.input.dex.DexInputPlugin;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The file an analysis reads, either a single APK or an app bundle holding a base APK and split APKs, as distributed in
+ * {@code .apks} and {@code .xapk} archives.
+ * <p>
+ * Bundles are read in place, the member APKs are streamed out of the archive and only their DEX files and resource
+ * tables are kept, nothing is extracted to disk. Config splits only hold the native libraries and resources for a
+ * particular ABI, screen density or language, so they can't contain code or the default string resources the OAuth
+ * client ID is read from, and are skipped without being decoded.
+ */
+public final class APKInput {
+
+    private static final TaggedLogger LOG = Logger.tag(APKAnalyzer.class.getCanonicalName());
+
+    private static final List<String> BUNDLE_EXTENSIONS = List.of(".apks", ".xapk");
+    private static final String APK_EXTENSION = ".apk";
+    private static final Pattern DEX_ENTRY_PATTERN = Pattern.compile("classes(\\d*)\\.dex");
+    private static final String RESOURCE_TABLE_ENTRY = "resources.arsc";
+    // Split names used by bundletool (base-xxhdpi.apk), by xapk archives (config.xxhdpi.apk) and by the Android package
+    // installer (split_config.xxhdpi.apk). The master split of each bundletool module holds its code.
+    private static final Pattern CONFIG_SPLIT_PATTERN = Pattern.compile("(split_)?config\\..+|[A-Za-z0-9_]+-(?!master).+");
+    // Bundletool also includes standalone APKs for devices that don't support splits, each holding the whole app.
+    private static final String STANDALONES_DIR = "standalones/";
+    private static final String XAPK_MANIFEST_ENTRY = "manifest.json";
+
+    private final File file;
+    private final boolean bundle;
+    // The splits of a bundle are found the first time it's read, every later read skips the same config splits.
+    private List<String> codeSplits;
+
+    private APKInput(File file, boolean bundle) {
+        this.file = file;
+        this.bundle = bundle;
+    }
+
+    /**
+     * Creates the input for the given file, telling APKs and bundles apart by their extension.
+     *
+     * @param file the APK or bundle.
+     * @return the input.
+     */
+    public static APKInput of(File file) {
+        return new APKInput(file, isBundle(file));
+    }
+
+    /**
+     * Checks if the given file is something that can be analyzed, an APK or an app bundle.
+     *
+     * @param file the file.
+     * @return true if the file has the extension of an APK or a bundle.
+     */
+    public static boolean isSupported(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(APK_EXTENSION) || isBundle(file);
+    }
+
+    /**
+     * Gets the name of the given APK or bundle without its extension.
+     *
+     * @param file the file.
+     * @return the name without the extension, or the full name if it isn't an APK or bundle.
+     */
+    public static String getBaseName(File file) {
+        var name = file.getName();
+        var lowerName = name.toLowerCase(Locale.ROOT);
+        for (var extension : ImmutableList.<String>builder().add(APK_EXTENSION).addAll(BUNDLE_EXTENSIONS).build()) {
+            if (lowerName.endsWith(extension)) {
+                return name.substring(0, name.length() - extension.length());
+            }
+        }
+        return name;
+    }
+
+    private static boolean isBundle(File file) {
+        var name = file.getName().toLowerCase(Locale.ROOT);
+        return BUNDLE_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public boolean isBundle() {
+        return this.bundle;
+    }
+
+    /**
+     * Reads every DEX file of the input, parsing them in parallel. For a bundle the DEX files of the base APK come first,
+     * followed by those of each feature split, so classes defined more than once resolve to the base like they would at runtime.
+     *
+     * @return the DEX files.
+     */
+    public List<DexFile> readDexFiles() {
+        return this.readEntries(DEX_ENTRY_PATTERN.asMatchPredicate()).parallelStream().map(
+                e -> new DexFile(e.name(), e.bytes())
+        ).toList();
+    }
+
+    /**
+     * Adds the code of this input to the given decompiler, to be called before it's loaded. A single APK is read by jadx
+     * itself through its input file, so this only does anything for bundles.
+     *
+     * @param jadx     the decompiler, with no input file set for bundles.
+     * @param loadCode false if jadx won't be used for code, which skips reading the DEX files for it.
+     */
+    public void addTo(JadxDecompiler jadx, boolean loadCode) {
+        if (!this.bundle) {
+            return;
+        }
+        if (!loadCode) {
+            // jadx refuses to load without any input, but only the resource tables are wanted and those are read separately.
+            jadx.addCustomLoad(EmptyLoadResult.INSTANCE);
+            return;
+        }
+        var dexInput = new DexInputPlugin();
+        for (var entry : this.readEntries(DEX_ENTRY_PATTERN.asMatchPredicate())) {
+            jadx.addCustomLoad(dexInput.loadDexFromInputStream(new ByteArrayInputStream(entry.bytes()), entry.name()));
+        }
+    }
+
+    /**
+     * Decodes the resource tables of this input.
+     *
+     * @param jadx the loaded decompiler, whose settings are used to decode the tables.
+     * @return the decoded resource tables, each holding the decoded resource files as sub files.
+     */
+    public List<ResContainer> readResourceTables(JadxDecompiler jadx) {
+        if (!this.bundle) {
+            return readResourceTablesFromJadx(jadx);
+        }
+        var tables = new ArrayList<ResContainer>();
+        for (var entry : this.readEntries(RESOURCE_TABLE_ENTRY::equals)) {
+            try {
+                tables.add(new ResTableParser(jadx.getRoot()).decodeFiles(new ByteArrayInputStream(entry.bytes())));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to decode " + entry.name(), e);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Decodes the resource tables jadx found in its input files.
+     *
+     * @param jadx the loaded decompiler.
+     * @return the decoded resource tables.
+     */
+    static List<ResContainer> readResourceTablesFromJadx(JadxDecompiler jadx) {
+        return jadx.getResources().stream().filter(
+                r -> r.getType() == ResourceType.ARSC
+        ).map(ResourceFile::loadContent).toList();
+    }
+
+    /**
+     * Reads the entries of the input's APKs that match the given predicate, ordered by APK and then by DEX file number.
+     */
+    private List<Entry> readEntries(Predicate<String> entryFilter) {
+        try (var zip = new ZipFile(this.file)) {
+            if (!this.bundle) {
+                return readMatchingEntries(null, zip, entryFilter);
+            }
+            // ZipFile can stream several entries at once, so the splits are read in parallel.
+            return this.getCodeSplits(zip).parallelStream().flatMap(split -> {
+                try (var in = new ZipInputStream(zip.getInputStream(zip.getEntry(split)))) {
+                    return readMatchingEntries(split, in, entryFilter).stream();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read " + split + " in " + this.file, e);
+                }
+            }).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + this.file, e);
+        }
+    }
+
+    private static List<Entry> readMatchingEntries(String split, ZipFile apk, Predicate<String> entryFilter) throws IOException {
+        var found = new ArrayList<Entry>();
+        for (var zipEntries = apk.entries(); zipEntries.hasMoreElements(); ) {
+            var zipEntry = zipEntries.nextElement();
+            if (entryFilter.test(zipEntry.getName())) {
+                try (var in = apk.getInputStream(zipEntry)) {
+                    found.add(new Entry(split, zipEntry.getName(), in.readAllBytes()));
+                }
+            }
+        }
+        found.sort(Comparator.comparingInt(Entry::order));
+        return found;
+    }
+
+    private static List<Entry> readMatchingEntries(String split, ZipInputStream apk, Predicate<String> entryFilter) throws IOException {
+        var found = new ArrayList<Entry>();
+        for (var zipEntry = apk.getNextEntry(); zipEntry != null; zipEntry = apk.getNextEntry()) {
+            if (entryFilter.test(zipEntry.getName())) {
+                found.add(new Entry(split, zipEntry.getName(), apk.readAllBytes()));
+            }
+        }
+        found.sort(Comparator.comparingInt(Entry::order));
+        return found;
+    }
+
+    /**
+     * Gets the member APKs of a bundle that can hold code, with the base APK first.
+     */
+    private synchronized List<String> getCodeSplits(ZipFile zip) throws IOException {
+        if (this.codeSplits == null) {
+            this.codeSplits = this.findCodeSplits(zip);
+        }
+        return this.codeSplits;
+    }
+
+    private List<String> findCodeSplits(ZipFile zip) throws IOException {
+        var apks = zip.stream().filter(
+                e -> !e.isDirectory() && getFileName(e.getName()).toLowerCase(Locale.ROOT).endsWith(APK_EXTENSION)
+        ).map(ZipEntry::getName).toList();
+        var splits = apks.stream().filter(p -> !p.startsWith(STANDALONES_DIR)).toList();
+        if (splits.isEmpty()) {
+            // A bundle with nothing but standalone APKs, any of them holds the whole app.
+            splits = apks.stream().limit(1).toList();
+        }
+        var baseSplit = this.findBaseSplit(zip, splits);
+        var codeSplits = new ArrayList<String>();
+        var skipped = 0;
+        for (var split : splits) {
+            if (!split.equals(baseSplit) && CONFIG_SPLIT_PATTERN.matcher(getSplitName(split)).matches()) {
+                LOG.debug("Skipping config split {} of {}.", split, this.file.getName());
+                skipped++;
+            } else {
+                codeSplits.add(split);
+            }
+        }
+        if (baseSplit == null) {
+            throw new IllegalArgumentException(this.file + " doesn't contain a base APK.");
+        }
+        codeSplits.sort(Comparator.comparing((String s) -> !s.equals(baseSplit)).thenComparing(Comparator.naturalOrder()));
+        LOG.info("Reading {} of the {} APKs in {}, skipped {} config splits.", codeSplits.size(), apks.size(), this.file.getName(), skipped);
+        return ImmutableList.copyOf(codeSplits);
+    }
+
+    /**
+     * Finds the base APK of a bundle, named base.apk or base-master.apk by most tools and after the package in xapk archives,
+     * or null if there's no single APK that could be it.
+     */
+    private String findBaseSplit(ZipFile zip, List<String> splits) throws IOException {
+        if (splits.size() == 1) {
+            return splits.get(0);
+        }
+        var baseNames = new ArrayList<>(List.of("base.apk", "base-master.apk"));
+        var manifest = zip.getEntry(XAPK_MANIFEST_ENTRY);
+        if (manifest != null) {
+            try (var reader = new InputStreamReader(zip.getInputStream(manifest), StandardCharsets.UTF_8)) {
+                var json = JsonParser.parseReader(reader);
+                if (json.isJsonObject() && json.getAsJsonObject().has("package_name")) {
+                    baseNames.add(json.getAsJsonObject().get("package_name").getAsString() + APK_EXTENSION);
+                }
+            } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+                LOG.warn("Ignoring unreadable {} in {}: {}", XAPK_MANIFEST_ENTRY, this.file.getName(), e.getMessage());
+            }
+        }
+        var candidates = splits.stream().filter(s -> baseNames.contains(getFileName(s))).toList();
+        if (candidates.isEmpty()) {
+            // Failing that, the only APK that isn't a config split is the base.
+            candidates = splits.stream().filter(s -> !CONFIG_SPLIT_PATTERN.matcher(getSplitName(s)).matches()).toList();
+        }
+        return candidates.size() == 1 ? candidates.get(0) : null;
+    }
+
+    private static String getFileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String getSplitName(String path) {
+        var fileName = getFileName(path);
+        return fileName.substring(0, fileName.length() - APK_EXTENSION.length());
+    }
+
+    /**
+     * An entry read from an APK.
+     *
+     * @param split the path of the APK within the bundle, or null for a single APK.
+     * @param path  the path of the entry within the APK.
+     * @param bytes the contents of the entry.
+     */
+    private record Entry(String split, String path, byte[] bytes) {
+
+        String name() {
+            return this.split == null ? this.path : this.split + "!" + this.path;
+        }
+
+        /**
+         * Orders DEX files by their number, classes.dex being the first, everything else keeps the order of the APK.
+         */
+        int order() {
+            var matcher = DEX_ENTRY_PATTERN.matcher(this.path);
+            if (!matcher.matches()) {
+                return 0;
+            }
+            return matcher.group(1).isEmpty() ? 1 : Integer.parseInt(matcher.group(1));
+        }
+
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+/**
+ * The parts of the APK that an analysis step may read, either through the loaded jadx model or straight from the APK.
+ */
+public enum APKModelPart {
+
+    /**
+     * Classes, methods, fields and their decompiled code.
+     */
+    CODE,
+
+    /**
+     * Classes, methods, fields and their instructions, read straight from the DEX files without loading them into jadx.
+     */
+    DEX_CODE,
+
+    /**
+     * Resources such as the resource table and XML files.
+     */
+    RESOURCES;
+
+    /**
+     * Checks if this part covers the code of the APK, steps reading code only see the classes in scope when re-analyzing incrementally.
+     *
+     * @return true if this part is code.
+     */
+    public boolean isCode() {
+        return this == CODE || this == DEX_CODE;
+    }
+
+}
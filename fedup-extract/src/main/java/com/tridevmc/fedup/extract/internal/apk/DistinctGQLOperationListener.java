@@ -0,0 +1,33 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisListener;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.gql.RedditGQLOperation;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Passes each distinct GQL operation on to another listener the first time it's found, the same way
+ * {@link APKAnalysisResult} only keeps the first of equal operations, so what the listener receives matches the result.
+ * <p>
+ * A single instance has to be shared by everything that reports operations during an analysis.
+ */
+final class DistinctGQLOperationListener implements IAPKAnalysisListener {
+
+    private final IAPKAnalysisListener listener;
+    // Listeners are never called from more than one thread at a time, so this needs no synchronization of its own.
+    private final Set<RedditGQLOperation> seen = new HashSet<>();
+
+    DistinctGQLOperationListener(IAPKAnalysisListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onGQLOperation(IRedditGQLOperation operation) {
+        if (this.seen.add(new RedditGQLOperation(operation.getId(), operation.getName(), operation.getDefinition()))) {
+            this.listener.onGQLOperation(operation);
+        }
+    }
+
+}
@@ -1,6 +1,10 @@
 package com.tridevmc.fedup.extract.internal.apk;
 
-import jadx.api.JadxDecompiler;
+import com.tridevmc.fedup.extract.internal.strings.StringRule;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Performs a step in the APK analysis process and returns the result.
@@ -9,6 +13,59 @@ import jadx.api.JadxDecompiler;
  */
 public interface IAPKAnalysisStep<T> {
 
-    T perform(JadxDecompiler jadx);
+    T perform(APKAnalysisContext context);
+
+    /**
+     * Gets the name of this step, used to name the phase the step is measured under in the analysis metrics.
+     *
+     * @return the name of the step.
+     */
+    default String getName() {
+        return this.getClass().getSimpleName().replaceFirst("^APKAnalysisStep", "");
+    }
+
+    /**
+     * Gets the parts of the jadx model this step reads, used to decide what jadx needs to load.
+     *
+     * @return the model parts read by this step.
+     */
+    Set<APKModelPart> getModelParts();
+
+    /**
+     * Gets the type of the result of this step, used to store and restore results from the analysis cache.
+     *
+     * @return the type of the result.
+     */
+    Type getResultType();
+
+    /**
+     * Gets the steps that must complete before this step can be performed, their results are available through {@link APKAnalysisContext#getResult(Class)}.
+     *
+     * @return the types of the steps this step depends on.
+     */
+    default Set<Class<? extends IAPKAnalysisStep<?>>> getDependencies() {
+        return Set.of();
+    }
+
+    /**
+     * Gets the string constants this step wants to find in the APK, every rule registered by a scheduled step is checked
+     * in the single pass made by {@link APKAnalysisStepStringConstants}. A step registering rules must depend on it and
+     * reads its matches with {@link APKAnalysisStepStringConstants#getMatches(APKAnalysisContext, StringRule)}.
+     *
+     * @return the rules for the string constants this step reads.
+     */
+    default List<StringRule> getStringRules() {
+        return List.of();
+    }
+
+    /**
+     * Called instead of {@link #perform(APKAnalysisContext)} when the result is restored from the cache, so anything the
+     * step would have reported to the listener while performing is still reported.
+     *
+     * @param result  the restored result.
+     * @param context the context the step would have been performed with.
+     */
+    default void replay(T result, APKAnalysisContext context) {
+    }
 
 }
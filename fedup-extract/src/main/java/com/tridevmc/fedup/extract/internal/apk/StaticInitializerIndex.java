@@ -0,0 +1,117 @@
+package com.tridevmc.fedup.extract.internal.apk;
+
+import com.google.common.collect.ImmutableList;
+import jadx.core.dex.attributes.AType;
+import jadx.core.dex.instructions.args.ArgType;
+import jadx.core.dex.nodes.ClassNode;
+import jadx.core.dex.nodes.MethodNode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.StreamSupport;
+
+/**
+ * An index of the values static fields are initialized to, such as classes holding constants for every GQL operation.
+ * <p>
+ * Each class is decompiled and scanned at most once no matter how many times it is queried, so constant holders shared
+ * by thousands of constructors are only ever processed once per analysis. Only the text and type of each argument is
+ * kept, so the index stays valid after the holders are unloaded from jadx.
+ */
+public class StaticInitializerIndex {
+
+    private final Map<String, ImmutableList<StaticFieldInitializer>> initializersByHolder = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the initializers of the static fields of the given class, scanning the class if it hasn't been already.
+     *
+     * @param holder the class to get the field initializers of.
+     * @return the field initializers of the class, only fields initialized in the static initializer are included.
+     */
+    public ImmutableList<StaticFieldInitializer> getInitializersIn(ClassNode holder) {
+        return this.initializersByHolder.computeIfAbsent(holder.getRawName(), n -> this.scan(holder));
+    }
+
+    /**
+     * Gets the initializers of every static field that holds an instance of the class declaring the given constructor,
+     * looking only in the classes whose static initializer calls the constructor.
+     *
+     * @param constructor the constructor to find initializers for.
+     * @param checkpoint  run before each class is looked at, a constructor used by many classes means decompiling all
+     *                    of them so this lets the caller stop part way through by throwing.
+     * @return the matching field initializers.
+     */
+    public List<StaticFieldInitializer> getInitializersCalling(MethodNode constructor, Runnable checkpoint) {
+        var type = constructor.getParentClass();
+        return constructor.getUseIn().stream().filter(
+                m -> m.getMethodInfo().isClassInit()
+        ).map(MethodNode::getParentClass).distinct().peek(
+                holder -> checkpoint.run()
+        ).flatMap(
+                holder -> this.getInitializersIn(holder).stream()
+        ).filter(
+                i -> i.isOfType(type)
+        ).toList();
+    }
+
+    private ImmutableList<StaticFieldInitializer> scan(ClassNode holder) {
+        // Field initializers are only extracted once the class is decompiled, which won't have happened yet if jadx didn't save the sources.
+        holder.getTopParentClass().decompile();
+        var initializers = ImmutableList.<StaticFieldInitializer>builder();
+        for (var field : holder.getFields()) {
+            var fieldInitInsnAttr = field.get(AType.FIELD_INIT_INSN);
+            if (fieldInitInsnAttr != null) {
+                var arguments = fieldInitInsnAttr.getInsn().getArguments();
+                initializers.add(new StaticFieldInitializer(
+                        holder.getRawName(),
+                        field.getName(),
+                        field.getType(),
+                        StreamSupport.stream(arguments.spliterator(), false).map(
+                                a -> new Argument(a.getType(), a.toString())
+                        ).toList()
+                ));
+            }
+        }
+        return initializers.build();
+    }
+
+    /**
+     * The instruction a static field is initialized with.
+     *
+     * @param holderClass the raw name of the class declaring the field.
+     * @param fieldName   the name of the field.
+     * @param fieldType   the type of the field.
+     * @param args        the arguments of the initializing instruction, such as the arguments passed to a constructor.
+     */
+    public record StaticFieldInitializer(
+            String holderClass,
+            String fieldName,
+            ArgType fieldType,
+            List<Argument> args
+    ) {
+
+        /**
+         * Checks if the field holds an instance of the given class.
+         *
+         * @param type the class to check for.
+         * @return true if the field type is the given class.
+         */
+        public boolean isOfType(ClassNode type) {
+            return this.fieldType.isObject() && (Objects.equals(this.fieldType.getObject(), type.getRawName())
+                    || Objects.equals(this.fieldType.getObject(), type.getFullName()));
+        }
+
+    }
+
+    /**
+     * A single argument of a field initializer.
+     *
+     * @param type the type of the argument.
+     * @param text the argument as jadx prints it, such as a string literal wrapped in parentheses.
+     */
+    public record Argument(ArgType type, String text) {
+
+    }
+
+}
@@ -0,0 +1,308 @@
+package com.tridevmc.fedup.extract.internal.cache;
+
+import com.google.common.base.Suppliers;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.tridevmc.fedup.extract.api.apk.APKAnalysisOptions;
+import com.tridevmc.fedup.extract.api.apk.AnalysisEngine;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisResultJson;
+import com.tridevmc.fedup.extract.internal.apk.IAPKAnalysisStep;
+import jadx.api.JadxDecompiler;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * An on-disk cache of analysis results, keyed by the SHA-256 of the APK and the version of the extractor, which includes
+ * a hash of the extractor's code so results cached by another build are never used.
+ * <p>
+ * Each APK gets its own entry directory holding the final result and the result of every analysis step, entries are
+ * evicted least recently used first once the cache grows past its size limit. Eviction runs as entries that were
+ * written to are closed, rather than on every write, as it has to size every entry in the cache.
+ */
+public class AnalysisCache {
+
+    /**
+     * Bump this whenever the layout of the cached files changes, changes to the code are already covered by the build hash.
+     */
+    private static final int CACHE_FORMAT_VERSION = 2;
+
+    private static final String RESULT_FILE = "result.json";
+    private static final String STEP_DIR = "steps";
+    private static final String ACCESS_MARKER = ".last-access";
+
+    private static final TaggedLogger LOG = Logger.tag(AnalysisCache.class.getCanonicalName());
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final Supplier<String> BUILD_HASH = Suppliers.memoize(AnalysisCache::hashBuild);
+
+    private final Path cacheDir;
+    private final long maxSizeBytes;
+
+    public AnalysisCache(File cacheDir, long maxSizeBytes) {
+        this.cacheDir = cacheDir.toPath();
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Gets the version of the extractor used in cache keys, taken from the jar manifest when available and followed by
+     * a hash of the extractor and jadx builds, as the manifest version isn't changed for every build.
+     *
+     * @return the extractor version.
+     */
+    public static String getExtractorVersion() {
+        var implementationVersion = AnalysisCache.class.getPackage().getImplementationVersion();
+        return (implementationVersion == null ? "dev" : implementationVersion) + "." + CACHE_FORMAT_VERSION + "-" + BUILD_HASH.get();
+    }
+
+    /**
+     * Hashes the jars or class directories the extractor and jadx were loaded from.
+     *
+     * @return the first 12 characters of the hash, or a random value if the code can't be read so nothing cached by
+     * this process is ever reused by another.
+     */
+    private static String hashBuild() {
+        var hasher = Hashing.sha256().newHasher();
+        for (var type : List.of(AnalysisCache.class, JadxDecompiler.class)) {
+            try {
+                var codeSource = type.getProtectionDomain().getCodeSource();
+                if (codeSource == null) {
+                    throw new IOException("No code source for " + type.getName());
+                }
+                hashCode(hasher, Path.of(codeSource.getLocation().toURI()));
+            } catch (IOException | URISyntaxException | IllegalArgumentException | SecurityException e) {
+                LOG.warn(e, "Failed to hash the code of {}, cached results won't be reused by later runs.", type.getName());
+                return UUID.randomUUID().toString().substring(0, 12);
+            }
+        }
+        return hasher.hash().toString().substring(0, 12);
+    }
+
+    private static void hashCode(Hasher hasher, Path location) throws IOException {
+        if (!Files.isDirectory(location)) {
+            hasher.putBytes(com.google.common.io.Files.asByteSource(location.toFile()).hash(Hashing.sha256()).asBytes());
+            return;
+        }
+        try (var files = Files.walk(location)) {
+            for (var file : files.filter(Files::isRegularFile).sorted().toList()) {
+                hasher.putString(location.relativize(file).toString(), StandardCharsets.UTF_8);
+                hasher.putBytes(Files.readAllBytes(file));
+            }
+        }
+    }
+
+    /**
+     * Opens the cache entry for the given APK, hashing the APK file.
+     *
+     * @param apkFile the APK the entry is for.
+     * @param options the options the APK is analyzed with, options that change the result are part of the key.
+     * @return the cache entry for the APK.
+     */
+    public Entry open(File apkFile, APKAnalysisOptions options) {
+        try {
+            var apkHash = com.google.common.io.Files.asByteSource(apkFile).hash(Hashing.sha256()).toString();
+            var optionsKey = String.join(",", options.getIncludedPackages()) + ";" + String.join(",", options.getExcludedPackages());
+            if (options.getEngine() != AnalysisEngine.JADX) {
+                // Engines may disagree, and a cached result would skip the cross-check entirely. Only appended for the
+                // other engines so entries made before there was a choice of engine stay valid.
+                optionsKey += ";" + options.getEngine();
+            }
+            var optionsHash = Hashing.sha256().hashString(optionsKey, StandardCharsets.UTF_8).toString().substring(0, 12);
+            var key = apkHash + "-" + getExtractorVersion() + "-" + optionsHash;
+            return new Entry(this.cacheDir.resolve(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits within its size limit.
+     */
+    public synchronized void evict() {
+        if (!Files.isDirectory(this.cacheDir)) {
+            return;
+        }
+        try (var entryDirs = Files.list(this.cacheDir)) {
+            var entries = new ArrayList<EntryUsage>();
+            for (var entryDir : entryDirs.filter(Files::isDirectory).toList()) {
+                entries.add(new EntryUsage(entryDir, getSize(entryDir), getLastAccess(entryDir)));
+            }
+            var totalSize = entries.stream().mapToLong(EntryUsage::size).sum();
+            entries.sort(Comparator.comparing(EntryUsage::lastAccess));
+            for (var entry : entries) {
+                if (totalSize <= this.maxSizeBytes) {
+                    break;
+                }
+                LOG.debug("Evicting cache entry {} ({} bytes).", entry.dir().getFileName(), entry.size());
+                deleteRecursively(entry.dir());
+                totalSize -= entry.size();
+            }
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to evict analysis cache entries.");
+        }
+    }
+
+    private static long getSize(Path dir) throws IOException {
+        try (var files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    private static FileTime getLastAccess(Path dir) throws IOException {
+        var marker = dir.resolve(ACCESS_MARKER);
+        return Files.exists(marker) ? Files.getLastModifiedTime(marker) : Files.getLastModifiedTime(dir);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (var files = Files.walk(dir)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private record EntryUsage(Path dir, long size, FileTime lastAccess) {
+
+    }
+
+    /**
+     * The cached data for a single APK, to be closed once the analysis using it is done.
+     */
+    public class Entry implements AutoCloseable {
+
+        private final Path dir;
+        private volatile boolean written;
+
+        private Entry(Path dir) {
+            this.dir = dir;
+        }
+
+        /**
+         * Gets the cached final result of the analysis.
+         *
+         * @return the cached result, or empty if there is none.
+         */
+        public Optional<IAPKAnalysisResult> getResult() {
+            return this.read(this.dir.resolve(RESULT_FILE), s -> APKAnalysisResultJson.read(new StringReader(s)));
+        }
+
+        /**
+         * Stores the final result of the analysis.
+         *
+         * @param result the result to store.
+         */
+        public void putResult(IAPKAnalysisResult result) {
+            var out = new StringBuilder();
+            APKAnalysisResultJson.write(result, out);
+            this.write(this.dir.resolve(RESULT_FILE), out.toString());
+        }
+
+        /**
+         * Gets the cached result of an analysis step.
+         *
+         * @param step the step to get the result of.
+         * @param <T>  the type of the result.
+         * @return the cached result, or empty if there is none.
+         */
+        public <T> Optional<T> getStepResult(IAPKAnalysisStep<T> step) {
+            return this.read(this.getStepFile(step), s -> GSON.<T>fromJson(s, step.getResultType()));
+        }
+
+        /**
+         * Stores the result of an analysis step.
+         *
+         * @param step   the step the result is from.
+         * @param result the result to store.
+         */
+        public void putStepResult(IAPKAnalysisStep<?> step, Object result) {
+            this.write(this.getStepFile(step), GSON.toJson(result, step.getResultType()));
+        }
+
+        private Path getStepFile(IAPKAnalysisStep<?> step) {
+            return this.dir.resolve(STEP_DIR).resolve(step.getClass().getSimpleName() + ".json");
+        }
+
+        private <T> Optional<T> read(Path file, Function<String, T> parser) {
+            if (!Files.isRegularFile(file)) {
+                return Optional.empty();
+            }
+            String content;
+            try {
+                content = Files.readString(file);
+            } catch (IOException e) {
+                LOG.warn(e, "Failed to read analysis cache file {}.", file);
+                return Optional.empty();
+            }
+            T value;
+            try {
+                value = parser.apply(content);
+            } catch (RuntimeException e) {
+                // A damaged file or one in an older layout can fail anywhere in the reader, not only while parsing the JSON.
+                LOG.warn(e, "Ignoring analysis cache file {}, it's damaged or in an outdated format.", file);
+                return Optional.empty();
+            }
+            try {
+                this.touch();
+            } catch (IOException e) {
+                LOG.warn(e, "Failed to mark analysis cache entry {} as used.", this.dir);
+            }
+            return Optional.ofNullable(value);
+        }
+
+        private void write(Path file, String content) {
+            try {
+                Files.createDirectories(file.getParent());
+                // Write to a temporary file first so concurrent readers never see a partially written file.
+                var tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                Files.writeString(tempFile, content);
+                try {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                this.touch();
+                this.written = true;
+            } catch (IOException e) {
+                LOG.warn(e, "Failed to write analysis cache file {}.", file);
+            }
+        }
+
+        private void touch() throws IOException {
+            // Rewriting the empty marker bumps its modification time, which is what eviction orders entries by.
+            Files.createDirectories(this.dir);
+            Files.write(this.dir.resolve(ACCESS_MARKER), new byte[0]);
+        }
+
+        /**
+         * Evicts entries if this one grew, so the cache fits within its size limit again.
+         */
+        @Override
+        public void close() {
+            if (this.written) {
+                AnalysisCache.this.evict();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.tridevmc.fedup.extract.internal.cli;
+
+import com.tridevmc.fedup.extract.api.apk.APKAnalysisOptions;
+import com.tridevmc.fedup.extract.api.apk.AnalysisEngine;
+import com.tridevmc.fedup.extract.api.apk.AnalysisMode;
+import com.tridevmc.fedup.extract.internal.daemon.DaemonJobRequest;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The options shared by every command that analyzes APKs.
+ */
+public class AnalysisOptionsMixin {
+
+    @CommandLine.Option(names = {"-m", "--mode"}, description = "The analysis mode to use, one of: ${COMPLETION-CANDIDATES}. Defaults to ${DEFAULT-VALUE}.", defaultValue = "IN_MEMORY")
+    private AnalysisMode mode;
+
+    @CommandLine.Option(names = {"-e", "--engine"}, description = "The engine to find GQL operations with, one of: ${COMPLETION-CANDIDATES}. DEX reads the DEX files directly without decompiling, CROSS_CHECK runs both engines and reports any differences. Defaults to ${DEFAULT-VALUE}.", defaultValue = "JADX")
+    private AnalysisEngine engine;
+
+    @CommandLine.Option(names = {"--sources-dir"}, description = "The directory to save decompiled sources to when using SAVE_SOURCES mode. Defaults to ${DEFAULT-VALUE}.", defaultValue = "jadx-out")
+    private File sourcesDir;
+
+    @CommandLine.Option(names = {"--include-package"}, description = "Only scan classes in the given package, may be specified multiple times.")
+    private List<String> includedPackages = new ArrayList<>();
+
+    @CommandLine.Option(names = {"--exclude-package"}, description = "Never scan classes in the given package, may be specified multiple times.")
+    private List<String> excludedPackages = new ArrayList<>();
+
+    @CommandLine.Option(names = {"--no-cache"}, description = "Disables the analysis cache, forcing the APK to be analyzed from scratch.")
+    private boolean noCache;
+
+    @CommandLine.Option(names = {"--cache-dir"}, description = "The directory to cache analysis results in. Defaults to ${DEFAULT-VALUE}.", defaultValue = "${sys:user.home}/.cache/fedup-extract")
+    private File cacheDir;
+
+    @CommandLine.Option(names = {"--cache-max-size"}, description = "The maximum size of the analysis cache in megabytes. Defaults to ${DEFAULT-VALUE}.", defaultValue = "1024")
+    private long cacheMaxSizeMegabytes;
+
+    @CommandLine.Option(names = {"-t", "--threads"}, description = "The number of threads to decompile and scan classes with. Defaults to the number of available processors.")
+    private Integer threads;
+
+    @CommandLine.Option(names = {"--memory-budget"}, description = "Runs in low-memory mode, scanning classes in batches and unloading them afterwards to stay within the given heap in megabytes.")
+    private Long memoryBudgetMegabytes;
+
+    @CommandLine.Option(names = {"--time-budget"}, description = "Stops the analysis after the given number of seconds, writing the operations found so far as a partial result.")
+    private Long timeBudgetSeconds;
+
+    @CommandLine.Option(names = {"--step-time-budget"}, description = "Stops any single analysis step after the given number of seconds, keeping what it found so far. Steps depending on it are skipped, the rest still run.")
+    private Long stepTimeBudgetSeconds;
+
+    /**
+     * Creates the analysis options from the parsed command line.
+     *
+     * @return the analysis options.
+     */
+    public APKAnalysisOptions toOptions() {
+        return this.toSettings().toOptions();
+    }
+
+    /**
+     * Creates the analysis settings sent to the daemon from the parsed command line, with every path made absolute.
+     *
+     * @return the analysis settings.
+     */
+    public DaemonJobRequest.AnalysisSettings toSettings() {
+        return new DaemonJobRequest.AnalysisSettings(
+                this.mode,
+                this.engine,
+                this.sourcesDir.getAbsolutePath(),
+                List.copyOf(this.includedPackages),
+                List.copyOf(this.excludedPackages),
+                this.noCache ? null : this.cacheDir.getAbsolutePath(),
+                this.cacheMaxSizeMegabytes * 1024L * 1024L,
+                this.threads,
+                this.memoryBudgetMegabytes == null ? null : this.memoryBudgetMegabytes * 1024L * 1024L,
+                this.timeBudgetSeconds == null ? null : this.timeBudgetSeconds * 1000L,
+                this.stepTimeBudgetSeconds == null ? null : this.stepTimeBudgetSeconds * 1000L
+        );
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.tridevmc.fedup.extract.internal.cli;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalyzer;
+import com.tridevmc.fedup.extract.internal.apk.APKInput;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Command(name = "batch", description = "Extracts data from many APKs, writing a result file for each to the given output directory.")
+public class CommandBatch implements Callable<Integer> {
+
+    // Created when the command runs rather than statically, as creating a logger applies the tinylog configuration and
+    // extract turns logging off when writing to stdout.
+    private TaggedLogger log;
+
+    @CommandLine.Option(names = {"-i", "--input"}, description = "A directory to search for APKs and app bundles (.apks, .xapk), or a text file listing one path per line.", required = true)
+    private File input;
+
+    @CommandLine.Option(names = {"-o", "--output-dir"}, description = "The directory to write a result file for each APK to, APKs found in subdirectories of the input directory are written to the same subdirectories.", required = true)
+    private File outputDir;
+
+    @CommandLine.Option(names = {"-w", "--workers"}, description = "The maximum number of APKs to analyze at the same time. Defaults to ${DEFAULT-VALUE}.", defaultValue = "2")
+    private int workers;
+
+    @CommandLine.Option(names = {"--heap-budget"}, description = "The amount of heap in megabytes that APKs being analyzed may use between them. Defaults to 80% of the maximum heap.")
+    private Long heapBudgetMegabytes;
+
+    @CommandLine.Option(names = {"--heap-per-apk-byte"}, description = "The estimated number of heap bytes needed to analyze each byte of an APK. Defaults to ${DEFAULT-VALUE}.", defaultValue = "12")
+    private long heapPerAPKByte;
+
+    @CommandLine.Option(names = {"--overwrite"}, description = "Re-analyzes APKs that already have an output file instead of skipping them.")
+    private boolean overwrite;
+
+    @CommandLine.Mixin
+    private AnalysisOptionsMixin analysisOptions;
+
+    @CommandLine.Mixin
+    private OutputOptionsMixin outputOptions;
+
+    @Override
+    public Integer call() throws Exception {
+        this.log = Logger.tag("fedup-extract");
+        var apkFiles = this.findAPKs();
+        if (apkFiles.isEmpty()) {
+            this.log.info("No APKs found in {}.", this.input);
+            return 1;
+        }
+        var outputFiles = this.getOutputFiles(apkFiles);
+        if (outputFiles == null) {
+            return 1;
+        }
+        Files.createDirectories(this.outputDir.toPath());
+
+        var heapBudgetBytes = this.heapBudgetMegabytes != null ? this.heapBudgetMegabytes * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 10 * 8;
+        // Permits are counted in megabytes to stay well within the range of an int.
+        var heapBudgetPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, heapBudgetBytes / (1024L * 1024L)));
+        var heapPermits = new Semaphore(heapBudgetPermits, true);
+        var threadFactory = new ThreadFactoryBuilder().setNameFormat("fedup-batch-worker-%d").setDaemon(true).build();
+        var executor = Executors.newFixedThreadPool(Math.max(1, this.workers), threadFactory);
+        var succeeded = new AtomicInteger();
+        var skipped = new AtomicInteger();
+        var analyzedBytes = new AtomicLong();
+        var failures = Collections.synchronizedList(new ArrayList<String>());
+        var stopwatch = Stopwatch.createStarted();
+        this.log.info("Analyzing {} APKs with {} workers and a heap budget of {} MB.", apkFiles.size(), this.workers, heapBudgetPermits);
+        try {
+            for (var apkFile : apkFiles) {
+                var outputFile = outputFiles.get(apkFile);
+                if (!this.overwrite && outputFile.exists()) {
+                    this.log.info("Skipping {}, output already exists.", apkFile.getName());
+                    skipped.incrementAndGet();
+                    continue;
+                }
+                // An APK that is estimated to need more than the whole budget still gets to run, just on its own.
+                var cost = (int) Math.min(heapBudgetPermits, Math.max(1, this.estimateHeapBytes(apkFile) / (1024L * 1024L)));
+                heapPermits.acquire(cost);
+                executor.execute(() -> {
+                    try {
+                        this.analyze(apkFile, outputFile);
+                        succeeded.incrementAndGet();
+                        analyzedBytes.addAndGet(apkFile.length());
+                    } catch (Exception | OutOfMemoryError e) {
+                        this.log.error(e, "Failed to analyze {}.", apkFile);
+                        failures.add(apkFile.getName() + ": " + e);
+                    } finally {
+                        heapPermits.release(cost);
+                    }
+                });
+            }
+        } finally {
+            this.awaitTermination(executor);
+        }
+
+        var elapsedSeconds = Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS)) / 1000D;
+        this.log.info("Analyzed {} of {} APKs in {}, {} skipped and {} failed.", succeeded.get(), apkFiles.size(), stopwatch, skipped.get(), failures.size());
+        this.log.info("Throughput: {} APKs/min, {} MB/s.",
+                 String.format("%.2f", succeeded.get() / elapsedSeconds * 60),
+                 String.format("%.2f", analyzedBytes.get() / (1024D * 1024D) / elapsedSeconds));
+        failures.forEach(f -> this.log.info("Failed: {}", f));
+        return failures.isEmpty() ? 0 : 1;
+    }
+
+    private void analyze(File apkFile, File outputFile) throws IOException {
+        var stopwatch = Stopwatch.createStarted();
+        try (var analyzer = IAPKAnalyzer.createFor(apkFile, this.analysisOptions.toOptions())) {
+            var outputPath = outputFile.toPath();
+            Files.createDirectories(outputPath.getParent());
+            // Write to a temporary file first so an interrupted batch never leaves behind output that would be skipped on the next run.
+            var tempFile = Files.createTempFile(outputPath.getParent(), outputFile.getName(), ".tmp");
+            IAPKAnalysisResult result;
+            try {
+                try (var resultWriter = this.outputOptions.createWriter(Files.newBufferedWriter(tempFile))) {
+                    result = analyzer.analyzeAPK(resultWriter);
+                    resultWriter.finish(result);
+                }
+                try {
+                    Files.move(tempFile, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, outputPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            this.log.info("Analyzed {} in {}, found {} operations.", apkFile.getName(), stopwatch, result.getGQLOperations().size());
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            this.log.debug("Waiting for batch workers to finish.");
+        }
+    }
+
+    /**
+     * Estimates the heap needed to analyze the given APK, in low-memory mode that's the memory budget rather than
+     * an estimate based on the size of the APK.
+     *
+     * @param apkFile the APK to estimate the heap usage of.
+     * @return the estimated heap usage in bytes.
+     */
+    private long estimateHeapBytes(File apkFile) {
+        var estimate = apkFile.length() * this.heapPerAPKByte;
+        var memoryBudget = this.analysisOptions.toOptions().getMemoryBudgetBytes();
+        return memoryBudget > 0 ? Math.min(estimate, memoryBudget) : estimate;
+    }
+
+    /**
+     * Gets the output file of each APK, APKs found in a subdirectory of the input directory are written to the same
+     * subdirectory of the output directory.
+     *
+     * @param apkFiles the APKs to get the output files of.
+     * @return the output file of each APK, or null if several APKs would be written to the same file.
+     */
+    private Map<File, File> getOutputFiles(List<File> apkFiles) {
+        var inputPath = this.input.toPath();
+        var outputFiles = new LinkedHashMap<File, File>();
+        for (var apkFile : apkFiles) {
+            var outputDir = this.outputDir.toPath();
+            if (Files.isDirectory(inputPath)) {
+                var parent = inputPath.relativize(apkFile.toPath()).getParent();
+                if (parent != null) {
+                    outputDir = outputDir.resolve(parent);
+                }
+            }
+            outputFiles.put(apkFile, outputDir.resolve(APKInput.getBaseName(apkFile) + "." + this.outputOptions.getFileExtension()).toFile());
+        }
+        // APKs sharing a base name, like app.apk and app.xapk, would overwrite each other or be skipped as already done.
+        var clashes = outputFiles.entrySet().stream().collect(
+                Collectors.groupingBy(e -> e.getValue().getAbsoluteFile(), LinkedHashMap::new, Collectors.mapping(Map.Entry::getKey, Collectors.toList()))
+        ).entrySet().stream().filter(e -> e.getValue().size() > 1).toList();
+        if (clashes.isEmpty()) {
+            return outputFiles;
+        }
+        clashes.forEach(c -> this.log.error("{} would all be written to {}.", c.getValue(), c.getKey()));
+        this.log.error("Rename or remove the APKs above so each has its own output file.");
+        return null;
+    }
+
+    private List<File> findAPKs() throws IOException {
+        var inputPath = this.input.toPath();
+        if (Files.isDirectory(inputPath)) {
+            try (var files = Files.walk(inputPath)) {
+                return files.filter(Files::isRegularFile)
+                        .filter(p -> APKInput.isSupported(p.toFile()))
+                        .sorted()
+                        .map(Path::toFile)
+                        .toList();
+            }
+        }
+        if (!Files.isRegularFile(inputPath)) {
+            return List.of();
+        }
+        // Relative paths in a list file are resolved against the directory the list is in.
+        var baseDir = inputPath.toAbsolutePath().getParent();
+        return Files.readAllLines(inputPath).stream()
+                .map(String::trim)
+                .filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                .map(l -> baseDir.resolve(l).toFile())
+                .toList();
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.tridevmc.fedup.extract.internal.cli;
+
+import com.tridevmc.fedup.extract.internal.daemon.DaemonClient;
+import com.tridevmc.fedup.extract.internal.daemon.DaemonInfo;
+import com.tridevmc.fedup.extract.internal.daemon.ExtractionDaemon;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+
+@Command(name = "daemon", description = "Runs a long-lived extraction process that keeps jadx and recently used APKs loaded, run extract with --daemon to send jobs to it.")
+public class CommandDaemon implements Callable<Integer> {
+
+    // Created when the command runs rather than statically, as creating a logger applies the tinylog configuration and
+    // extract turns logging off when writing to stdout.
+    private TaggedLogger log;
+
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    @CommandLine.Option(names = {"-p", "--port"}, description = "The port to listen on, on the loopback address. Defaults to any free port.", defaultValue = "0")
+    private int port;
+
+    @CommandLine.Option(names = {"-w", "--workers"}, description = "The maximum number of jobs to run at the same time, the rest are queued. Defaults to ${DEFAULT-VALUE}.", defaultValue = "1")
+    private int workers;
+
+    @CommandLine.Option(names = {"--max-warm-apks"}, description = "The maximum number of APKs to keep loaded between jobs. Defaults to ${DEFAULT-VALUE}.", defaultValue = "2")
+    private int maxWarmAPKs;
+
+    @CommandLine.Option(names = {"--info-file"}, description = "The file the daemon writes its port and access token to. Defaults to ${DEFAULT-VALUE}.", defaultValue = DaemonInfo.DEFAULT_PATH)
+    private File infoFile;
+
+    @CommandLine.Option(names = {"--list"}, description = "Lists the jobs of the running daemon instead of starting one.")
+    private boolean list;
+
+    @CommandLine.Option(names = {"--cancel"}, description = "Cancels the job with the given ID on the running daemon instead of starting one.")
+    private String cancel;
+
+    @CommandLine.Option(names = {"--stop"}, description = "Stops the running daemon instead of starting one.")
+    private boolean stop;
+
+    @Override
+    public Integer call() throws Exception {
+        this.log = Logger.tag("fedup-extract");
+        if (this.list || this.cancel != null || this.stop) {
+            return this.control();
+        }
+        if (this.workers < 1 || this.maxWarmAPKs < 1) {
+            throw new CommandLine.ParameterException(this.spec.commandLine(), "--workers and --max-warm-apks must be at least 1.");
+        }
+        var infoPath = this.infoFile.toPath();
+        if (Files.isRegularFile(infoPath)) {
+            var previous = DaemonInfo.read(infoPath);
+            if (ProcessHandle.of(previous.pid()).map(ProcessHandle::isAlive).orElse(false)) {
+                this.log.info("A daemon is already running with PID {}, stop it with --stop first.", previous.pid());
+                return 1;
+            }
+        }
+        try (var daemon = new ExtractionDaemon(this.port, this.workers, this.maxWarmAPKs)) {
+            daemon.start();
+            var info = daemon.getInfo();
+            info.write(infoPath);
+            Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "fedup-daemon-shutdown-hook"));
+            this.log.info("Daemon listening on port {} with {} workers, info written to {}.", info.port(), this.workers, infoPath);
+            try {
+                daemon.awaitShutdown();
+            } finally {
+                // Only remove the info file if it still points at this daemon.
+                if (Files.isRegularFile(infoPath) && DaemonInfo.read(infoPath).equals(info)) {
+                    Files.delete(infoPath);
+                }
+            }
+        }
+        return 0;
+    }
+
+    private int control() throws Exception {
+        var client = DaemonClient.connect(this.infoFile.toPath());
+        if (this.list) {
+            for (var job : client.getJobs()) {
+                this.log.info("Job {}: {} {} ({} ms){}", job.id(), job.state(), job.apk(), job.elapsedMillis(), job.error() == null ? "" : ", " + job.error());
+            }
+        }
+        if (this.cancel != null) {
+            var status = client.cancel(this.cancel);
+            this.log.info("Job {} is {}.", status.id(), status.state());
+        }
+        if (this.stop) {
+            client.shutdown();
+            this.log.info("Daemon stopped.");
+        }
+        return 0;
+    }
+
+}
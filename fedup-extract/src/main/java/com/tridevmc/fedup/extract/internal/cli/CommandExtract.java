@@ -2,28 +2,76 @@ package com.tridevmc.fedup.extract.internal.cli;
 
 
 import com.google.gson.GsonBuilder;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
 import com.tridevmc.fedup.extract.api.apk.IAPKAnalyzer;
+import com.tridevmc.fedup.extract.api.gql.IGQLOperationCatalog;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisResultWriter;
+import com.tridevmc.fedup.extract.internal.apk.APKInput;
+import com.tridevmc.fedup.extract.internal.daemon.DaemonClient;
+import com.tridevmc.fedup.extract.internal.daemon.DaemonInfo;
+import com.tridevmc.fedup.extract.internal.daemon.DaemonJobRequest;
 import org.tinylog.Logger;
 import org.tinylog.TaggedLogger;
 import org.tinylog.configuration.Configuration;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.Callable;
 
-@Command(name = "extract", description = "Extracts data from an APK and exports it to the given JSON file or stdout.")
+@Command(name = "extract", description = "Extracts data from an APK and exports it to the given JSON file or stdout.", subcommands = {CommandBatch.class, CommandDaemon.class})
 public class CommandExtract implements Callable<Integer> {
 
-    @CommandLine.Option(names = {"-i", "--input"}, description = "The APK to extract data from.", required = true)
+    @CommandLine.Option(names = {"-i", "--input"}, description = "The APK or app bundle (.apks, .xapk) to extract data from.")
     private String input;
 
-    @CommandLine.Option(names = {"-o", "--output"}, description = "The JSON file to export data to. If not specified, will export to stdout.", required = false)
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    @CommandLine.Option(names = {"-o", "--output"}, description = "The file to export data to. If not specified, will export to stdout.", required = false)
     private String output;
 
+    @CommandLine.Mixin
+    private AnalysisOptionsMixin analysisOptions;
+
+    @CommandLine.Mixin
+    private OutputOptionsMixin outputOptions;
+
+    @CommandLine.Option(names = {"--previous-snapshot"}, description = "A snapshot from a previous extraction, only classes that changed since then are re-analyzed.")
+    private File previousSnapshot;
+
+    @CommandLine.Option(names = {"--snapshot"}, description = "The file to write a snapshot of this extraction to, for use with --previous-snapshot.")
+    private File snapshot;
+
+    @CommandLine.Option(names = {"--diff"}, description = "The JSON file to write the operations added, removed and changed since the previous snapshot to.")
+    private File diff;
+
+    @CommandLine.Option(names = {"--catalog"}, description = "The file to also write the operations to as a binary catalog, which can be looked up without reading the whole file.")
+    private File catalog;
+
+    @CommandLine.Option(names = {"--daemon"}, description = "Sends the extraction to a running daemon rather than running it in this process.")
+    private boolean daemon;
+
+    @CommandLine.Option(names = {"--daemon-info-file"}, description = "The info file written by the daemon to send the extraction to. Defaults to ${DEFAULT-VALUE}.", defaultValue = DaemonInfo.DEFAULT_PATH)
+    private File daemonInfoFile;
+
+    @CommandLine.Option(names = {"--metrics"}, description = "The JSON file to write timings, allocations and counters for each phase of the extraction to.")
+    private File metrics;
+
     @Override
     public Integer call() throws Exception {
+        if (this.input == null) {
+            // Input can't be required by picocli as it would also be required when running a subcommand.
+            throw new CommandLine.ParameterException(this.spec.commandLine(), "Missing required option: '--input=<input>'");
+        }
         var exportToStdout = this.output == null;
         var inputFile = new File(this.input);
         TaggedLogger LOG = null;
@@ -31,24 +79,42 @@ public class CommandExtract implements Callable<Integer> {
             LOG = Logger.tag("fedup-extract");
         }
         if (inputFile.exists()) {
-            if (inputFile.getName().endsWith(".apk")) {
+            if (APKInput.isSupported(inputFile)) {
+                if (this.daemon) {
+                    return this.forwardToDaemon(inputFile);
+                }
                 if (exportToStdout) {
                     // Set the tinylog logging level to OFF to prevent any logging from being output to stdout.
                     Configuration.set("level", "off");
-                    var out = this.generateOutputString(inputFile);
-                    System.out.println(out);
+                    // Stdout is left open, finishing the result flushes everything that was written to it.
+                    var out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                    this.writeOutput(inputFile, this.outputOptions.createWriter(out));
                 } else {
                     var outputFile = new File(this.output);
                     if (outputFile.exists()) {
                         LOG.info("Output file already exists, please select a different output file.");
                         return 1;
                     }
-                    var outputString = this.generateOutputString(inputFile);
-                    Files.writeString(outputFile.toPath(), outputString);
+                    var outputPath = outputFile.toPath().toAbsolutePath();
+                    // Streamed next to the output first, so a failed extraction never leaves behind a partial result
+                    // that would stop it from being run again.
+                    var tempFile = Files.createTempFile(outputPath.getParent(), outputPath.getFileName().toString(), ".tmp");
+                    try {
+                        try (var resultWriter = this.outputOptions.createWriter(Files.newBufferedWriter(tempFile))) {
+                            this.writeOutput(inputFile, resultWriter);
+                        }
+                        try {
+                            Files.move(tempFile, outputPath, StandardCopyOption.ATOMIC_MOVE);
+                        } catch (AtomicMoveNotSupportedException e) {
+                            Files.move(tempFile, outputPath);
+                        }
+                    } finally {
+                        Files.deleteIfExists(tempFile);
+                    }
                 }
                 return 0;
             } else {
-                LOG.info("Input file is not an APK.");
+                LOG.info("Input file is not an APK or an app bundle (.apks, .xapk).");
                 return 1;
             }
         } else {
@@ -57,11 +123,104 @@ public class CommandExtract implements Callable<Integer> {
         }
     }
 
-    private String generateOutputString(File inputFile) {
-        var analyzer = IAPKAnalyzer.createFor(inputFile);
-        var result = analyzer.analyzeAPK();
-        var gson = new GsonBuilder().setPrettyPrinting().create();
-        return gson.toJson(result);
+    private int forwardToDaemon(File inputFile) throws IOException, InterruptedException {
+        if (this.previousSnapshot != null || this.snapshot != null || this.diff != null || this.metrics != null) {
+            throw new CommandLine.ParameterException(this.spec.commandLine(), "--previous-snapshot, --snapshot, --diff and --metrics can't be used with --daemon.");
+        }
+        var exportToStdout = this.output == null;
+        if (exportToStdout) {
+            // Logging has to be turned off before the first logger is created.
+            Configuration.set("level", "off");
+        }
+        var LOG = Logger.tag("fedup-extract");
+        if (!exportToStdout && new File(this.output).exists()) {
+            LOG.info("Output file already exists, please select a different output file.");
+            return 1;
+        }
+        var client = DaemonClient.connect(this.daemonInfoFile.toPath());
+        var request = new DaemonJobRequest(
+                inputFile.getAbsolutePath(),
+                exportToStdout ? null : new File(this.output).getAbsolutePath(),
+                this.outputOptions.getFormat(),
+                this.outputOptions.isPretty(),
+                this.catalog == null ? null : this.catalog.getAbsolutePath(),
+                this.analysisOptions.toSettings()
+        );
+        var job = client.submit(request);
+        LOG.info("Sent job {} to the daemon.", job.id());
+        // Interrupting the client cancels the job rather than leaving it running in the daemon.
+        var cancelHook = new Thread(() -> {
+            try {
+                client.cancel(job.id());
+            } catch (IOException | InterruptedException ignored) {
+                // The daemon is gone, so there's nothing left to cancel.
+            }
+        }, "fedup-daemon-cancel-hook");
+        Runtime.getRuntime().addShutdownHook(cancelHook);
+        var status = client.await(job.id());
+        Runtime.getRuntime().removeShutdownHook(cancelHook);
+        switch (status.state()) {
+            case SUCCEEDED -> {
+                if (exportToStdout) {
+                    // The daemon wrote the result to a temporary file, as it can't write to this process' stdout.
+                    var result = Path.of(status.output());
+                    Files.copy(result, System.out);
+                    System.out.flush();
+                    Files.delete(result);
+                }
+                LOG.info("Job {} found {} operations in {} ms.", status.id(), status.operations(), status.elapsedMillis());
+                if (status.skippedPhases() != null && !status.skippedPhases().isEmpty()) {
+                    LOG.warn("Job {} ran out of time in {}, the result is partial.", status.id(), String.join(", ", status.skippedPhases()));
+                }
+                return 0;
+            }
+            case CANCELLED -> LOG.info("Job {} was cancelled.", status.id());
+            default -> LOG.info("Job {} failed: {}", status.id(), status.error());
+        }
+        return 1;
+    }
+
+    private void writeOutput(File inputFile, APKAnalysisResultWriter resultWriter) throws IOException {
+        var options = this.analysisOptions.toOptions();
+        try (var analyzer = IAPKAnalyzer.createFor(inputFile, options)) {
+            try {
+                this.analyze(analyzer, resultWriter);
+            } finally {
+                // Metrics are written even if the extraction failed, they're most useful when figuring out why.
+                if (this.metrics != null && analyzer.getMetrics() != null) {
+                    try (var writer = Files.newBufferedWriter(this.metrics.toPath())) {
+                        analyzer.getMetrics().writeJson(writer);
+                    }
+                }
+            }
+        }
+    }
+
+    private void analyze(IAPKAnalyzer analyzer, APKAnalysisResultWriter resultWriter) throws IOException {
+        if (this.previousSnapshot == null && this.snapshot == null && this.diff == null) {
+            var result = analyzer.analyzeAPK(resultWriter);
+            resultWriter.finish(result);
+            this.writeCatalog(result);
+            return;
+        }
+        var incrementalResult = analyzer.analyzeAPKIncrementally(this.previousSnapshot, resultWriter);
+        resultWriter.finish(incrementalResult.getResult());
+        this.writeCatalog(incrementalResult.getResult());
+        if (this.snapshot != null) {
+            try (var writer = Files.newBufferedWriter(this.snapshot.toPath())) {
+                incrementalResult.writeSnapshot(writer);
+            }
+        }
+        if (this.diff != null) {
+            var gson = new GsonBuilder().setPrettyPrinting().create();
+            Files.writeString(this.diff.toPath(), gson.toJson(incrementalResult.getDiff()));
+        }
+    }
+
+    private void writeCatalog(IAPKAnalysisResult result) throws IOException {
+        if (this.catalog != null) {
+            IGQLOperationCatalog.write(result, this.catalog.toPath());
+        }
     }
 
 }
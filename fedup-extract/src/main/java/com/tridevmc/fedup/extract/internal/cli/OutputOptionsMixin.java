@@ -0,0 +1,47 @@
+package com.tridevmc.fedup.extract.internal.cli;
+
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisOutputFormat;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisResultWriter;
+import picocli.CommandLine;
+
+import java.io.Writer;
+
+/**
+ * The options shared by every command that writes analysis results.
+ */
+public class OutputOptionsMixin {
+
+    @CommandLine.Option(names = {"-f", "--format"}, description = "The format to write results in, one of: ${COMPLETION-CANDIDATES}. Defaults to ${DEFAULT-VALUE}.", defaultValue = "JSON")
+    private APKAnalysisOutputFormat format;
+
+    @CommandLine.Option(names = {"--pretty"}, negatable = true, description = "Pretty prints JSON output, ignored for NDJSON. Enabled by default.", defaultValue = "true", fallbackValue = "true")
+    private boolean pretty;
+
+    /**
+     * Gets the file extension matching the selected format.
+     *
+     * @return the file extension, without a leading dot.
+     */
+    public String getFileExtension() {
+        return this.format == APKAnalysisOutputFormat.NDJSON ? "ndjson" : "json";
+    }
+
+    public APKAnalysisOutputFormat getFormat() {
+        return this.format;
+    }
+
+    public boolean isPretty() {
+        return this.pretty;
+    }
+
+    /**
+     * Creates a result writer for the selected format.
+     *
+     * @param out the writer to write results to.
+     * @return the result writer.
+     */
+    public APKAnalysisResultWriter createWriter(Writer out) {
+        return new APKAnalysisResultWriter(out, this.format, this.pretty);
+    }
+
+}
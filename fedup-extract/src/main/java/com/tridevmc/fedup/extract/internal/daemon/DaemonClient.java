@@ -0,0 +1,138 @@
+package com.tridevmc.fedup.extract.internal.daemon;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Forwards jobs to a running {@link ExtractionDaemon}.
+ */
+public class DaemonClient {
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final URI baseUri;
+    private final String token;
+
+    private DaemonClient(DaemonInfo info) {
+        this.baseUri = URI.create("http://127.0.0.1:" + info.port());
+        this.token = info.token();
+    }
+
+    /**
+     * Creates a client for the daemon described by the given info file.
+     *
+     * @param infoFile the info file the daemon wrote when it started.
+     * @return the client.
+     * @throws IOException if there is no info file, meaning no daemon is running.
+     */
+    public static DaemonClient connect(Path infoFile) throws IOException {
+        if (!Files.isRegularFile(infoFile)) {
+            throw new IOException("No daemon is running, start one with the daemon command. Looked for " + infoFile);
+        }
+        return new DaemonClient(DaemonInfo.read(infoFile));
+    }
+
+    /**
+     * Queues a job on the daemon.
+     *
+     * @param request the job to queue.
+     * @return the status of the queued job.
+     * @throws IOException if the daemon can't be reached or refuses the job.
+     */
+    public DaemonJobStatus submit(DaemonJobRequest request) throws IOException, InterruptedException {
+        return GSON.fromJson(this.send("POST", "/jobs", GSON.toJson(request)), DaemonJobStatus.class);
+    }
+
+    public DaemonJobStatus getStatus(String id) throws IOException, InterruptedException {
+        return GSON.fromJson(this.send("GET", "/jobs/" + id, null), DaemonJobStatus.class);
+    }
+
+    public List<DaemonJobStatus> getJobs() throws IOException, InterruptedException {
+        return GSON.fromJson(this.send("GET", "/jobs", null), new TypeToken<List<DaemonJobStatus>>() {
+        }.getType());
+    }
+
+    /**
+     * Cancels a job on the daemon.
+     *
+     * @param id the ID of the job.
+     * @return the status of the job after cancelling it, jobs that had already finished are left as they were.
+     * @throws IOException if the daemon can't be reached or doesn't know the job.
+     */
+    public DaemonJobStatus cancel(String id) throws IOException, InterruptedException {
+        return GSON.fromJson(this.send("DELETE", "/jobs/" + id, null), DaemonJobStatus.class);
+    }
+
+    /**
+     * Waits for a job to finish, polling its status.
+     *
+     * @param id the ID of the job.
+     * @return the status of the finished job.
+     * @throws IOException if the daemon can't be reached.
+     */
+    public DaemonJobStatus await(String id) throws IOException, InterruptedException {
+        while (true) {
+            var status = this.getStatus(id);
+            if (status.state().isFinished()) {
+                return status;
+            }
+            Thread.sleep(POLL_INTERVAL.toMillis());
+        }
+    }
+
+    /**
+     * Asks the daemon to cancel every job and stop.
+     *
+     * @throws IOException if the daemon can't be reached.
+     */
+    public void shutdown() throws IOException, InterruptedException {
+        this.send("POST", "/shutdown", null);
+    }
+
+    private String send(String method, String path, String body) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(this.baseUri.resolve(path))
+                .header(ExtractionDaemon.TOKEN_HEADER, this.token)
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = this.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (ConnectException e) {
+            throw new IOException("Failed to connect to the daemon at " + this.baseUri + ", it may have stopped without cleaning up its info file.", e);
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("The daemon responded with " + response.statusCode() + ": " + this.getError(response.body()));
+        }
+        return response.body();
+    }
+
+    private String getError(String body) {
+        try {
+            var json = JsonParser.parseString(body);
+            if (json.isJsonObject() && json.getAsJsonObject().has("error")) {
+                return ((JsonObject) json).get("error").getAsString();
+            }
+        } catch (JsonParseException | IllegalStateException ignored) {
+            // Not an error from the daemon, fall through to the raw body.
+        }
+        return body;
+    }
+
+}
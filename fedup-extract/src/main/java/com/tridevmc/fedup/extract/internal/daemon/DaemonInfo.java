@@ -0,0 +1,68 @@
+package com.tridevmc.fedup.extract.internal.daemon;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Where a running daemon can be reached, written to a file only the user running the daemon can read so the token
+ * doubles as proof that a client is run by the same user.
+ *
+ * @param port  the port the daemon listens on, on the loopback address.
+ * @param token the token every request must carry.
+ * @param pid   the process ID of the daemon.
+ */
+public record DaemonInfo(int port, String token, long pid) {
+
+    public static final String DEFAULT_PATH = "${sys:user.home}/.cache/fedup-extract/daemon.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Reads the info of a running daemon.
+     *
+     * @param path the path of the info file.
+     * @return the daemon info.
+     * @throws IOException if the file doesn't exist or can't be read.
+     */
+    public static DaemonInfo read(Path path) throws IOException {
+        try {
+            var info = GSON.fromJson(Files.readString(path, StandardCharsets.UTF_8), DaemonInfo.class);
+            if (info == null || info.token() == null) {
+                throw new IOException("Daemon info file " + path + " is empty.");
+            }
+            return info;
+        } catch (JsonParseException e) {
+            throw new IOException("Failed to read daemon info file " + path + ".", e);
+        }
+    }
+
+    /**
+     * Writes this info to the given path, readable only by the current user where the file system allows it.
+     *
+     * @param path the path of the info file.
+     * @throws IOException if the file can't be written.
+     */
+    public void write(Path path) throws IOException {
+        var dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        var tempFile = Files.createTempFile(dir, "daemon", ".tmp");
+        try {
+            if (Files.getFileStore(tempFile).supportsFileAttributeView("posix")) {
+                Files.setPosixFilePermissions(tempFile, PosixFilePermissions.fromString("rw-------"));
+            }
+            Files.writeString(tempFile, GSON.toJson(this), StandardCharsets.UTF_8);
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+}
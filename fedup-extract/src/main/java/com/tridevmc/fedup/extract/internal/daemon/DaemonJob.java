@@ -0,0 +1,134 @@
+package com.tridevmc.fedup.extract.internal.daemon;
+
+import com.tridevmc.fedup.extract.internal.daemon.DaemonJobStatus.State;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * A job queued on the daemon, tracking its state as it is run by a worker.
+ */
+class DaemonJob {
+
+    private final String id;
+    private final DaemonJobRequest request;
+    private State state = State.QUEUED;
+    private Future<?> future;
+    private Thread worker;
+    private long startNanos;
+    private long finishNanos;
+    private int operations;
+    private String output;
+    private List<String> skippedPhases;
+    private String error;
+
+    DaemonJob(String id, DaemonJobRequest request) {
+        this.id = id;
+        this.request = request;
+    }
+
+    String getId() {
+        return this.id;
+    }
+
+    DaemonJobRequest getRequest() {
+        return this.request;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Marks the job as running on the current thread.
+     *
+     * @return false if the job was cancelled while it was queued and must not be run.
+     */
+    synchronized boolean start() {
+        if (this.state != State.QUEUED) {
+            return false;
+        }
+        this.state = State.RUNNING;
+        this.worker = Thread.currentThread();
+        this.startNanos = System.nanoTime();
+        return true;
+    }
+
+    synchronized void succeed(String output, int operations, List<String> skippedPhases) {
+        this.finish(State.SUCCEEDED);
+        this.output = output;
+        this.operations = operations;
+        this.skippedPhases = skippedPhases;
+    }
+
+    synchronized void fail(String error) {
+        this.finish(State.FAILED);
+        this.error = error;
+    }
+
+    private void finish(State state) {
+        if (this.state == State.RUNNING) {
+            this.state = state;
+            this.finishNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Detaches the job from the worker that ran it, called by the worker once it's done with the job however it ended.
+     */
+    synchronized void detach() {
+        if (this.worker == Thread.currentThread()) {
+            this.worker = null;
+            // Clears the interrupt a cancellation may have left behind, so it can't leak into the next job on this worker.
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Cancels the job, a queued job is dropped from the queue and a running job is interrupted and stops at the next
+     * point it checks for cancellation.
+     *
+     * @return false if the job had already finished.
+     */
+    synchronized boolean cancel() {
+        if (this.state.isFinished()) {
+            return false;
+        }
+        if (this.state == State.RUNNING) {
+            this.finishNanos = System.nanoTime();
+            if (this.worker != null) {
+                this.worker.interrupt();
+            }
+        } else if (this.future != null) {
+            this.future.cancel(false);
+        }
+        this.state = State.CANCELLED;
+        return true;
+    }
+
+    synchronized boolean isCancelled() {
+        return this.state == State.CANCELLED;
+    }
+
+    /**
+     * Throws if the job has been cancelled, called by the worker between the phases of a job.
+     *
+     * @throws CancellationException if the job has been cancelled.
+     */
+    void checkCancelled() {
+        if (this.isCancelled()) {
+            throw new CancellationException("Job " + this.id + " was cancelled.");
+        }
+    }
+
+    synchronized DaemonJobStatus toStatus() {
+        var elapsedNanos = switch (this.state) {
+            case QUEUED -> 0L;
+            case RUNNING -> System.nanoTime() - this.startNanos;
+            default -> this.startNanos == 0 ? 0L : this.finishNanos - this.startNanos;
+        };
+        return new DaemonJobStatus(this.id, this.request.apk(), this.state, this.operations, this.output, this.skippedPhases, this.error, elapsedNanos / 1_000_000L);
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.tridevmc.fedup.extract.internal.daemon;
+
+import com.tridevmc.fedup.extract.api.apk.APKAnalysisOptions;
+import com.tridevmc.fedup.extract.api.apk.AnalysisEngine;
+import com.tridevmc.fedup.extract.api.apk.AnalysisMode;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisOutputFormat;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * An extraction job sent to the daemon, all paths must be absolute as the daemon runs from its own working directory.
+ *
+ * @param apk      the APK to extract data from.
+ * @param output   the file to write the result to, or null to have the daemon write it to a temporary file.
+ * @param format   the format to write the result in.
+ * @param pretty   whether JSON output is pretty printed.
+ * @param catalog  the file to also write an operation catalog to, may be null.
+ * @param analysis the options to analyze the APK with.
+ */
+public record DaemonJobRequest(
+        String apk,
+        String output,
+        APKAnalysisOutputFormat format,
+        boolean pretty,
+        String catalog,
+        AnalysisSettings analysis
+) {
+
+    /**
+     * The analysis options of a job in a form that can be sent as JSON, jobs with equal settings for the same APK share
+     * a warm analyzer.
+     *
+     * @param mode                 the analysis mode.
+     * @param engine               the engine to find GQL operations with, or null for the default.
+     * @param sourcesDir           the directory to save decompiled sources to in SAVE_SOURCES mode.
+     * @param includedPackages     the packages to limit the analysis to.
+     * @param excludedPackages     the packages to skip.
+     * @param cacheDir             the directory of the analysis cache, or null to disable it.
+     * @param cacheMaxSizeBytes    the maximum size of the analysis cache.
+     * @param threads              the number of threads to use, or null for the number of available processors.
+     * @param memoryBudgetBytes    the memory budget for low-memory mode, or null to disable it.
+     * @param timeBudgetMillis     the time the analysis may take, or null for no limit.
+     * @param stepTimeBudgetMillis the time each analysis step may take, or null for no limit.
+     */
+    public record AnalysisSettings(
+            AnalysisMode mode,
+            AnalysisEngine engine,
+            String sourcesDir,
+            List<String> includedPackages,
+            List<String> excludedPackages,
+            String cacheDir,
+            long cacheMaxSizeBytes,
+            Integer threads,
+            Long memoryBudgetBytes,
+            Long timeBudgetMillis,
+            Long stepTimeBudgetMillis
+    ) {
+
+        /**
+         * Creates the analysis options these settings describe.
+         *
+         * @return the analysis options.
+         * @throws IllegalArgumentException if any of the settings are invalid.
+         */
+        public APKAnalysisOptions toOptions() {
+            var builder = APKAnalysisOptions.builder()
+                    .mode(this.mode)
+                    .sourceOutputDir(new File(this.sourcesDir))
+                    .includePackages(this.includedPackages)
+                    .excludePackages(this.excludedPackages)
+                    .cacheDir(this.cacheDir == null ? null : new File(this.cacheDir))
+                    .cacheMaxSizeBytes(this.cacheMaxSizeBytes);
+            if (this.engine != null) {
+                builder.engine(this.engine);
+            }
+            if (this.threads != null) {
+                builder.threads(this.threads);
+            }
+            if (this.memoryBudgetBytes != null) {
+                builder.memoryBudgetBytes(this.memoryBudgetBytes);
+            }
+            if (this.timeBudgetMillis != null) {
+                builder.timeBudgetMillis(this.timeBudgetMillis);
+            }
+            if (this.stepTimeBudgetMillis != null) {
+                builder.stepTimeBudgetMillis(this.stepTimeBudgetMillis);
+            }
+            return builder.build();
+        }
+
+    }
+
+}
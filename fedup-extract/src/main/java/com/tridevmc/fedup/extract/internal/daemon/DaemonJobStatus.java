@@ -0,0 +1,45 @@
+package com.tridevmc.fedup.extract.internal.daemon;
+
+import java.util.List;
+
+/**
+ * The state of a job as reported by the daemon.
+ *
+ * @param id            the ID of the job.
+ * @param apk           the APK the job extracts data from.
+ * @param state         the state of the job.
+ * @param operations    the number of operations found, only set once the job has succeeded.
+ * @param output        the file the result was written to, only set once the job has succeeded.
+ * @param skippedPhases the phases that ran out of time if the result is partial, only set once the job has succeeded.
+ * @param error         why the job failed, only set if it failed.
+ * @param elapsedMillis the time since the job started running, or the time it ran for once it has finished.
+ */
+public record DaemonJobStatus(
+        String id,
+        String apk,
+        State state,
+        int operations,
+        String output,
+        List<String> skippedPhases,
+        String error,
+        long elapsedMillis
+) {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED;
+
+        /**
+         * Checks if a job in this state will never change state again.
+         *
+         * @return true if the job succeeded, failed or was cancelled.
+         */
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+}
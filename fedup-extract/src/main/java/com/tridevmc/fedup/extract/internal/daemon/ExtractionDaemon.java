@@ -0,0 +1,342 @@
+package com.tridevmc.fedup.extract.internal.daemon;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisListener;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.gql.IGQLOperationCatalog;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisOutputFormat;
+import com.tridevmc.fedup.extract.internal.apk.APKAnalysisResultWriter;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-running extraction process that accepts jobs over HTTP on the loopback address, keeping the JVM, jadx and
+ * recently used APKs warm between jobs.
+ * <p>
+ * Jobs are queued and run by a fixed number of workers, the endpoints are:
+ * <ul>
+ *     <li>{@code POST /jobs} queues a {@link DaemonJobRequest} and responds with its {@link DaemonJobStatus}.</li>
+ *     <li>{@code GET /jobs} lists the status of every job the daemon remembers.</li>
+ *     <li>{@code GET /jobs/<id>} gets the status of a job.</li>
+ *     <li>{@code DELETE /jobs/<id>} cancels a job.</li>
+ *     <li>{@code POST /shutdown} cancels every job and stops the daemon.</li>
+ * </ul>
+ * Every request must carry the token from the {@link DaemonInfo} in the {@value #TOKEN_HEADER} header.
+ */
+public class ExtractionDaemon implements AutoCloseable {
+
+    static final String TOKEN_HEADER = "X-FedUp-Token";
+
+    /**
+     * How many finished jobs are remembered so their status can still be fetched.
+     */
+    private static final int MAX_FINISHED_JOBS = 256;
+
+    private static final TaggedLogger LOG = Logger.tag("fedup-extract");
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final ThreadPoolExecutor workers;
+    private final WarmAnalyzerPool analyzers;
+    private final String token;
+    private final Map<String, DaemonJob> jobs = new LinkedHashMap<>();
+    private final AtomicLong nextJobId = new AtomicLong(1);
+    private final AtomicBoolean closing = new AtomicBoolean();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Creates a daemon listening on the given port of the loopback address, call {@link #start()} to start accepting jobs.
+     *
+     * @param port         the port to listen on, or 0 for any free port.
+     * @param workers      the number of jobs to run at the same time.
+     * @param maxAnalyzers the number of APKs to keep loaded between jobs.
+     * @throws IOException if the port can't be bound.
+     */
+    public ExtractionDaemon(int port, int workers, int maxAnalyzers) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.httpExecutor = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder().setNameFormat("fedup-daemon-http-%d").setDaemon(true).build());
+        this.server.setExecutor(this.httpExecutor);
+        this.server.createContext("/", this::handle);
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                                              new ThreadFactoryBuilder().setNameFormat("fedup-daemon-worker-%d").setDaemon(true).build());
+        this.analyzers = new WarmAnalyzerPool(maxAnalyzers);
+        var tokenBytes = new byte[32];
+        new SecureRandom().nextBytes(tokenBytes);
+        this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Gets the info clients need to reach this daemon.
+     *
+     * @return the daemon info.
+     */
+    public DaemonInfo getInfo() {
+        return new DaemonInfo(this.server.getAddress().getPort(), this.token, ProcessHandle.current().pid());
+    }
+
+    /**
+     * Blocks until the daemon is shut down by a client or closed.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void awaitShutdown() throws InterruptedException {
+        this.stopped.await();
+    }
+
+    /**
+     * Queues a job.
+     *
+     * @param request the job to queue.
+     * @return the status of the queued job.
+     */
+    public DaemonJobStatus submit(DaemonJobRequest request) {
+        var job = new DaemonJob(Long.toString(this.nextJobId.getAndIncrement()), request);
+        synchronized (this.jobs) {
+            this.jobs.put(job.getId(), job);
+            this.forgetFinishedJobs();
+        }
+        job.setFuture(this.workers.submit(() -> this.run(job)));
+        LOG.info("Queued job {} for {}.", job.getId(), request.apk());
+        return job.toStatus();
+    }
+
+    private void forgetFinishedJobs() {
+        var finished = this.jobs.values().stream().filter(j -> j.toStatus().state().isFinished()).count();
+        Iterator<DaemonJob> iterator = this.jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && iterator.hasNext()) {
+            if (iterator.next().toStatus().state().isFinished()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+
+    private DaemonJob getJob(String id) {
+        synchronized (this.jobs) {
+            return this.jobs.get(id);
+        }
+    }
+
+    private void run(DaemonJob job) {
+        if (!job.start()) {
+            return;
+        }
+        var stopwatch = Stopwatch.createStarted();
+        try {
+            this.execute(job);
+            LOG.info("Job {} finished in {}.", job.getId(), stopwatch);
+        } catch (CancellationException e) {
+            LOG.info("Job {} was cancelled after {}.", job.getId(), stopwatch);
+        } catch (Exception | OutOfMemoryError e) {
+            if (job.isCancelled()) {
+                // Interrupting a job tends to surface as whatever exception the interrupted code throws.
+                LOG.info("Job {} was cancelled after {}.", job.getId(), stopwatch);
+            } else {
+                LOG.error(e, "Job {} failed.", job.getId());
+                job.fail(e.toString());
+            }
+        } finally {
+            job.detach();
+        }
+    }
+
+    private void execute(DaemonJob job) throws IOException {
+        var request = job.getRequest();
+        var apkFile = new File(request.apk());
+        if (!apkFile.isFile()) {
+            throw new IOException("Input file " + apkFile + " does not exist.");
+        }
+        var output = request.output() != null ? Path.of(request.output())
+                : Files.createTempFile("fedup-daemon-" + job.getId() + "-", request.format() == APKAnalysisOutputFormat.NDJSON ? ".ndjson" : ".json");
+        // Written next to the output first, so a cancelled job never leaves a partial result behind.
+        var tempFile = output.resolveSibling(output.getFileName() + ".tmp");
+        var analyzer = this.analyzers.acquire(apkFile, request.analysis());
+        try {
+            job.checkCancelled();
+            IAPKAnalysisResult result;
+            try (var resultWriter = new APKAnalysisResultWriter(Files.newBufferedWriter(tempFile), request.format(), request.pretty())) {
+                result = analyzer.getAnalyzer().analyzeAPK(new CancellableListener(job, resultWriter));
+                job.checkCancelled();
+                resultWriter.finish(result);
+            }
+            Files.move(tempFile, output, StandardCopyOption.REPLACE_EXISTING);
+            if (request.catalog() != null) {
+                IGQLOperationCatalog.write(result, Path.of(request.catalog()));
+            }
+            job.succeed(output.toString(), result.getGQLOperations().size(), List.copyOf(result.getSkippedPhases()));
+        } finally {
+            Files.deleteIfExists(tempFile);
+            // A cancelled job may have stopped jadx part way through loading or decompiling, so its analyzer isn't reused.
+            this.analyzers.release(analyzer, job.isCancelled());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var token = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+            if (token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), this.token.getBytes(StandardCharsets.UTF_8))) {
+                this.respond(exchange, 401, Map.of("error", "Missing or invalid token."));
+                return;
+            }
+            var method = exchange.getRequestMethod();
+            var path = exchange.getRequestURI().getPath();
+            if (path.equals("/jobs")) {
+                if (method.equals("POST")) {
+                    DaemonJobRequest request;
+                    try (var reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                        request = GSON.fromJson(reader, DaemonJobRequest.class);
+                    } catch (JsonParseException e) {
+                        this.respond(exchange, 400, Map.of("error", "Invalid job: " + e.getMessage()));
+                        return;
+                    }
+                    var error = this.validate(request);
+                    if (error != null) {
+                        this.respond(exchange, 400, Map.of("error", error));
+                        return;
+                    }
+                    this.respond(exchange, 202, this.submit(request));
+                } else if (method.equals("GET")) {
+                    synchronized (this.jobs) {
+                        this.respond(exchange, 200, this.jobs.values().stream().map(DaemonJob::toStatus).toList());
+                    }
+                } else {
+                    this.respond(exchange, 405, Map.of("error", "Unsupported method " + method));
+                }
+            } else if (path.startsWith("/jobs/")) {
+                var job = this.getJob(path.substring("/jobs/".length()));
+                if (job == null) {
+                    this.respond(exchange, 404, Map.of("error", "Unknown job " + path.substring("/jobs/".length())));
+                } else if (method.equals("GET")) {
+                    this.respond(exchange, 200, job.toStatus());
+                } else if (method.equals("DELETE")) {
+                    if (job.cancel()) {
+                        LOG.info("Cancelling job {}.", job.getId());
+                    }
+                    this.respond(exchange, 200, job.toStatus());
+                } else {
+                    this.respond(exchange, 405, Map.of("error", "Unsupported method " + method));
+                }
+            } else if (path.equals("/shutdown") && method.equals("POST")) {
+                this.respond(exchange, 200, Map.of());
+                // Closing waits for the HTTP server, which is waiting for this exchange to finish.
+                new Thread(this::close, "fedup-daemon-shutdown").start();
+            } else {
+                this.respond(exchange, 404, Map.of("error", "Unknown endpoint " + method + " " + path));
+            }
+        } catch (RuntimeException e) {
+            LOG.error(e, "Failed to handle daemon request.");
+            throw e;
+        }
+    }
+
+    private String validate(DaemonJobRequest request) {
+        if (request == null || request.apk() == null || request.format() == null || request.analysis() == null || request.analysis().mode() == null) {
+            return "A job needs an APK, output format and analysis settings.";
+        }
+        for (var path : new String[]{request.apk(), request.output(), request.catalog(), request.analysis().sourcesDir(), request.analysis().cacheDir()}) {
+            if (path != null && !new File(path).isAbsolute()) {
+                return "Paths must be absolute, got " + path;
+            }
+        }
+        try {
+            request.analysis().toOptions();
+        } catch (RuntimeException e) {
+            return "Invalid analysis settings: " + e.getMessage();
+        }
+        return null;
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        var bytes = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Stops accepting requests, cancels every job and unloads every APK.
+     */
+    @Override
+    public void close() {
+        if (!this.closing.compareAndSet(false, true)) {
+            this.awaitStopped();
+            return;
+        }
+        LOG.info("Shutting down daemon.");
+        this.server.stop(1);
+        this.httpExecutor.shutdown();
+        synchronized (this.jobs) {
+            this.jobs.values().forEach(DaemonJob::cancel);
+        }
+        this.workers.shutdown();
+        try {
+            if (!this.workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOG.warn("Jobs are still running after being cancelled, unloading anyway.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.analyzers.close();
+        this.stopped.countDown();
+    }
+
+    private void awaitStopped() {
+        try {
+            this.stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Passes operations on to the result writer, stopping the analysis as soon as the job is cancelled.
+     */
+    private record CancellableListener(DaemonJob job, IAPKAnalysisListener delegate) implements IAPKAnalysisListener {
+
+        @Override
+        public void onGQLOperation(IRedditGQLOperation operation) {
+            this.job.checkCancelled();
+            this.delegate.onGQLOperation(operation);
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.tridevmc.fedup.extract.internal.daemon;
+
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalyzer;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps analyzers loaded between jobs, so a later job for the same APK with the same options reuses the decompiler the
+ * earlier one loaded instead of loading the APK again.
+ * <p>
+ * Analyzers are keyed by the canonical path, size and modification time of the APK along with the analysis settings,
+ * so an APK that is replaced on disk gets a fresh analyzer. Only a limited number are kept, least recently used first.
+ */
+class WarmAnalyzerPool implements AutoCloseable {
+
+    private static final TaggedLogger LOG = Logger.tag("fedup-extract");
+
+    private final int maxAnalyzers;
+    private final LinkedHashMap<Key, WarmAnalyzer> analyzers = new LinkedHashMap<>(16, 0.75F, true);
+
+    WarmAnalyzerPool(int maxAnalyzers) {
+        this.maxAnalyzers = maxAnalyzers;
+    }
+
+    /**
+     * Gets the warm analyzer for the given APK and settings, creating one if there is none. The analyzer is locked by
+     * the calling thread and must be passed back to {@link #release(WarmAnalyzer, boolean)} once the job is done.
+     *
+     * @param apkFile  the APK to analyze.
+     * @param settings the settings to analyze it with.
+     * @return the locked analyzer.
+     * @throws IOException if the APK can't be read.
+     */
+    WarmAnalyzer acquire(File apkFile, DaemonJobRequest.AnalysisSettings settings) throws IOException {
+        var key = new Key(apkFile.getCanonicalPath(), apkFile.length(), apkFile.lastModified(), settings);
+        WarmAnalyzer analyzer;
+        var evicted = new ArrayList<WarmAnalyzer>();
+        synchronized (this) {
+            analyzer = this.analyzers.get(key);
+            if (analyzer == null) {
+                // Replaced APKs are dropped straight away rather than waiting to be evicted.
+                this.analyzers.entrySet().removeIf(e -> {
+                    var stale = e.getKey().path().equals(key.path()) && !e.getKey().sameFile(key);
+                    if (stale) {
+                        evicted.add(e.getValue());
+                    }
+                    return stale;
+                });
+                analyzer = new WarmAnalyzer(IAPKAnalyzer.createFor(apkFile, settings.toOptions()), key);
+                this.analyzers.put(key, analyzer);
+                var iterator = this.analyzers.values().iterator();
+                while (this.analyzers.size() > this.maxAnalyzers && iterator.hasNext()) {
+                    var eldest = iterator.next();
+                    if (eldest != analyzer) {
+                        evicted.add(eldest);
+                        iterator.remove();
+                    }
+                }
+            } else {
+                LOG.info("Reusing warm analyzer for {}.", apkFile.getName());
+            }
+            analyzer.users++;
+            evicted.forEach(a -> a.evicted = true);
+        }
+        evicted.forEach(this::closeIfUnused);
+        analyzer.lock.lock();
+        return analyzer;
+    }
+
+    /**
+     * Unlocks an analyzer acquired with {@link #acquire(File, DaemonJobRequest.AnalysisSettings)}.
+     *
+     * @param analyzer the analyzer to release.
+     * @param discard  true to close the analyzer rather than keep it warm, for when a job was interrupted part way
+     *                 through and the decompiler may have been left half loaded.
+     */
+    void release(WarmAnalyzer analyzer, boolean discard) {
+        analyzer.lock.unlock();
+        synchronized (this) {
+            analyzer.users--;
+            if (discard && !analyzer.evicted) {
+                analyzer.evicted = true;
+                this.analyzers.remove(analyzer.key, analyzer);
+            }
+        }
+        this.closeIfUnused(analyzer);
+    }
+
+    private void closeIfUnused(WarmAnalyzer analyzer) {
+        synchronized (this) {
+            if (!analyzer.evicted || analyzer.users > 0 || analyzer.closed) {
+                return;
+            }
+            analyzer.closed = true;
+        }
+        LOG.info("Unloading {}.", new File(analyzer.key.path()).getName());
+        analyzer.analyzer.close();
+    }
+
+    @Override
+    public void close() {
+        ArrayList<WarmAnalyzer> analyzers;
+        synchronized (this) {
+            analyzers = new ArrayList<>(this.analyzers.values());
+            this.analyzers.clear();
+            analyzers.forEach(a -> a.evicted = true);
+        }
+        analyzers.forEach(this::closeIfUnused);
+    }
+
+    private record Key(String path, long size, long lastModified, DaemonJobRequest.AnalysisSettings settings) {
+
+        boolean sameFile(Key other) {
+            return this.size == other.size && this.lastModified == other.lastModified;
+        }
+
+    }
+
+    static final class WarmAnalyzer {
+
+        private final IAPKAnalyzer analyzer;
+        private final Key key;
+        private final ReentrantLock lock = new ReentrantLock();
+        // Guarded by the pool.
+        private int users;
+        private boolean evicted;
+        private boolean closed;
+
+        private WarmAnalyzer(IAPKAnalyzer analyzer, Key key) {
+            this.analyzer = analyzer;
+            this.key = key;
+        }
+
+        IAPKAnalyzer getAnalyzer() {
+            return this.analyzer;
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.tridevmc.fedup.extract.internal.dex;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fingerprints and cross-references of every class in a set of DEX files.
+ * <p>
+ * Fingerprints cover the class signature, its members, its static values and the instructions of every method, with
+ * constant pool references resolved so that a class keeps its fingerprint between builds unless it actually changed.
+ *
+ * @param fingerprints the fingerprint of every class, keyed by raw class name.
+ * @param references   the classes each class refers to in its signature or code, keyed by raw class name.
+ */
+public record DexClassIndex(
+        ImmutableMap<String, String> fingerprints,
+        ImmutableSetMultimap<String, String> references
+) {
+
+    /**
+     * Builds an index of all the classes in the given DEX files.
+     *
+     * @param dexFiles the DEX files to index.
+     * @return the index.
+     */
+    public static DexClassIndex build(List<DexFile> dexFiles) {
+        var entries = dexFiles.parallelStream().flatMap(
+                dex -> dex.getClassDefs().stream().map(classDef -> indexClass(dex, classDef))
+        ).toList();
+        var fingerprints = ImmutableMap.<String, String>builder();
+        var references = ImmutableSetMultimap.<String, String>builder();
+        var seen = new HashSet<String>();
+        for (var entry : entries) {
+            // Multidex APKs should never define a class twice, but if they do the first definition wins just like on device.
+            if (seen.add(entry.className())) {
+                fingerprints.put(entry.className(), entry.fingerprint());
+                references.putAll(entry.className(), entry.references());
+            }
+        }
+        return new DexClassIndex(fingerprints.build(), references.build());
+    }
+
+    /**
+     * Gets the classes that have a different fingerprint in this index than in the given fingerprints, including classes that didn't exist before.
+     *
+     * @param previousFingerprints the fingerprints to compare against.
+     * @return the names of the changed classes.
+     */
+    public Set<String> getChangedClasses(Map<String, String> previousFingerprints) {
+        var changed = new HashSet<String>();
+        this.fingerprints.forEach((className, fingerprint) -> {
+            if (!fingerprint.equals(previousFingerprints.get(className))) {
+                changed.add(className);
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * Expands the given classes with every class that refers to them and every class they refer to.
+     *
+     * @param classes the classes to expand.
+     * @return the given classes along with their users and the classes they use.
+     */
+    public Set<String> withNeighbours(Collection<String> classes) {
+        SetMultimap<String, String> users = this.references.inverse();
+        var expanded = new HashSet<>(classes);
+        for (var className : classes) {
+            expanded.addAll(users.get(className));
+            expanded.addAll(this.references.get(className));
+        }
+        return ImmutableSet.copyOf(expanded);
+    }
+
+    private static Entry indexClass(DexFile dex, DexFile.ClassDef classDef) {
+        var hasher = Hashing.murmur3_128().newHasher();
+        var references = new HashSet<String>();
+        putString(hasher, classDef.descriptor());
+        hasher.putInt(classDef.accessFlags());
+        putType(hasher, references, classDef.superclassDescriptor());
+        classDef.interfaceDescriptors().forEach(i -> putType(hasher, references, i));
+        for (var field : classDef.fields()) {
+            putString(hasher, field.ref().name());
+            putType(hasher, references, field.ref().typeDescriptor());
+            hasher.putInt(field.accessFlags());
+        }
+        var staticValues = dex.getStaticValues(classDef);
+        if (staticValues != null) {
+            staticValues.readArray(token -> putString(hasher, token));
+        }
+        for (var method : classDef.methods()) {
+            putString(hasher, method.ref().toString());
+            hasher.putInt(method.accessFlags());
+            var insns = dex.getInstructions(method.codeOffset());
+            hasher.putInt(insns.length);
+            for (int pos = 0; pos < insns.length; ) {
+                var size = DexOpcodes.getSize(insns, pos);
+                var opcode = insns[pos] & 0xff;
+                var indexType = DexOpcodes.getIndexType(opcode);
+                var isPayload = opcode == DexOpcodes.NOP && insns[pos] != DexOpcodes.NOP;
+                if (indexType == DexOpcodes.IndexType.NONE || isPayload) {
+                    for (int i = 0; i < size && pos + i < insns.length; i++) {
+                        hasher.putShort(insns[pos + i]);
+                    }
+                } else {
+                    // Constant pool indices shift whenever anything is added to the DEX file, so hash what they point at instead.
+                    hasher.putShort(insns[pos]);
+                    var index = DexOpcodes.getIndex(insns, pos);
+                    putString(hasher, dex.resolveIndex(indexType, index));
+                    addReference(dex, references, indexType, index);
+                    var firstOperandUnit = opcode == DexOpcodes.CONST_STRING_JUMBO ? 3 : 2;
+                    for (int i = firstOperandUnit; i < size && pos + i < insns.length; i++) {
+                        hasher.putShort(insns[pos + i]);
+                    }
+                }
+                pos += size;
+            }
+        }
+        references.remove(classDef.getClassName());
+        return new Entry(classDef.getClassName(), hasher.hash().toString(), references);
+    }
+
+    private static void addReference(DexFile dex, Set<String> references, DexOpcodes.IndexType indexType, int index) {
+        switch (indexType) {
+            case TYPE -> addClassReference(references, dex.getTypeDescriptor(index));
+            case FIELD -> addClassReference(references, dex.getFieldRef(index).classDescriptor());
+            case METHOD -> addClassReference(references, dex.getMethodRef(index).classDescriptor());
+            default -> {
+            }
+        }
+    }
+
+    private static void putType(Hasher hasher, Set<String> references, String descriptor) {
+        if (descriptor != null) {
+            putString(hasher, descriptor);
+            addClassReference(references, descriptor);
+        }
+    }
+
+    private static void addClassReference(Set<String> references, String descriptor) {
+        var elementDescriptor = descriptor.replaceFirst("^\\[+", "");
+        if (elementDescriptor.startsWith("L")) {
+            references.add(DexFile.descriptorToClassName(elementDescriptor));
+        }
+    }
+
+    private static void putString(Hasher hasher, String s) {
+        hasher.putInt(s.length());
+        hasher.putString(s, StandardCharsets.UTF_8);
+    }
+
+    private record Entry(String className, String fingerprint, Set<String> references) {
+
+    }
+
+}
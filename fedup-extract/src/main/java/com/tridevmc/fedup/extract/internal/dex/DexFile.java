@@ -0,0 +1,310 @@
+package com.tridevmc.fedup.extract.internal.dex;
+
+import com.google.common.collect.ImmutableList;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A minimal reader for the DEX format, only reading the constant pools, class definitions and code items.
+ * <p>
+ * This works directly on the raw file and doesn't decompile anything, so it is much cheaper than loading an APK with jadx.
+ */
+public class DexFile {
+
+    private static final int NO_INDEX = -1;
+
+    private final String name;
+    private final ByteBuffer data;
+    private final String[] strings;
+    private final int[] typeDescriptorIndices;
+    private final int protoIdsOffset;
+    private final int fieldIdsOffset;
+    private final int methodIdsOffset;
+    private final int classDefsOffset;
+    private final int classDefsSize;
+
+    public DexFile(String name, byte[] bytes) {
+        this.name = name;
+        this.data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < 0x70 || bytes[0] != 'd' || bytes[1] != 'e' || bytes[2] != 'x') {
+            throw new IllegalArgumentException(name + " is not a DEX file.");
+        }
+        var stringIdsSize = this.data.getInt(0x38);
+        var stringIdsOffset = this.data.getInt(0x3C);
+        var typeIdsSize = this.data.getInt(0x40);
+        var typeIdsOffset = this.data.getInt(0x44);
+        this.protoIdsOffset = this.data.getInt(0x4C);
+        this.fieldIdsOffset = this.data.getInt(0x54);
+        this.methodIdsOffset = this.data.getInt(0x5C);
+        this.classDefsSize = this.data.getInt(0x60);
+        this.classDefsOffset = this.data.getInt(0x64);
+
+        this.strings = new String[stringIdsSize];
+        for (int i = 0; i < stringIdsSize; i++) {
+            this.strings[i] = this.readStringData(this.data.getInt(stringIdsOffset + i * 4));
+        }
+        this.typeDescriptorIndices = new int[typeIdsSize];
+        for (int i = 0; i < typeIdsSize; i++) {
+            this.typeDescriptorIndices[i] = this.data.getInt(typeIdsOffset + i * 4);
+        }
+    }
+
+    /**
+     * Converts a type descriptor such as {@code Lcom/example/Foo$Bar;} to the raw class name jadx uses, {@code com.example.Foo$Bar}.
+     *
+     * @param descriptor the type descriptor.
+     * @return the raw class name, or the descriptor unchanged if it isn't a class type.
+     */
+    public static String descriptorToClassName(String descriptor) {
+        if (descriptor.length() > 2 && descriptor.charAt(0) == 'L' && descriptor.charAt(descriptor.length() - 1) == ';') {
+            return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+        }
+        return descriptor;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getString(int index) {
+        return this.strings[index];
+    }
+
+    public int getStringCount() {
+        return this.strings.length;
+    }
+
+    public String getTypeDescriptor(int index) {
+        return this.strings[this.typeDescriptorIndices[index]];
+    }
+
+    public FieldRef getFieldRef(int index) {
+        var offset = this.fieldIdsOffset + index * 8;
+        return new FieldRef(
+                this.getTypeDescriptor(this.data.getShort(offset) & 0xffff),
+                this.getString(this.data.getInt(offset + 4)),
+                this.getTypeDescriptor(this.data.getShort(offset + 2) & 0xffff)
+        );
+    }
+
+    public MethodRef getMethodRef(int index) {
+        var offset = this.methodIdsOffset + index * 8;
+        var protoOffset = this.protoIdsOffset + (this.data.getShort(offset + 2) & 0xffff) * 12;
+        return new MethodRef(
+                this.getTypeDescriptor(this.data.getShort(offset) & 0xffff),
+                this.getString(this.data.getInt(offset + 4)),
+                this.readTypeList(this.data.getInt(protoOffset + 8)),
+                this.getTypeDescriptor(this.data.getInt(protoOffset + 4))
+        );
+    }
+
+    /**
+     * Reads every class defined in this DEX file.
+     *
+     * @return the class definitions.
+     */
+    public List<ClassDef> getClassDefs() {
+        var classDefs = new ArrayList<ClassDef>(this.classDefsSize);
+        for (int i = 0; i < this.classDefsSize; i++) {
+            classDefs.add(this.readClassDef(this.classDefsOffset + i * 32));
+        }
+        return classDefs;
+    }
+
+    /**
+     * Reads the instructions of a code item.
+     *
+     * @param codeOffset the offset of the code item, as found on a {@link Method}.
+     * @return the instructions as 16-bit code units, empty if the method has no code.
+     */
+    public short[] getInstructions(int codeOffset) {
+        if (codeOffset == 0) {
+            return new short[0];
+        }
+        var insnsSize = this.data.getInt(codeOffset + 12);
+        var insns = new short[insnsSize];
+        for (int i = 0; i < insnsSize; i++) {
+            insns[i] = this.data.getShort(codeOffset + 16 + i * 2);
+        }
+        return insns;
+    }
+
+    /**
+     * Resolves the constant pool reference of an instruction to a stable textual form, so it can be compared across DEX files.
+     *
+     * @param type  the kind of index.
+     * @param index the index.
+     * @return the resolved reference.
+     */
+    public String resolveIndex(DexOpcodes.IndexType type, int index) {
+        return switch (type) {
+            case STRING -> this.getString(index);
+            case TYPE -> this.getTypeDescriptor(index);
+            case FIELD -> this.getFieldRef(index).toString();
+            case METHOD -> this.getMethodRef(index).toString();
+            // These are rare enough in app code that the raw index is good enough.
+            default -> type.name() + "@" + index;
+        };
+    }
+
+    /**
+     * Gets the raw bytes of the encoded static values of a class, these refer to the constant pools so need to be walked with {@link EncodedValueReader}.
+     *
+     * @param classDef the class to get the static values of.
+     * @return a reader over the static values, or null if the class has none.
+     */
+    public EncodedValueReader getStaticValues(ClassDef classDef) {
+        if (classDef.staticValuesOffset() == 0) {
+            return null;
+        }
+        return new EncodedValueReader(this, this.data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(classDef.staticValuesOffset()));
+    }
+
+    private ClassDef readClassDef(int offset) {
+        var descriptor = this.getTypeDescriptor(this.data.getInt(offset));
+        var accessFlags = this.data.getInt(offset + 4);
+        var superclassIndex = this.data.getInt(offset + 8);
+        var superclass = superclassIndex == NO_INDEX ? null : this.getTypeDescriptor(superclassIndex);
+        var interfaces = this.readTypeList(this.data.getInt(offset + 12));
+        var classDataOffset = this.data.getInt(offset + 24);
+        var staticValuesOffset = this.data.getInt(offset + 28);
+
+        var fields = ImmutableList.<Field>builder();
+        var methods = ImmutableList.<Method>builder();
+        if (classDataOffset != 0) {
+            var reader = this.data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(classDataOffset);
+            var staticFieldsSize = readUleb128(reader);
+            var instanceFieldsSize = readUleb128(reader);
+            var directMethodsSize = readUleb128(reader);
+            var virtualMethodsSize = readUleb128(reader);
+            this.readFields(reader, staticFieldsSize, fields);
+            this.readFields(reader, instanceFieldsSize, fields);
+            this.readMethods(reader, directMethodsSize, methods);
+            this.readMethods(reader, virtualMethodsSize, methods);
+        }
+        return new ClassDef(descriptor, accessFlags, superclass, interfaces, fields.build(), methods.build(), staticValuesOffset);
+    }
+
+    private void readFields(ByteBuffer reader, int count, ImmutableList.Builder<Field> out) {
+        var fieldIndex = 0;
+        for (int i = 0; i < count; i++) {
+            fieldIndex += readUleb128(reader);
+            out.add(new Field(this.getFieldRef(fieldIndex), readUleb128(reader)));
+        }
+    }
+
+    private void readMethods(ByteBuffer reader, int count, ImmutableList.Builder<Method> out) {
+        var methodIndex = 0;
+        for (int i = 0; i < count; i++) {
+            methodIndex += readUleb128(reader);
+            var accessFlags = readUleb128(reader);
+            var codeOffset = readUleb128(reader);
+            out.add(new Method(this.getMethodRef(methodIndex), accessFlags, codeOffset));
+        }
+    }
+
+    private ImmutableList<String> readTypeList(int offset) {
+        if (offset == 0) {
+            return ImmutableList.of();
+        }
+        var size = this.data.getInt(offset);
+        var types = ImmutableList.<String>builderWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            types.add(this.getTypeDescriptor(this.data.getShort(offset + 4 + i * 2) & 0xffff));
+        }
+        return types.build();
+    }
+
+    private String readStringData(int offset) {
+        var reader = this.data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(offset);
+        var utf16Length = readUleb128(reader);
+        var chars = new char[utf16Length];
+        // Strings are stored as MUTF-8, which differs from UTF-8 in how nulls and supplementary characters are encoded.
+        for (int i = 0; i < utf16Length; i++) {
+            var a = reader.get() & 0xff;
+            if (a < 0x80) {
+                chars[i] = (char) a;
+            } else if ((a & 0xe0) == 0xc0) {
+                var b = reader.get() & 0x3f;
+                chars[i] = (char) (((a & 0x1f) << 6) | b);
+            } else {
+                var b = reader.get() & 0x3f;
+                var c = reader.get() & 0x3f;
+                chars[i] = (char) (((a & 0x0f) << 12) | (b << 6) | c);
+            }
+        }
+        return new String(chars);
+    }
+
+    static int readUleb128(ByteBuffer reader) {
+        var result = 0;
+        var shift = 0;
+        int b;
+        do {
+            b = reader.get() & 0xff;
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DexFile{" + this.name + '}';
+    }
+
+    public record FieldRef(String classDescriptor, String name, String typeDescriptor) {
+
+        @Override
+        public String toString() {
+            return this.classDescriptor + "->" + this.name + ":" + this.typeDescriptor;
+        }
+
+    }
+
+    public record MethodRef(String classDescriptor, String name, ImmutableList<String> parameterDescriptors,
+                            String returnDescriptor) {
+
+        public boolean isConstructor() {
+            return this.name.equals("<init>");
+        }
+
+        public boolean isClassInitializer() {
+            return this.name.equals("<clinit>");
+        }
+
+        @Override
+        public String toString() {
+            return this.classDescriptor + "->" + this.name + "(" + String.join("", this.parameterDescriptors) + ")" + this.returnDescriptor;
+        }
+
+    }
+
+    public record Field(FieldRef ref, int accessFlags) {
+
+    }
+
+    public record Method(MethodRef ref, int accessFlags, int codeOffset) {
+
+    }
+
+    public record ClassDef(
+            String descriptor,
+            int accessFlags,
+            String superclassDescriptor,
+            ImmutableList<String> interfaceDescriptors,
+            ImmutableList<Field> fields,
+            ImmutableList<Method> methods,
+            int staticValuesOffset
+    ) {
+
+        public String getClassName() {
+            return descriptorToClassName(this.descriptor);
+        }
+
+    }
+
+}
@@ -0,0 +1,234 @@
+package com.tridevmc.fedup.extract.internal.dex;
+
+/**
+ * The subset of the Dalvik instruction set needed to walk code items, the size of every opcode and which kind of
+ * constant pool index it refers to.
+ */
+public final class DexOpcodes {
+
+    public static final int NOP = 0x00;
+    public static final int MOVE_OBJECT = 0x07;
+    public static final int MOVE_OBJECT_FROM16 = 0x08;
+    public static final int MOVE_OBJECT_16 = 0x09;
+    public static final int CONST_STRING = 0x1a;
+    public static final int CONST_STRING_JUMBO = 0x1b;
+    public static final int NEW_INSTANCE = 0x22;
+    public static final int SPUT_OBJECT = 0x69;
+    public static final int INVOKE_DIRECT = 0x70;
+    public static final int INVOKE_DIRECT_RANGE = 0x76;
+
+    private static final int PACKED_SWITCH_PAYLOAD = 0x0100;
+    private static final int SPARSE_SWITCH_PAYLOAD = 0x0200;
+    private static final int FILL_ARRAY_DATA_PAYLOAD = 0x0300;
+
+    private static final int[] SIZES = new int[256];
+    private static final IndexType[] INDEX_TYPES = new IndexType[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            SIZES[i] = 1;
+            INDEX_TYPES[i] = IndexType.NONE;
+        }
+        sized(2, 0x02, 0x05, 0x08, 0x13, 0x15, 0x16, 0x19, 0x29);
+        sized(3, 0x03, 0x06, 0x09, 0x14, 0x17, 0x26, 0x2a, 0x2b, 0x2c);
+        sized(5, 0x18);
+        range(0x2d, 0x31, 2);
+        range(0x32, 0x3d, 2);
+        range(0x44, 0x51, 2);
+        range(0x90, 0xaf, 2);
+        range(0xd0, 0xe2, 2);
+
+        indexed(IndexType.STRING, 2, 0x1a);
+        indexed(IndexType.STRING, 3, 0x1b);
+        indexed(IndexType.TYPE, 2, 0x1c, 0x1f, 0x20, 0x22, 0x23);
+        indexed(IndexType.TYPE, 3, 0x24, 0x25);
+        for (int i = 0x52; i <= 0x5f; i++) {
+            indexed(IndexType.FIELD, 2, i);
+        }
+        for (int i = 0x60; i <= 0x6d; i++) {
+            indexed(IndexType.FIELD, 2, i);
+        }
+        for (int i = 0x6e; i <= 0x72; i++) {
+            indexed(IndexType.METHOD, 3, i);
+        }
+        for (int i = 0x74; i <= 0x78; i++) {
+            indexed(IndexType.METHOD, 3, i);
+        }
+        indexed(IndexType.METHOD, 4, 0xfa, 0xfb);
+        indexed(IndexType.CALL_SITE, 3, 0xfc, 0xfd);
+        indexed(IndexType.METHOD_HANDLE, 2, 0xfe);
+        indexed(IndexType.PROTO, 2, 0xff);
+    }
+
+    private DexOpcodes() {
+    }
+
+    private static void sized(int size, int... opcodes) {
+        for (var opcode : opcodes) {
+            SIZES[opcode] = size;
+        }
+    }
+
+    private static void range(int from, int to, int size) {
+        for (int i = from; i <= to; i++) {
+            SIZES[i] = size;
+        }
+    }
+
+    private static void indexed(IndexType type, int size, int... opcodes) {
+        for (var opcode : opcodes) {
+            SIZES[opcode] = size;
+            INDEX_TYPES[opcode] = type;
+        }
+    }
+
+    /**
+     * Gets the size of the instruction at the given position, including the payload pseudo-instructions used by switches and array data.
+     *
+     * @param insns the instructions of a code item.
+     * @param pos   the position of the instruction in code units.
+     * @return the size of the instruction in code units.
+     */
+    public static int getSize(short[] insns, int pos) {
+        var unit = insns[pos] & 0xffff;
+        var opcode = unit & 0xff;
+        if (opcode == NOP && unit != NOP) {
+            switch (unit) {
+                case PACKED_SWITCH_PAYLOAD -> {
+                    return (insns[pos + 1] & 0xffff) * 2 + 4;
+                }
+                case SPARSE_SWITCH_PAYLOAD -> {
+                    return (insns[pos + 1] & 0xffff) * 4 + 2;
+                }
+                case FILL_ARRAY_DATA_PAYLOAD -> {
+                    var elementWidth = insns[pos + 1] & 0xffff;
+                    var size = (insns[pos + 2] & 0xffffL) | ((insns[pos + 3] & 0xffffL) << 16);
+                    return (int) ((size * elementWidth + 1) / 2 + 4);
+                }
+                default -> {
+                    return 1;
+                }
+            }
+        }
+        return SIZES[opcode];
+    }
+
+    /**
+     * Gets the kind of constant pool index the given opcode refers to.
+     *
+     * @param opcode the opcode.
+     * @return the index type, {@link IndexType#NONE} if the opcode doesn't refer to the constant pool.
+     */
+    public static IndexType getIndexType(int opcode) {
+        return INDEX_TYPES[opcode];
+    }
+
+    /**
+     * Reads the constant pool index of the instruction at the given position, the index is always stored directly after the opcode unit.
+     *
+     * @param insns the instructions of a code item.
+     * @param pos   the position of the instruction in code units.
+     * @return the constant pool index.
+     */
+    public static int getIndex(short[] insns, int pos) {
+        var opcode = insns[pos] & 0xff;
+        if (opcode == CONST_STRING_JUMBO) {
+            return (insns[pos + 1] & 0xffff) | ((insns[pos + 2] & 0xffff) << 16);
+        }
+        return insns[pos + 1] & 0xffff;
+    }
+
+    /**
+     * Gets the register written to by an instruction using the AA|op layout, such as const-string or new-instance.
+     *
+     * @param insns the instructions of a code item.
+     * @param pos   the position of the instruction in code units.
+     * @return the destination register.
+     */
+    public static int getRegisterA(short[] insns, int pos) {
+        return (insns[pos] >> 8) & 0xff;
+    }
+
+    /**
+     * Gets the argument registers of an invoke instruction, handling both the 35c and 3rc layouts.
+     *
+     * @param insns the instructions of a code item.
+     * @param pos   the position of the instruction in code units.
+     * @return the argument registers in order.
+     */
+    public static int[] getInvokeRegisters(short[] insns, int pos) {
+        var opcode = insns[pos] & 0xff;
+        var unit0 = insns[pos] & 0xffff;
+        if ((opcode >= 0x74 && opcode <= 0x78) || opcode == 0x25 || opcode == 0xfd) {
+            var count = unit0 >> 8;
+            var first = insns[pos + 2] & 0xffff;
+            var registers = new int[count];
+            for (int i = 0; i < count; i++) {
+                registers[i] = first + i;
+            }
+            return registers;
+        }
+        var count = unit0 >> 12;
+        var unit2 = insns[pos + 2] & 0xffff;
+        var registers = new int[count];
+        for (int i = 0; i < count; i++) {
+            registers[i] = i < 4 ? (unit2 >> (i * 4)) & 0xf : (unit0 >> 8) & 0xf;
+        }
+        return registers;
+    }
+
+    /**
+     * Checks if the instruction writes a new value to the register in its A slot, used to forget tracked register values.
+     *
+     * @param opcode the opcode.
+     * @return true if the opcode overwrites register A.
+     */
+    public static boolean writesRegisterA(int opcode) {
+        return (opcode >= 0x01 && opcode <= 0x0d)
+                || (opcode >= 0x12 && opcode <= 0x1c)
+                || (opcode >= 0x1f && opcode <= 0x23)
+                || (opcode >= 0x2d && opcode <= 0x31)
+                || (opcode >= 0x44 && opcode <= 0x4a)
+                || (opcode >= 0x52 && opcode <= 0x58)
+                || (opcode >= 0x60 && opcode <= 0x66)
+                || (opcode >= 0x7b && opcode <= 0xe2)
+                || opcode == 0xfe
+                || opcode == 0xff;
+    }
+
+    /**
+     * Gets the register in the A slot of an instruction, which is a nibble for the 12x/22c style layouts, a full unit for the 32x moves and a byte otherwise.
+     *
+     * @param insns the instructions of a code item.
+     * @param pos   the position of the instruction in code units.
+     * @return the register in the A slot.
+     */
+    public static int getDestinationRegister(short[] insns, int pos) {
+        var opcode = insns[pos] & 0xff;
+        if (opcode == 0x03 || opcode == 0x06 || opcode == MOVE_OBJECT_16) {
+            return insns[pos + 1] & 0xffff;
+        }
+        var nibbleLayout = opcode == 0x01 || opcode == 0x04 || opcode == 0x07 || opcode == 0x12
+                || opcode == 0x20 || opcode == 0x21 || opcode == 0x23
+                || (opcode >= 0x52 && opcode <= 0x58)
+                || (opcode >= 0x7b && opcode <= 0x8f)
+                || (opcode >= 0xb0 && opcode <= 0xcf)
+                || (opcode >= 0xd0 && opcode <= 0xd7);
+        return nibbleLayout ? (insns[pos] >> 8) & 0xf : (insns[pos] >> 8) & 0xff;
+    }
+
+    /**
+     * The kinds of constant pool index an instruction can refer to.
+     */
+    public enum IndexType {
+        NONE,
+        STRING,
+        TYPE,
+        FIELD,
+        METHOD,
+        PROTO,
+        CALL_SITE,
+        METHOD_HANDLE
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.tridevmc.fedup.extract.internal.dex;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Finds the static fields a class initializes with a constructor call in its static initializer, such as classes
+ * holding constants for every GQL operation, by following the registers of the static initializer's instructions.
+ * <p>
+ * Instructions are followed in order without regard for branches and only string constants are tracked, which covers
+ * the straight line code compilers generate for constant holders. Anything else passed to a constructor is unknown.
+ */
+public final class DexStaticInitializers {
+
+    private static final int ACC_STATIC = 0x8;
+
+    private DexStaticInitializers() {
+    }
+
+    /**
+     * Scans the static initializer of the given class.
+     *
+     * @param dexFile  the DEX file the class is defined in.
+     * @param classDef the class to scan.
+     * @return the fields initialized with a constructor call, empty if the class has no static initializer.
+     */
+    public static List<StaticFieldInitializer> scan(DexFile dexFile, DexFile.ClassDef classDef) {
+        var classInitializer = classDef.methods().stream().filter(m -> m.ref().isClassInitializer()).findFirst();
+        if (classInitializer.isEmpty()) {
+            return List.of();
+        }
+        var staticFields = new HashSet<String>();
+        for (var field : classDef.fields()) {
+            if ((field.accessFlags() & ACC_STATIC) != 0) {
+                staticFields.add(field.ref().name());
+            }
+        }
+
+        var insns = dexFile.getInstructions(classInitializer.get().codeOffset());
+        var registers = new HashMap<Integer, Object>();
+        var initializers = new ArrayList<StaticFieldInitializer>();
+        var assignedFields = new HashMap<String, Integer>();
+        for (int pos = 0; pos < insns.length; pos += DexOpcodes.getSize(insns, pos)) {
+            var opcode = insns[pos] & 0xff;
+            switch (opcode) {
+                case DexOpcodes.CONST_STRING, DexOpcodes.CONST_STRING_JUMBO -> registers.put(
+                        DexOpcodes.getRegisterA(insns, pos), dexFile.getString(DexOpcodes.getIndex(insns, pos))
+                );
+                case DexOpcodes.NEW_INSTANCE -> registers.put(
+                        DexOpcodes.getRegisterA(insns, pos), new NewInstance(dexFile.getTypeDescriptor(DexOpcodes.getIndex(insns, pos)))
+                );
+                case DexOpcodes.MOVE_OBJECT, DexOpcodes.MOVE_OBJECT_FROM16, DexOpcodes.MOVE_OBJECT_16 -> {
+                    var value = registers.get(getMoveSource(insns, pos));
+                    var destination = DexOpcodes.getDestinationRegister(insns, pos);
+                    if (value == null) {
+                        registers.remove(destination);
+                    } else {
+                        registers.put(destination, value);
+                    }
+                }
+                case DexOpcodes.INVOKE_DIRECT, DexOpcodes.INVOKE_DIRECT_RANGE -> {
+                    var method = dexFile.getMethodRef(DexOpcodes.getIndex(insns, pos));
+                    var invokeRegisters = DexOpcodes.getInvokeRegisters(insns, pos);
+                    if (method.isConstructor() && invokeRegisters.length > 0
+                            && registers.get(invokeRegisters[0]) instanceof NewInstance newInstance
+                            && newInstance.typeDescriptor().equals(method.classDescriptor())) {
+                        var args = new String[invokeRegisters.length - 1];
+                        for (int i = 1; i < invokeRegisters.length; i++) {
+                            args[i - 1] = registers.get(invokeRegisters[i]) instanceof String s ? s : null;
+                        }
+                        registers.put(invokeRegisters[0], new ConstructedInstance(method, Arrays.asList(args)));
+                    }
+                }
+                case DexOpcodes.SPUT_OBJECT -> {
+                    var field = dexFile.getFieldRef(DexOpcodes.getIndex(insns, pos));
+                    if (field.classDescriptor().equals(classDef.descriptor()) && staticFields.contains(field.name())) {
+                        assignedFields.merge(field.name(), 1, Integer::sum);
+                        if (registers.get(DexOpcodes.getRegisterA(insns, pos)) instanceof ConstructedInstance instance
+                                && instance.constructor().classDescriptor().equals(field.typeDescriptor())) {
+                            initializers.add(new StaticFieldInitializer(
+                                    classDef.getClassName(),
+                                    field.name(),
+                                    field.typeDescriptor(),
+                                    instance.constructor(),
+                                    instance.args()
+                            ));
+                        }
+                    }
+                }
+                default -> {
+                    if (DexOpcodes.writesRegisterA(opcode)) {
+                        registers.remove(DexOpcodes.getDestinationRegister(insns, pos));
+                    }
+                }
+            }
+        }
+        // A field assigned more than once isn't a constant, jadx leaves those in the static initializer as well.
+        initializers.removeIf(i -> assignedFields.get(i.fieldName()) > 1);
+        return ImmutableList.copyOf(initializers);
+    }
+
+    private static int getMoveSource(short[] insns, int pos) {
+        return switch (insns[pos] & 0xff) {
+            case DexOpcodes.MOVE_OBJECT_FROM16 -> insns[pos + 1] & 0xffff;
+            case DexOpcodes.MOVE_OBJECT_16 -> insns[pos + 2] & 0xffff;
+            default -> (insns[pos] >> 12) & 0xf;
+        };
+    }
+
+    /**
+     * A static field initialized with a new instance of its own type.
+     *
+     * @param holderClass the raw name of the class declaring the field.
+     * @param fieldName   the name of the field.
+     * @param fieldType   the type descriptor of the field.
+     * @param constructor the constructor the instance is created with.
+     * @param args        the string constants passed to the constructor, one per argument register after the instance, with
+     *                    null for anything that isn't a string constant. Long and double arguments take up two registers.
+     */
+    public record StaticFieldInitializer(
+            String holderClass,
+            String fieldName,
+            String fieldType,
+            DexFile.MethodRef constructor,
+            List<String> args
+    ) {
+
+    }
+
+    private record NewInstance(String typeDescriptor) {
+
+    }
+
+    private record ConstructedInstance(DexFile.MethodRef constructor, List<String> args) {
+
+    }
+
+}
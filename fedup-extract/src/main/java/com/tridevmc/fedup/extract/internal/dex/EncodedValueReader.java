@@ -0,0 +1,77 @@
+package com.tridevmc.fedup.extract.internal.dex;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Walks an encoded_array in a DEX file, such as the static values of a class, emitting a stable token for every value.
+ * <p>
+ * Values that refer to the constant pools are resolved, so the tokens can be compared across DEX files.
+ */
+public class EncodedValueReader {
+
+    private static final int VALUE_STRING = 0x17;
+    private static final int VALUE_TYPE = 0x18;
+    private static final int VALUE_FIELD = 0x19;
+    private static final int VALUE_METHOD = 0x1a;
+    private static final int VALUE_ENUM = 0x1b;
+    private static final int VALUE_ARRAY = 0x1c;
+    private static final int VALUE_ANNOTATION = 0x1d;
+    private static final int VALUE_NULL = 0x1e;
+    private static final int VALUE_BOOLEAN = 0x1f;
+
+    private final DexFile dexFile;
+    private final ByteBuffer reader;
+
+    EncodedValueReader(DexFile dexFile, ByteBuffer reader) {
+        this.dexFile = dexFile;
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the whole array, passing a token for every value to the given consumer.
+     *
+     * @param out the consumer to pass tokens to.
+     */
+    public void readArray(Consumer<String> out) {
+        var size = DexFile.readUleb128(this.reader);
+        out.accept("[" + size);
+        for (int i = 0; i < size; i++) {
+            this.readValue(out);
+        }
+    }
+
+    private void readValue(Consumer<String> out) {
+        var header = this.reader.get() & 0xff;
+        var type = header & 0x1f;
+        var arg = header >> 5;
+        switch (type) {
+            case VALUE_STRING -> out.accept("s:" + this.dexFile.getString((int) this.readUnsigned(arg + 1)));
+            case VALUE_TYPE -> out.accept("t:" + this.dexFile.getTypeDescriptor((int) this.readUnsigned(arg + 1)));
+            case VALUE_FIELD, VALUE_ENUM -> out.accept("f:" + this.dexFile.getFieldRef((int) this.readUnsigned(arg + 1)));
+            case VALUE_METHOD -> out.accept("m:" + this.dexFile.getMethodRef((int) this.readUnsigned(arg + 1)));
+            case VALUE_ARRAY -> this.readArray(out);
+            case VALUE_ANNOTATION -> {
+                out.accept("@" + this.dexFile.getTypeDescriptor(DexFile.readUleb128(this.reader)));
+                var size = DexFile.readUleb128(this.reader);
+                for (int i = 0; i < size; i++) {
+                    out.accept(this.dexFile.getString(DexFile.readUleb128(this.reader)) + "=");
+                    this.readValue(out);
+                }
+            }
+            case VALUE_NULL -> out.accept("null");
+            case VALUE_BOOLEAN -> out.accept(arg == 1 ? "true" : "false");
+            // Primitives, method types and method handles, the raw bytes are stable enough to compare.
+            default -> out.accept(type + ":" + this.readUnsigned(arg + 1));
+        }
+    }
+
+    private long readUnsigned(int size) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value |= (this.reader.get() & 0xffL) << (i * 8);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.tridevmc.fedup.extract.internal.gql;
+
+import com.google.common.collect.ImmutableList;
+import com.tridevmc.fedup.extract.api.gql.GQLDocument;
+import com.tridevmc.fedup.extract.api.gql.GQLOperationType;
+
+/**
+ * Parses the executable parts of a GQL document, operations and fragments, into a {@link GQLDocument}.
+ * <p>
+ * Arguments, variable definitions and directives are checked to be balanced and then skipped, as nothing needs their contents yet.
+ */
+public final class GQLDocumentParser {
+
+    private enum TokenKind {
+        PUNCTUATOR,
+        NAME,
+        NUMBER,
+        STRING,
+        END
+    }
+
+    private final String source;
+    private int position;
+    private TokenKind kind;
+    private String token;
+    private int tokenStart;
+    // The end of the last selection set parsed, which is also the end of the definition it belongs to.
+    private int selectionSetEnd;
+
+    private GQLDocumentParser(String source) {
+        this.source = source;
+        this.advance();
+    }
+
+    /**
+     * Parses the given GQL document.
+     *
+     * @param source the document to parse.
+     * @return the parsed document.
+     * @throws IllegalArgumentException if the document isn't valid GQL.
+     */
+    public static GQLDocument parse(String source) {
+        return new GQLDocumentParser(source).parseDocument();
+    }
+
+    /**
+     * Finds the type of the first operation in the given GQL document without parsing it, only fragments defined
+     * before the operation are skipped over.
+     *
+     * @param source the document to read.
+     * @return the type of the first operation, or null if the document has no operations or isn't valid GQL.
+     */
+    public static GQLOperationType parseOperationType(String source) {
+        try {
+            return new GQLDocumentParser(source).parseFirstOperationType();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private GQLOperationType parseFirstOperationType() {
+        while (this.kind != TokenKind.END) {
+            if (this.isPunctuator("{")) {
+                return GQLOperationType.QUERY;
+            } else if (this.isName("fragment")) {
+                this.advance();
+                this.expectName();
+                this.expectName("on");
+                this.expectName();
+                this.skipDirectives();
+                this.skipBalanced("{", "}");
+            } else {
+                return this.kind == TokenKind.NAME ? GQLOperationType.fromKeyword(this.token) : null;
+            }
+        }
+        return null;
+    }
+
+    private GQLDocument parseDocument() {
+        var operations = ImmutableList.<GQLDocument.Operation>builder();
+        var fragments = ImmutableList.<GQLDocument.Fragment>builder();
+        while (this.kind != TokenKind.END) {
+            var start = this.tokenStart;
+            if (this.isPunctuator("{")) {
+                // A lone selection set is shorthand for an anonymous query.
+                var selections = this.parseSelectionSet();
+                operations.add(new GQLDocument.Operation(GQLOperationType.QUERY, null, selections, start, this.selectionSetEnd));
+            } else if (this.isName("fragment")) {
+                this.advance();
+                var name = this.expectName();
+                this.expectName("on");
+                var typeCondition = this.expectName();
+                this.skipDirectives();
+                var selections = this.parseSelectionSet();
+                fragments.add(new GQLDocument.Fragment(name, typeCondition, selections, start, this.selectionSetEnd));
+            } else {
+                var type = this.kind == TokenKind.NAME ? GQLOperationType.fromKeyword(this.token) : null;
+                if (type == null) {
+                    throw this.unexpected("an operation or fragment definition");
+                }
+                this.advance();
+                var name = this.kind == TokenKind.NAME ? this.expectName() : null;
+                if (this.isPunctuator("(")) {
+                    this.skipBalanced("(", ")");
+                }
+                this.skipDirectives();
+                var selections = this.parseSelectionSet();
+                operations.add(new GQLDocument.Operation(type, name, selections, start, this.selectionSetEnd));
+            }
+        }
+        return new GQLDocument(operations.build(), fragments.build());
+    }
+
+    private ImmutableList<GQLDocument.Selection> parseSelectionSet() {
+        this.expectPunctuator("{");
+        var selections = ImmutableList.<GQLDocument.Selection>builder();
+        while (!this.isPunctuator("}")) {
+            if (this.isPunctuator("...")) {
+                this.advance();
+                if (this.isName("on")) {
+                    this.advance();
+                    var typeCondition = this.expectName();
+                    this.skipDirectives();
+                    selections.add(new GQLDocument.InlineFragment(typeCondition, this.parseSelectionSet()));
+                } else if (this.kind == TokenKind.NAME) {
+                    selections.add(new GQLDocument.FragmentSpread(this.expectName()));
+                    this.skipDirectives();
+                } else {
+                    this.skipDirectives();
+                    selections.add(new GQLDocument.InlineFragment(null, this.parseSelectionSet()));
+                }
+            } else {
+                String alias = null;
+                var name = this.expectName();
+                if (this.isPunctuator(":")) {
+                    this.advance();
+                    alias = name;
+                    name = this.expectName();
+                }
+                if (this.isPunctuator("(")) {
+                    this.skipBalanced("(", ")");
+                }
+                this.skipDirectives();
+                var fieldSelections = this.isPunctuator("{") ? this.parseSelectionSet() : ImmutableList.<GQLDocument.Selection>of();
+                selections.add(new GQLDocument.Field(alias, name, fieldSelections));
+            }
+        }
+        this.selectionSetEnd = this.position;
+        this.advance();
+        return selections.build();
+    }
+
+    private void skipDirectives() {
+        while (this.isPunctuator("@")) {
+            this.advance();
+            this.expectName();
+            if (this.isPunctuator("(")) {
+                this.skipBalanced("(", ")");
+            }
+        }
+    }
+
+    private void skipBalanced(String open, String close) {
+        var start = this.tokenStart;
+        this.expectPunctuator(open);
+        var depth = 1;
+        while (depth > 0) {
+            if (this.kind == TokenKind.END) {
+                throw new IllegalArgumentException("Unclosed '" + open + "' at " + start);
+            }
+            if (this.isPunctuator(open)) {
+                depth++;
+            } else if (this.isPunctuator(close)) {
+                depth--;
+            }
+            this.advance();
+        }
+    }
+
+    private boolean isPunctuator(String punctuator) {
+        return this.kind == TokenKind.PUNCTUATOR && this.token.equals(punctuator);
+    }
+
+    private boolean isName(String name) {
+        return this.kind == TokenKind.NAME && this.token.equals(name);
+    }
+
+    private void expectPunctuator(String punctuator) {
+        if (!this.isPunctuator(punctuator)) {
+            throw this.unexpected("'" + punctuator + "'");
+        }
+        this.advance();
+    }
+
+    private String expectName() {
+        if (this.kind != TokenKind.NAME) {
+            throw this.unexpected("a name");
+        }
+        var name = this.token;
+        this.advance();
+        return name;
+    }
+
+    private void expectName(String name) {
+        if (!this.isName(name)) {
+            throw this.unexpected("'" + name + "'");
+        }
+        this.advance();
+    }
+
+    private IllegalArgumentException unexpected(String expected) {
+        var found = this.kind == TokenKind.END ? "end of document" : "'" + this.token + "'";
+        return new IllegalArgumentException("Expected " + expected + " but found " + found + " at " + this.tokenStart);
+    }
+
+    private void advance() {
+        var source = this.source;
+        var length = source.length();
+        var i = this.position;
+        // Commas are insignificant in GQL, so they're skipped along with whitespace and comments.
+        while (i < length) {
+            var c = source.charAt(i);
+            if (c == '#') {
+                while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+                    i++;
+                }
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ',' || c == '\uFEFF') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        this.tokenStart = i;
+        if (i >= length) {
+            this.kind = TokenKind.END;
+            this.token = null;
+            this.position = i;
+            return;
+        }
+
+        var c = source.charAt(i);
+        var end = i + 1;
+        if (c == '.') {
+            if (!source.startsWith("...", i)) {
+                throw new IllegalArgumentException("Unexpected '.' at " + i);
+            }
+            end = i + 3;
+            this.kind = TokenKind.PUNCTUATOR;
+        } else if ("!$&():=@[]{}|".indexOf(c) >= 0) {
+            this.kind = TokenKind.PUNCTUATOR;
+        } else if (c == '_' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+            while (end < length && isNameChar(source.charAt(end))) {
+                end++;
+            }
+            this.kind = TokenKind.NAME;
+        } else if (c == '-' || c >= '0' && c <= '9') {
+            while (end < length && (isNameChar(source.charAt(end)) || "+-.".indexOf(source.charAt(end)) >= 0)) {
+                end++;
+            }
+            this.kind = TokenKind.NUMBER;
+        } else if (c == '"') {
+            end = this.findStringEnd(i);
+            this.kind = TokenKind.STRING;
+        } else {
+            throw new IllegalArgumentException("Unexpected character '" + c + "' at " + i);
+        }
+        this.token = source.substring(i, end);
+        this.position = end;
+    }
+
+    private int findStringEnd(int start) {
+        var source = this.source;
+        if (source.startsWith("\"\"\"", start)) {
+            // Block strings can only be closed by an unescaped triple quote.
+            for (int i = start + 3; i < source.length(); i++) {
+                if (source.startsWith("\\\"\"\"", i)) {
+                    i += 3;
+                } else if (source.startsWith("\"\"\"", i)) {
+                    return i + 3;
+                }
+            }
+        } else {
+            for (int i = start + 1; i < source.length(); i++) {
+                var c = source.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    return i + 1;
+                } else if (c == '\n' || c == '\r') {
+                    break;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string at " + start);
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '_' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+    }
+
+}
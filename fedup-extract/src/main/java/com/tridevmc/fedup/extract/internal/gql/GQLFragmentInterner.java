@@ -0,0 +1,165 @@
+package com.tridevmc.fedup.extract.internal.gql;
+
+import com.google.common.collect.ImmutableList;
+import com.tridevmc.fedup.extract.api.gql.GQLDocument;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits operation definitions into their own text and the named fragments they include, keeping a single copy of
+ * every distinct fragment across all the definitions it's given.
+ * <p>
+ * Definitions are split exactly, concatenating the parts of a {@link NormalizedDefinition} gives back the original
+ * definition character for character, which matters as persisted query IDs are hashes of the definition.
+ * <p>
+ * Fragments are identified by their index in the order they were first seen, fragments are compared by their full text
+ * so two different versions of a fragment with the same name are both kept. Not thread safe.
+ */
+public class GQLFragmentInterner {
+
+    private final List<String> fragments = new ArrayList<>();
+    private final Map<String, Integer> indicesByText = new HashMap<>();
+    private long originalLength;
+    private long normalizedLength;
+
+    /**
+     * Splits the given definition into parts, interning the fragments it includes.
+     * <p>
+     * Definitions that can't be parsed are kept whole as a single text part.
+     *
+     * @param definition the definition to normalize.
+     * @return the normalized definition.
+     */
+    public NormalizedDefinition normalize(String definition) {
+        this.originalLength += definition.length();
+        GQLDocument document;
+        try {
+            document = GQLDocumentParser.parse(definition);
+        } catch (IllegalArgumentException e) {
+            document = null;
+        }
+        if (document == null || document.fragments().isEmpty()) {
+            this.normalizedLength += definition.length();
+            return new NormalizedDefinition(ImmutableList.of(new Text(definition)));
+        }
+
+        // Everything that isn't a fragment, including the whitespace between definitions, stays as text in the operation.
+        var fragments = new ArrayList<>(document.fragments());
+        fragments.sort(Comparator.comparingInt(GQLDocument.Fragment::start));
+        var parts = ImmutableList.<Part>builder();
+        var text = new StringBuilder();
+        var position = 0;
+        for (var fragment : fragments) {
+            text.append(definition, position, fragment.start());
+            if (!text.isEmpty()) {
+                parts.add(new Text(text.toString()));
+                this.normalizedLength += text.length();
+                text.setLength(0);
+            }
+            parts.add(new FragmentReference(this.intern(definition.substring(fragment.start(), fragment.end()))));
+            position = fragment.end();
+        }
+        if (position < definition.length()) {
+            parts.add(new Text(definition.substring(position)));
+            this.normalizedLength += definition.length() - position;
+        }
+        return new NormalizedDefinition(parts.build());
+    }
+
+    private int intern(String text) {
+        var index = this.indicesByText.get(text);
+        if (index == null) {
+            index = this.fragments.size();
+            this.indicesByText.put(text, index);
+            this.fragments.add(text);
+            this.normalizedLength += text.length();
+        }
+        return index;
+    }
+
+    /**
+     * Gets every fragment interned so far, in the order they were first seen.
+     *
+     * @return the fragment definitions, indexed by {@link FragmentReference#index()}.
+     */
+    public List<String> getFragments() {
+        return this.fragments;
+    }
+
+    /**
+     * Gets the total length of every definition given to {@link #normalize(String)}.
+     *
+     * @return the length in characters.
+     */
+    public long getOriginalLength() {
+        return this.originalLength;
+    }
+
+    /**
+     * Gets the total length of the text kept once fragments are interned, the text parts of every definition plus a single copy of each fragment.
+     *
+     * @return the length in characters.
+     */
+    public long getNormalizedLength() {
+        return this.normalizedLength;
+    }
+
+    /**
+     * Rebuilds a definition from its parts.
+     *
+     * @param definition the normalized definition.
+     * @param fragments  the fragment definitions, indexed by {@link FragmentReference#index()}.
+     * @return the original definition.
+     * @throws IllegalArgumentException if the definition references a fragment that isn't in the given fragments.
+     */
+    public static String denormalize(NormalizedDefinition definition, List<String> fragments) {
+        var parts = definition.parts();
+        if (parts.size() == 1 && parts.get(0) instanceof Text only) {
+            return only.text();
+        }
+        var builder = new StringBuilder();
+        for (var part : parts) {
+            if (part instanceof Text text) {
+                builder.append(text.text());
+            } else if (part instanceof FragmentReference reference) {
+                if (reference.index() < 0 || reference.index() >= fragments.size()) {
+                    throw new IllegalArgumentException("Unknown fragment " + reference.index());
+                }
+                builder.append(fragments.get(reference.index()));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A definition split into the text that belongs to it and references to the fragments it includes.
+     *
+     * @param parts the parts of the definition, in order.
+     */
+    public record NormalizedDefinition(List<Part> parts) {
+
+    }
+
+    public sealed interface Part {
+
+    }
+
+    /**
+     * Text that is only part of this definition.
+     */
+    public record Text(String text) implements Part {
+
+    }
+
+    /**
+     * A reference to an interned fragment.
+     */
+    public record FragmentReference(int index) implements Part {
+
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.tridevmc.fedup.extract.internal.gql;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.tridevmc.fedup.extract.api.gql.GQLOperationType;
+import com.tridevmc.fedup.extract.api.gql.IGQLOperationCatalog;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads an operation catalog through a memory-mapped file. All values are big endian, and the file is laid out as:
+ * <ul>
+ *     <li>a header: the magic bytes, format version, operation count, name index size, the offsets of the name index and
+ *     string storage and the string offset of the OAuth client ID.</li>
+ *     <li>the operation records sorted by ID, each holding the string offsets of its ID and name and the offset of the
+ *     part list of its definition.</li>
+ *     <li>the name index, the positions of the records that have a name sorted by name.</li>
+ *     <li>the string storage, every distinct string once as its length followed by its UTF-8 bytes. Definitions are
+ *     split into their own text and the fragments they include, as by {@link GQLFragmentInterner}, and stored as a
+ *     count followed by the offsets of their parts, so a fragment included by many definitions is only stored once.</li>
+ * </ul>
+ * Lookups are a binary search over one of the indices, comparing the UTF-8 bytes of the key in place, so only the
+ * operation that was found is decoded. Thread safe, the mapped buffer is only read with absolute gets.
+ */
+public class GQLOperationCatalog implements IGQLOperationCatalog {
+
+    static final byte[] MAGIC = "FEDUPCAT".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Bump this whenever the layout changes, catalogs with another version are refused.
+     */
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 6 * Integer.BYTES;
+    static final int RECORD_SIZE = 3 * Integer.BYTES;
+    static final int NO_STRING = -1;
+
+    private final ByteBuffer data;
+    private final int size;
+    private final int nameIndexSize;
+    private final int nameIndexOffset;
+    private final int stringsOffset;
+    private final int oAuthClientId;
+    // The catalog doesn't store operation types, they're read from the definitions the first time they're needed.
+    private final Supplier<ImmutableListMultimap<GQLOperationType, IRedditGQLOperation>> operationsByType = Suppliers.memoize(this::readOperationsByType);
+
+    private GQLOperationCatalog(Path path, ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.capacity() < HEADER_SIZE || !hasMagic(data)) {
+            throw new IOException(path + " is not an operation catalog.");
+        }
+        var version = data.getInt(MAGIC.length);
+        if (version != FORMAT_VERSION) {
+            throw new IOException(path + " is an operation catalog of version " + version + ", expected " + FORMAT_VERSION + ".");
+        }
+        this.size = data.getInt(MAGIC.length + 4);
+        this.nameIndexSize = data.getInt(MAGIC.length + 8);
+        this.nameIndexOffset = data.getInt(MAGIC.length + 12);
+        this.stringsOffset = data.getInt(MAGIC.length + 16);
+        this.oAuthClientId = data.getInt(MAGIC.length + 20);
+        if (this.size < 0 || this.nameIndexSize < 0 || this.nameIndexSize > this.size
+                || this.nameIndexOffset != HEADER_SIZE + (long) this.size * RECORD_SIZE
+                || this.stringsOffset != this.nameIndexOffset + (long) this.nameIndexSize * Integer.BYTES
+                || this.stringsOffset > data.capacity()) {
+            throw new IOException(path + " is a truncated or corrupt operation catalog.");
+        }
+    }
+
+    /**
+     * Opens the catalog file at the given path, mapping the whole file into memory.
+     *
+     * @param path the path of the catalog file.
+     * @return the catalog.
+     * @throws IOException if the file can't be read or isn't a catalog.
+     */
+    public static GQLOperationCatalog open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed, and is released when the catalog is garbage collected.
+            return new GQLOperationCatalog(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Checks if the file at the given path starts with the catalog magic bytes.
+     *
+     * @param path the path of the file.
+     * @return true if the file looks like a catalog.
+     * @throws IOException if the file can't be read.
+     */
+    public static boolean isCatalog(Path path) throws IOException {
+        try (var in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    private static boolean hasMagic(ByteBuffer data) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public IRedditGQLOperation getById(String id) {
+        var key = id.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = this.size;
+        // Finds the first record with an ID that isn't less than the key.
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (this.compare(this.recordString(mid, 0), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < this.size && this.compare(this.recordString(low, 0), key) == 0 ? this.readRecord(low) : null;
+    }
+
+    @Override
+    public IRedditGQLOperation getByName(String name) {
+        var key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = this.nameIndexSize;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (this.compare(this.recordString(this.nameIndexEntry(mid), 1), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < this.nameIndexSize) {
+            var record = this.nameIndexEntry(low);
+            if (this.compare(this.recordString(record, 1), key) == 0) {
+                return this.readRecord(record);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes every operation in the catalog, in ID order.
+     *
+     * @return an immutable list of the operations.
+     */
+    @Override
+    public ImmutableList<IRedditGQLOperation> getGQLOperations() {
+        var operations = ImmutableList.<IRedditGQLOperation>builderWithExpectedSize(this.size);
+        for (int i = 0; i < this.size; i++) {
+            operations.add(this.readRecord(i));
+        }
+        return operations.build();
+    }
+
+    @Override
+    public ImmutableList<IRedditGQLOperation> getGQLOperations(GQLOperationType type) {
+        return this.operationsByType.get().get(type);
+    }
+
+    private ImmutableListMultimap<GQLOperationType, IRedditGQLOperation> readOperationsByType() {
+        var operationsByType = ImmutableListMultimap.<GQLOperationType, IRedditGQLOperation>builder();
+        for (var operation : this.getGQLOperations()) {
+            var type = operation.getDefinition() == null ? null : GQLDocumentParser.parseOperationType(operation.getDefinition());
+            if (type != null) {
+                operationsByType.put(type, operation);
+            }
+        }
+        return operationsByType.build();
+    }
+
+    @Override
+    public String getRawOAuthClientId() {
+        return this.readString(this.oAuthClientId);
+    }
+
+    /**
+     * Catalogs don't record whether the result they were written from was partial, so this is always empty.
+     *
+     * @return an empty set.
+     */
+    @Override
+    public ImmutableSet<String> getSkippedPhases() {
+        return ImmutableSet.of();
+    }
+
+    private int nameIndexEntry(int position) {
+        return this.data.getInt(this.nameIndexOffset + position * Integer.BYTES);
+    }
+
+    private int recordString(int record, int field) {
+        return this.data.getInt(HEADER_SIZE + record * RECORD_SIZE + field * Integer.BYTES);
+    }
+
+    private RedditGQLOperation readRecord(int record) {
+        return new RedditGQLOperation(
+                this.readString(this.recordString(record, 0)),
+                this.readString(this.recordString(record, 1)),
+                this.readParts(this.recordString(record, 2))
+        );
+    }
+
+    private String readParts(int offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        var position = this.stringsOffset + offset;
+        var count = this.data.getInt(position);
+        if (count == 1) {
+            return this.readString(this.data.getInt(position + Integer.BYTES));
+        }
+        var definition = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            definition.append(this.readString(this.data.getInt(position + i * Integer.BYTES)));
+        }
+        return definition.toString();
+    }
+
+    private String readString(int offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        var position = this.stringsOffset + offset;
+        var bytes = new byte[this.data.getInt(position)];
+        this.data.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares the UTF-8 bytes of the string at the given offset with the given key, as unsigned bytes.
+     */
+    private int compare(int offset, byte[] key) {
+        if (offset == NO_STRING) {
+            return -1;
+        }
+        var position = this.stringsOffset + offset;
+        var length = this.data.getInt(position);
+        position += Integer.BYTES;
+        var common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            var result = Byte.compareUnsigned(this.data.get(position + i), key[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.tridevmc.fedup.extract.internal.gql;
+
+import com.google.common.primitives.UnsignedBytes;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Writes operation catalogs, see {@link GQLOperationCatalog} for the layout.
+ */
+public final class GQLOperationCatalogWriter {
+
+    private GQLOperationCatalogWriter() {
+    }
+
+    /**
+     * Writes the operations and OAuth client ID of the given result to a catalog file, replacing it if it already exists.
+     *
+     * @param result the result to write.
+     * @param path   the path of the catalog file.
+     * @throws IOException if the catalog can't be written.
+     */
+    public static void write(IAPKAnalysisResult result, Path path) throws IOException {
+        var strings = new StringStorage();
+        var fragmentInterner = new GQLFragmentInterner();
+        var records = new ArrayList<Record>();
+        for (IRedditGQLOperation operation : result.getGQLOperations()) {
+            records.add(new Record(
+                    strings.add(operation.getId()),
+                    strings.add(operation.getName()),
+                    strings.addParts(operation.getDefinition(), fragmentInterner)
+            ));
+        }
+        var oAuthClientId = strings.add(result.getRawOAuthClientId());
+
+        // Both indices are sorted by the UTF-8 bytes of their keys, the same order the reader compares them in.
+        var bytes = UnsignedBytes.lexicographicalComparator();
+        records.sort(Comparator.comparing(r -> strings.bytesAt(r.id()), bytes));
+        var nameIndex = IntStream.range(0, records.size())
+                .filter(i -> records.get(i).name() != GQLOperationCatalog.NO_STRING)
+                .boxed()
+                .sorted(Comparator.comparing(i -> strings.bytesAt(records.get(i).name()), bytes))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        var nameIndexOffset = GQLOperationCatalog.HEADER_SIZE + records.size() * GQLOperationCatalog.RECORD_SIZE;
+        var stringsOffset = nameIndexOffset + nameIndex.length * Integer.BYTES;
+        var stringBytes = strings.toByteArray();
+        var buffer = ByteBuffer.allocate(stringsOffset + stringBytes.length);
+        buffer.put(GQLOperationCatalog.MAGIC);
+        buffer.putInt(GQLOperationCatalog.FORMAT_VERSION);
+        buffer.putInt(records.size());
+        buffer.putInt(nameIndex.length);
+        buffer.putInt(nameIndexOffset);
+        buffer.putInt(stringsOffset);
+        buffer.putInt(oAuthClientId);
+        for (var record : records) {
+            buffer.putInt(record.id());
+            buffer.putInt(record.name());
+            buffer.putInt(record.definition());
+        }
+        for (var index : nameIndex) {
+            buffer.putInt(index);
+        }
+        buffer.put(stringBytes);
+        buffer.flip();
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * The offsets of the strings of an operation, relative to the start of the string storage.
+     */
+    private record Record(int id, int name, int definition) {
+
+    }
+
+    /**
+     * Stores every distinct string once, as its length followed by its UTF-8 bytes, and the part lists of definitions.
+     */
+    private static class StringStorage {
+
+        private final Map<String, Integer> offsets = new HashMap<>();
+        private final Map<Integer, byte[]> encoded = new HashMap<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(this.bytes);
+
+        int add(String value) throws IOException {
+            if (value == null) {
+                return GQLOperationCatalog.NO_STRING;
+            }
+            var offset = this.offsets.get(value);
+            if (offset == null) {
+                offset = this.bytes.size();
+                var encoded = value.getBytes(StandardCharsets.UTF_8);
+                this.out.writeInt(encoded.length);
+                this.out.write(encoded);
+                this.offsets.put(value, offset);
+                this.encoded.put(offset, encoded);
+            }
+            return offset;
+        }
+
+        /**
+         * Splits a definition into its own text and the fragments it includes and stores them as strings, followed by
+         * a list of their offsets. Fragments shared between definitions are only stored once, as they are the same string.
+         */
+        int addParts(String definition, GQLFragmentInterner fragmentInterner) throws IOException {
+            if (definition == null) {
+                return GQLOperationCatalog.NO_STRING;
+            }
+            var parts = fragmentInterner.normalize(definition).parts();
+            var offsets = new int[parts.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                var part = parts.get(i);
+                if (part instanceof GQLFragmentInterner.Text text) {
+                    offsets[i] = this.add(text.text());
+                } else if (part instanceof GQLFragmentInterner.FragmentReference reference) {
+                    offsets[i] = this.add(fragmentInterner.getFragments().get(reference.index()));
+                }
+            }
+            var offset = this.bytes.size();
+            this.out.writeInt(offsets.length);
+            for (var partOffset : offsets) {
+                this.out.writeInt(partOffset);
+            }
+            return offset;
+        }
+
+        byte[] bytesAt(int offset) {
+            return offset == GQLOperationCatalog.NO_STRING ? new byte[0] : this.encoded.get(offset);
+        }
+
+        byte[] toByteArray() {
+            return this.bytes.toByteArray();
+        }
+
+    }
+
+}
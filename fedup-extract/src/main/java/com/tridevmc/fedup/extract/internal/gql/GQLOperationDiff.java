@@ -0,0 +1,69 @@
+package com.tridevmc.fedup.extract.internal.gql;
+
+import com.google.common.collect.ImmutableList;
+import com.tridevmc.fedup.extract.api.gql.IGQLOperationDiff;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public record GQLOperationDiff(
+        ImmutableList<IRedditGQLOperation> added,
+        ImmutableList<IRedditGQLOperation> removed,
+        ImmutableList<IRedditGQLOperation> changed
+) implements IGQLOperationDiff {
+
+    /**
+     * Compares two sets of operations by name.
+     *
+     * @param previous the operations from the older analysis.
+     * @param current  the operations from the newer analysis.
+     * @return the differences between the two.
+     */
+    public static GQLOperationDiff between(Collection<? extends IRedditGQLOperation> previous, Collection<? extends IRedditGQLOperation> current) {
+        var previousByName = byName(previous);
+        var currentByName = byName(current);
+        var added = ImmutableList.<IRedditGQLOperation>builder();
+        var removed = ImmutableList.<IRedditGQLOperation>builder();
+        var changed = ImmutableList.<IRedditGQLOperation>builder();
+        currentByName.forEach((name, operation) -> {
+            var previousOperation = previousByName.get(name);
+            if (previousOperation == null) {
+                added.add(operation);
+            } else if (!Objects.equals(previousOperation.getId(), operation.getId())
+                    || !Objects.equals(previousOperation.getDefinition(), operation.getDefinition())) {
+                changed.add(operation);
+            }
+        });
+        previousByName.forEach((name, operation) -> {
+            if (!currentByName.containsKey(name)) {
+                removed.add(operation);
+            }
+        });
+        return new GQLOperationDiff(added.build(), removed.build(), changed.build());
+    }
+
+    private static Map<String, IRedditGQLOperation> byName(Collection<? extends IRedditGQLOperation> operations) {
+        var byName = new LinkedHashMap<String, IRedditGQLOperation>();
+        operations.forEach(o -> byName.putIfAbsent(o.getName(), o));
+        return byName;
+    }
+
+    @Override
+    public ImmutableList<IRedditGQLOperation> getAdded() {
+        return this.added;
+    }
+
+    @Override
+    public ImmutableList<IRedditGQLOperation> getRemoved() {
+        return this.removed;
+    }
+
+    @Override
+    public ImmutableList<IRedditGQLOperation> getChanged() {
+        return this.changed;
+    }
+
+}
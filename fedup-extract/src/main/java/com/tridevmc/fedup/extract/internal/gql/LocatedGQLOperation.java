@@ -0,0 +1,16 @@
+package com.tridevmc.fedup.extract.internal.gql;
+
+/**
+ * A GQL operation along with the classes it was found in.
+ *
+ * @param operationClass the raw name of the class the operation is an instance of.
+ * @param sourceClass    the raw name of the class the operation's values were read from, such as a class holding operation constants.
+ * @param operation      the operation.
+ */
+public record LocatedGQLOperation(
+        String operationClass,
+        String sourceClass,
+        RedditGQLOperation operation
+) {
+
+}
@@ -0,0 +1,84 @@
+package com.tridevmc.fedup.extract.internal.metrics;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisMetrics;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisPhaseMetrics;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the metrics of a single analysis, phases are created the first time they are used and kept in that order.
+ * <p>
+ * Every timed phase is also reported to JFR as it completes, so runs can be profiled by starting them with
+ * {@code -XX:StartFlightRecording} rather than attaching a profiler.
+ */
+public class AnalysisMetrics implements IAPKAnalysisMetrics {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final String analysisName;
+    private final Map<String, AnalysisPhaseMetrics> phases = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty set of metrics.
+     *
+     * @param analysisName the name of the analysis, usually the name of the APK, used to tell analyses apart in JFR recordings.
+     */
+    public AnalysisMetrics(String analysisName) {
+        this.analysisName = analysisName;
+    }
+
+    /**
+     * Gets the metrics of the given phase, creating them if the phase hasn't been used yet.
+     *
+     * @param name the name of the phase.
+     * @return the metrics of the phase.
+     */
+    public synchronized AnalysisPhaseMetrics getPhase(String name) {
+        return this.phases.computeIfAbsent(name, n -> new AnalysisPhaseMetrics(this.analysisName, n));
+    }
+
+    @Override
+    public synchronized ImmutableList<IAPKAnalysisPhaseMetrics> getPhases() {
+        return ImmutableList.copyOf(this.phases.values());
+    }
+
+    /**
+     * Marks the analysis as complete, committing the totals of every phase to JFR.
+     */
+    public synchronized void finish() {
+        this.phases.values().forEach(AnalysisPhaseMetrics::commitSummary);
+    }
+
+    @Override
+    public void writeJson(Appendable out) throws IOException {
+        var json = new JsonObject();
+        json.addProperty("analysis", this.analysisName);
+        var phases = new JsonArray();
+        for (var phase : this.getPhases()) {
+            var phaseJson = new JsonObject();
+            phaseJson.addProperty("name", phase.getName());
+            phaseJson.addProperty("wallTimeNanos", phase.getWallTimeNanos());
+            phaseJson.addProperty("cpuTimeNanos", phase.getCpuTimeNanos());
+            phaseJson.addProperty("allocatedBytes", phase.getAllocatedBytes());
+            var counters = new JsonObject();
+            phase.getCounters().forEach(counters::addProperty);
+            phaseJson.add("counters", counters);
+            phases.add(phaseJson);
+        }
+        json.add("phases", phases);
+        try {
+            GSON.toJson(json, out);
+        } catch (JsonIOException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e);
+        }
+    }
+
+}
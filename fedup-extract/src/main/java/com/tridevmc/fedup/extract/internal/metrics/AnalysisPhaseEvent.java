@@ -0,0 +1,37 @@
+package com.tridevmc.fedup.extract.internal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event covering one timed run of an analysis phase on the thread that ran it.
+ */
+@Name("com.tridevmc.fedup.AnalysisPhase")
+@Label("Analysis Phase")
+@Category({"FedUp", "Analysis"})
+@Description("A phase of an APK analysis, such as loading the APK or an analysis step.")
+class AnalysisPhaseEvent extends Event {
+
+    @Label("Analysis")
+    @Description("The name of the APK being analyzed.")
+    String analysis;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("CPU Time")
+    @Description("CPU time used by the thread that ran the phase, work handed to other threads is only included in the summary.")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the thread that ran the phase.")
+    @DataAmount
+    long allocatedBytes;
+
+}
@@ -0,0 +1,252 @@
+package com.tridevmc.fedup.extract.internal.metrics;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisPhaseMetrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a single analysis phase, safe to update from any number of threads at once.
+ */
+public class AnalysisPhaseMetrics implements IAPKAnalysisPhaseMetrics {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean SUN_THREAD_MX_BEAN = THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean b
+            && b.isThreadAllocatedMemorySupported() ? b : null;
+    private static final boolean CPU_TIME_SUPPORTED = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported();
+    // The innermost timer open on each thread, so a timer knows which one it was started inside of.
+    private static final ThreadLocal<Timer> OPEN_TIMER = new ThreadLocal<>();
+
+    private final String analysisName;
+    private final String name;
+    private final LongAdder wallTimeNanos = new LongAdder();
+    private final LongAdder cpuTimeNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    AnalysisPhaseMetrics(String analysisName, String name) {
+        this.analysisName = analysisName;
+        this.name = name;
+    }
+
+    /**
+     * Starts timing the phase on the current thread, the wall time, CPU time and allocations are added to the phase
+     * when the returned timer is closed.
+     *
+     * @return the timer, to be closed on the same thread once the phase is done.
+     */
+    public Timer time() {
+        return new Timer(true, false);
+    }
+
+    /**
+     * Starts timing the phase on the current thread like {@link #time()}, but leaves out the work of any other phase
+     * timed on this thread before the returned timer is closed, such as loading something lazily on first use that has
+     * a phase of its own.
+     *
+     * @return the timer, to be closed on the same thread once the phase is done.
+     */
+    public Timer timeExclusive() {
+        return new Timer(true, true);
+    }
+
+    /**
+     * Starts tracking work done for the phase on another thread, such as a worker in a pool the phase submitted tasks to.
+     * Only the CPU time and allocations are added to the phase, the wall time is already covered by {@link #time()}.
+     * Like {@link #timeExclusive()}, the work of other phases timed on the thread in the meantime is left out, and
+     * their wall time is taken off this phase's too, as the phase was waiting on them.
+     *
+     * @return the timer, to be closed on the same thread once the work is done.
+     */
+    public Timer track() {
+        return new Timer(false, true);
+    }
+
+    /**
+     * Creates a thread factory for a fork join pool that tracks all the work its threads do for the phase.
+     * The work is added to the phase as each thread terminates, so the pool must be shut down and terminated before
+     * the phase is complete.
+     *
+     * @return the thread factory.
+     */
+    public ForkJoinPool.ForkJoinWorkerThreadFactory trackingWorkerThreadFactory() {
+        return TrackingWorkerThread::new;
+    }
+
+    /**
+     * Increments the given counter by one.
+     *
+     * @param counter the name of the counter.
+     */
+    public void count(String counter) {
+        this.count(counter, 1);
+    }
+
+    /**
+     * Adds the given amount to the given counter.
+     *
+     * @param counter the name of the counter.
+     * @param amount  the amount to add.
+     */
+    public void count(String counter, long amount) {
+        this.counters.computeIfAbsent(counter, c -> new LongAdder()).add(amount);
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public long getWallTimeNanos() {
+        return this.wallTimeNanos.sum();
+    }
+
+    @Override
+    public long getCpuTimeNanos() {
+        return this.cpuTimeNanos.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.sum();
+    }
+
+    @Override
+    public ImmutableSortedMap<String, Long> getCounters() {
+        var counters = ImmutableSortedMap.<String, Long>naturalOrder();
+        this.counters.forEach((k, v) -> counters.put(k, v.sum()));
+        return counters.build();
+    }
+
+    /**
+     * Commits a summary of the phase to JFR, if a recording is listening for it.
+     */
+    void commitSummary() {
+        var event = new AnalysisPhaseSummaryEvent();
+        if (event.shouldCommit()) {
+            event.analysis = this.analysisName;
+            event.phase = this.name;
+            event.wallTime = this.getWallTimeNanos();
+            event.cpuTime = this.getCpuTimeNanos();
+            event.allocatedBytes = this.getAllocatedBytes();
+            event.counters = this.getCounters().toString();
+            event.commit();
+        }
+    }
+
+    private static long currentThreadCpuTime() {
+        return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return SUN_THREAD_MX_BEAN != null ? SUN_THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Measures work done for a phase on a single thread, closing it adds the measurements to the phase.
+     */
+    public final class Timer implements AutoCloseable {
+
+        private final boolean wallTime;
+        private final boolean exclusive;
+        private final Timer parent;
+        private final AnalysisPhaseEvent event;
+        private final long startNanos;
+        private final long startCpuTime;
+        private final long startAllocatedBytes;
+        // What timers of other phases measured while nested directly inside this one, left out if it's exclusive.
+        private long nestedNanos;
+        private long nestedCpuTime;
+        private long nestedAllocatedBytes;
+
+        private Timer(boolean wallTime, boolean exclusive) {
+            this.wallTime = wallTime;
+            this.exclusive = exclusive;
+            this.parent = OPEN_TIMER.get();
+            OPEN_TIMER.set(this);
+            this.event = wallTime ? new AnalysisPhaseEvent() : null;
+            if (this.event != null) {
+                this.event.begin();
+            }
+            this.startNanos = System.nanoTime();
+            this.startCpuTime = currentThreadCpuTime();
+            this.startAllocatedBytes = currentThreadAllocatedBytes();
+        }
+
+        @Override
+        public void close() {
+            var wallTime = System.nanoTime() - this.startNanos;
+            var cpuTime = currentThreadCpuTime() - this.startCpuTime;
+            var allocated = currentThreadAllocatedBytes() - this.startAllocatedBytes;
+            OPEN_TIMER.set(this.parent);
+            if (this.parent != null && this.parent.getPhase() != AnalysisPhaseMetrics.this) {
+                this.parent.nestedNanos += wallTime;
+                this.parent.nestedCpuTime += cpuTime;
+                this.parent.nestedAllocatedBytes += allocated;
+            }
+            if (this.exclusive) {
+                wallTime -= this.nestedNanos;
+                cpuTime -= this.nestedCpuTime;
+                allocated -= this.nestedAllocatedBytes;
+            }
+            AnalysisPhaseMetrics.this.cpuTimeNanos.add(cpuTime);
+            AnalysisPhaseMetrics.this.allocatedBytes.add(allocated);
+            if (this.wallTime) {
+                AnalysisPhaseMetrics.this.wallTimeNanos.add(wallTime);
+            } else {
+                AnalysisPhaseMetrics.this.wallTimeNanos.add(-this.nestedNanos);
+            }
+            if (this.event != null) {
+                this.event.end();
+                if (this.event.shouldCommit()) {
+                    this.event.analysis = AnalysisPhaseMetrics.this.analysisName;
+                    this.event.phase = AnalysisPhaseMetrics.this.name;
+                    this.event.cpuTime = cpuTime;
+                    this.event.allocatedBytes = allocated;
+                    this.event.commit();
+                }
+            }
+        }
+
+        private AnalysisPhaseMetrics getPhase() {
+            return AnalysisPhaseMetrics.this;
+        }
+
+    }
+
+    /**
+     * A worker thread that tracks everything it does for the phase between starting and terminating, which is far
+     * cheaper than tracking each task it runs.
+     */
+    private final class TrackingWorkerThread extends ForkJoinWorkerThread {
+
+        private Timer timer;
+
+        private TrackingWorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            this.timer = AnalysisPhaseMetrics.this.track();
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            if (this.timer != null) {
+                this.timer.close();
+            }
+            super.onTermination(exception);
+        }
+
+    }
+
+}
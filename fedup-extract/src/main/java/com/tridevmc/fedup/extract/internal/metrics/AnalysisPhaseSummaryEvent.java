@@ -0,0 +1,44 @@
+package com.tridevmc.fedup.extract.internal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event with the totals of an analysis phase, committed once the analysis completes.
+ */
+@Name("com.tridevmc.fedup.AnalysisPhaseSummary")
+@Label("Analysis Phase Summary")
+@Category({"FedUp", "Analysis"})
+@Description("The totals of a phase of an APK analysis, across every thread that worked on it.")
+@StackTrace(false)
+class AnalysisPhaseSummaryEvent extends Event {
+
+    @Label("Analysis")
+    @Description("The name of the APK being analyzed.")
+    String analysis;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Wall Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long wallTime;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Counters")
+    String counters;
+
+}
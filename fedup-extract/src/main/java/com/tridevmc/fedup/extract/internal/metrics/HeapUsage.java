@@ -0,0 +1,53 @@
+package com.tridevmc.fedup.extract.internal.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+/**
+ * Reads the heap usage of the JVM, used by low-memory mode to size its batches and report how close it came to its budget.
+ * <p>
+ * The heap is shared by everything in the JVM, so analyses running side by side will see each other's usage.
+ */
+public final class HeapUsage {
+
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = ManagementFactory.getMemoryPoolMXBeans().stream().filter(
+            p -> p.getType() == MemoryType.HEAP
+    ).toList();
+
+    private HeapUsage() {
+    }
+
+    /**
+     * Resets the peak usage of every heap pool, so {@link #getPeakBytes()} only covers what happens from now on.
+     */
+    public static void resetPeak() {
+        HEAP_POOLS.forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    /**
+     * Gets the peak heap usage since the last call to {@link #resetPeak()}.
+     * <p>
+     * Each pool peaks at a different time, so this is an upper bound on the actual peak.
+     *
+     * @return the peak heap usage in bytes.
+     */
+    public static long getPeakBytes() {
+        return HEAP_POOLS.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+    }
+
+    /**
+     * Estimates how much of the heap is live, using what each pool held after its most recent collection.
+     * Garbage that hasn't been collected yet isn't counted, unlike the current usage of the heap.
+     *
+     * @return the estimated live heap in bytes.
+     */
+    public static long getLiveBytes() {
+        return HEAP_POOLS.stream().mapToLong(p -> {
+            var usage = p.getCollectionUsage();
+            return usage != null ? usage.getUsed() : p.getUsage().getUsed();
+        }).sum();
+    }
+
+}
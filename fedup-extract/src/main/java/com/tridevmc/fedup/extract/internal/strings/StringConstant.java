@@ -0,0 +1,11 @@
+package com.tridevmc.fedup.extract.internal.strings;
+
+/**
+ * A string constant loaded by the code of a class.
+ *
+ * @param sourceClass the raw name of the class the constant is loaded in.
+ * @param value       the value of the constant.
+ */
+public record StringConstant(String sourceClass, String value) {
+
+}
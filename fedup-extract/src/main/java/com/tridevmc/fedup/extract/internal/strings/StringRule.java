@@ -0,0 +1,170 @@
+package com.tridevmc.fedup.extract.internal.strings;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Describes string constants an analysis step is interested in, rules are compiled together into a {@link StringRuleMatcher}
+ * so any number of them can be checked in a single pass over a string.
+ * <p>
+ * A rule can require the string to contain one of a set of keywords, to have a certain shape, or both.
+ *
+ * @param name     the name of the rule, matches are reported under this name so it must be unique within a matcher.
+ * @param keywords the keywords the string must contain one of, empty if the rule only checks the shape.
+ * @param shape    the shape the string must have, or null if the rule only checks for keywords.
+ */
+public record StringRule(String name, ImmutableList<Keyword> keywords, Shape shape) {
+
+    public StringRule {
+        Objects.requireNonNull(name);
+        if (keywords.isEmpty() && shape == null) {
+            throw new IllegalArgumentException("Rule " + name + " needs keywords or a shape.");
+        }
+    }
+
+    /**
+     * Creates a rule matching strings that contain any of the given keywords anywhere.
+     *
+     * @param name       the name of the rule.
+     * @param ignoreCase true to match the keywords regardless of case.
+     * @param keywords   the keywords.
+     * @return the rule.
+     */
+    public static StringRule containing(String name, boolean ignoreCase, String... keywords) {
+        return new StringRule(name, keywords(false, ignoreCase, keywords), null);
+    }
+
+    /**
+     * Creates a rule matching strings that start with any of the given keywords.
+     *
+     * @param name     the name of the rule.
+     * @param keywords the keywords, matched case sensitively.
+     * @return the rule.
+     */
+    public static StringRule startingWith(String name, String... keywords) {
+        return new StringRule(name, keywords(true, false, keywords), null);
+    }
+
+    /**
+     * Creates a rule matching strings of the given shape.
+     *
+     * @param name  the name of the rule.
+     * @param shape the shape.
+     * @return the rule.
+     */
+    public static StringRule shaped(String name, Shape shape) {
+        return new StringRule(name, ImmutableList.of(), shape);
+    }
+
+    private static ImmutableList<Keyword> keywords(boolean anchored, boolean ignoreCase, String... keywords) {
+        return Arrays.stream(keywords).map(k -> new Keyword(k, anchored, ignoreCase)).collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * A keyword a rule looks for, keywords are limited to ASCII so they can be compiled into a table driven automaton.
+     *
+     * @param text       the keyword.
+     * @param anchored   true if the keyword only matches at the start of the string.
+     * @param ignoreCase true if the keyword matches regardless of case.
+     */
+    public record Keyword(String text, boolean anchored, boolean ignoreCase) {
+
+        public Keyword {
+            if (text.isEmpty() || !text.chars().allMatch(c -> c < CharClass.ASCII_SIZE)) {
+                throw new IllegalArgumentException("Keywords must be non-empty ASCII, got \"" + text + "\".");
+            }
+        }
+
+    }
+
+    /**
+     * The shape of a string, its length and which characters may appear where.
+     *
+     * @param first     the characters the first character must be one of, checked on top of {@code all}.
+     * @param all       the characters every character must be one of.
+     * @param minLength the minimum length.
+     * @param maxLength the maximum length.
+     */
+    public record Shape(CharClass first, CharClass all, int minLength, int maxLength) {
+
+        /**
+         * Creates a shape where every character is from the given class.
+         *
+         * @param all       the characters every character must be one of.
+         * @param minLength the minimum length.
+         * @param maxLength the maximum length.
+         * @return the shape.
+         */
+        public static Shape of(CharClass all, int minLength, int maxLength) {
+            return new Shape(CharClass.ANY, all, minLength, maxLength);
+        }
+
+    }
+
+    /**
+     * A set of characters, written like a regular expression character class without the brackets, such as {@code 0-9a-z}.
+     * Only ASCII characters can be listed, anything else is only part of {@link #ANY}.
+     */
+    public static final class CharClass {
+
+        static final int ASCII_SIZE = 128;
+
+        public static final CharClass ANY = new CharClass(null);
+
+        private final boolean[] ascii;
+
+        private CharClass(boolean[] ascii) {
+            this.ascii = ascii;
+        }
+
+        /**
+         * Parses a character class.
+         *
+         * @param ranges the characters and ranges in the class, such as {@code 0-9a-z_}.
+         * @return the character class.
+         */
+        public static CharClass of(String ranges) {
+            var ascii = new boolean[ASCII_SIZE];
+            for (int i = 0; i < ranges.length(); i++) {
+                var from = ranges.charAt(i);
+                var to = from;
+                if (i + 2 < ranges.length() && ranges.charAt(i + 1) == '-') {
+                    to = ranges.charAt(i + 2);
+                    i += 2;
+                }
+                if (from > to || to >= ASCII_SIZE) {
+                    throw new IllegalArgumentException("Invalid character class " + ranges);
+                }
+                for (var c = from; c <= to; c++) {
+                    ascii[c] = true;
+                }
+            }
+            return new CharClass(ascii);
+        }
+
+        /**
+         * Checks if the given character is in this class.
+         *
+         * @param c the character.
+         * @return true if the character is in the class.
+         */
+        public boolean contains(char c) {
+            return this.ascii == null || (c < ASCII_SIZE && this.ascii[c]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CharClass other && Arrays.equals(this.ascii, other.ascii);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.ascii);
+        }
+
+    }
+
+}
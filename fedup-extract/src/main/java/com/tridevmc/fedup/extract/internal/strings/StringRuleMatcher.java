@@ -0,0 +1,256 @@
+package com.tridevmc.fedup.extract.internal.strings;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Checks strings against a set of {@link StringRule}s in a single pass, so adding rules costs next to nothing compared
+ * to running a separate predicate per rule.
+ * <p>
+ * Keywords are compiled into one Aho-Corasick automaton, flattened into a transition table over ASCII, and shapes are
+ * compiled into a bitmask per character of the rules that allow it. Matching walks the string once, stepping the
+ * automaton and clearing the bits of shapes the character breaks. Rules are identified by their index, which limits a
+ * matcher to 64 rules.
+ */
+public final class StringRuleMatcher {
+
+    private static final int MAX_RULES = Long.SIZE;
+    private static final int ALPHABET = StringRule.CharClass.ASCII_SIZE;
+
+    private final ImmutableList<StringRule> rules;
+    private final long keywordRules;
+    private final long shapeRules;
+
+    // Aho-Corasick automaton over lower case ASCII, next[state * ALPHABET + c] is the state after reading c.
+    private final int[] next;
+    // The keywords recognized when entering each state, including those recognized by the states its failure links lead to.
+    private final CompiledKeyword[][] output;
+
+    // allowed[c] holds the shape rules c may appear in, allowedFirst[c] the ones c may start, the any fields cover non-ASCII.
+    private final long[] allowed = new long[ALPHABET];
+    private final long[] allowedFirst = new long[ALPHABET];
+    private final long anyAllowed;
+    private final long anyAllowedFirst;
+
+    private StringRuleMatcher(ImmutableList<StringRule> rules) {
+        this.rules = rules;
+        var keywordRules = 0L;
+        var shapeRules = 0L;
+        var anyAllowed = 0L;
+        var anyAllowedFirst = 0L;
+        var keywords = new ArrayList<CompiledKeyword>();
+        for (int i = 0; i < rules.size(); i++) {
+            var rule = rules.get(i);
+            var bit = 1L << i;
+            for (var keyword : rule.keywords()) {
+                keywords.add(new CompiledKeyword(bit, keyword));
+                keywordRules |= bit;
+            }
+            var shape = rule.shape();
+            if (shape != null) {
+                shapeRules |= bit;
+                for (char c = 0; c < ALPHABET; c++) {
+                    if (shape.all().contains(c)) {
+                        this.allowed[c] |= bit;
+                        if (shape.first().contains(c)) {
+                            this.allowedFirst[c] |= bit;
+                        }
+                    }
+                }
+                if (shape.all() == StringRule.CharClass.ANY) {
+                    anyAllowed |= bit;
+                    if (shape.first() == StringRule.CharClass.ANY) {
+                        anyAllowedFirst |= bit;
+                    }
+                }
+            }
+        }
+        this.keywordRules = keywordRules;
+        this.shapeRules = shapeRules;
+        this.anyAllowed = anyAllowed;
+        this.anyAllowedFirst = anyAllowedFirst;
+
+        var automaton = new Automaton(keywords);
+        this.next = automaton.next;
+        this.output = automaton.output;
+    }
+
+    /**
+     * Compiles the given rules.
+     *
+     * @param rules the rules, with unique names.
+     * @return the matcher.
+     */
+    public static StringRuleMatcher compile(List<StringRule> rules) {
+        if (rules.size() > MAX_RULES) {
+            throw new IllegalArgumentException("A matcher supports at most " + MAX_RULES + " rules, got " + rules.size());
+        }
+        var names = new HashSet<String>();
+        for (var rule : rules) {
+            if (!names.add(rule.name())) {
+                throw new IllegalArgumentException("Duplicate rule " + rule.name());
+            }
+        }
+        return new StringRuleMatcher(ImmutableList.copyOf(rules));
+    }
+
+    /**
+     * Gets the rules of this matcher, in the order of the bits {@link #match(String)} returns.
+     *
+     * @return the rules.
+     */
+    public ImmutableList<StringRule> getRules() {
+        return this.rules;
+    }
+
+    /**
+     * Checks if the given match result includes the given rule.
+     *
+     * @param matches the result of {@link #match(String)}.
+     * @param rule    the index of the rule.
+     * @return true if the rule matched.
+     */
+    public static boolean matches(long matches, int rule) {
+        return (matches & (1L << rule)) != 0;
+    }
+
+    /**
+     * Checks the given string against every rule.
+     *
+     * @param s the string.
+     * @return a bitmask of the rules the string matches, bit {@code i} being set if {@code getRules().get(i)} matched.
+     */
+    public long match(String s) {
+        var length = s.length();
+        var shapes = this.shapeRules;
+        var foundKeywords = 0L;
+        var state = 0;
+        for (int i = 0; i < length; i++) {
+            var c = s.charAt(i);
+            if (c < ALPHABET) {
+                shapes &= i == 0 ? this.allowedFirst[c] : this.allowed[c];
+                state = this.next[state * ALPHABET + toLowerCase(c)];
+                for (var keyword : this.output[state]) {
+                    if ((foundKeywords & keyword.rule) == 0 && keyword.matchesAt(s, i)) {
+                        foundKeywords |= keyword.rule;
+                    }
+                }
+            } else {
+                // Keywords are ASCII, so no keyword spans a character outside of it.
+                shapes &= i == 0 ? this.anyAllowedFirst : this.anyAllowed;
+                state = 0;
+            }
+            if (shapes == 0 && foundKeywords == this.keywordRules) {
+                // Every shape is broken and every keyword found, the rest of the string can't change the result.
+                break;
+            }
+        }
+        for (var remaining = shapes; remaining != 0; remaining &= remaining - 1) {
+            var rule = Long.numberOfTrailingZeros(remaining);
+            var shape = this.rules.get(rule).shape();
+            if (length < shape.minLength() || length > shape.maxLength()) {
+                shapes &= ~(1L << rule);
+            }
+        }
+        var all = this.rules.size() == MAX_RULES ? -1L : (1L << this.rules.size()) - 1;
+        return all & (foundKeywords | ~this.keywordRules) & (shapes | ~this.shapeRules);
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private record CompiledKeyword(long rule, StringRule.Keyword keyword) {
+
+        /**
+         * Checks a keyword the automaton recognized ending at the given index, the automaton itself ignores case and
+         * position.
+         */
+        boolean matchesAt(String s, int end) {
+            var text = this.keyword.text();
+            var start = end - text.length() + 1;
+            if (this.keyword.anchored() && start != 0) {
+                return false;
+            }
+            return this.keyword.ignoreCase() || s.startsWith(text, start);
+        }
+
+    }
+
+    /**
+     * Builds the keyword automaton, states are numbered breadth first from the root at 0.
+     */
+    private static final class Automaton {
+
+        private static final CompiledKeyword[] NO_OUTPUT = new CompiledKeyword[0];
+
+        private final int[] next;
+        private final CompiledKeyword[][] output;
+
+        Automaton(List<CompiledKeyword> keywords) {
+            var transitions = new ArrayList<int[]>();
+            var outputs = new ArrayList<List<CompiledKeyword>>();
+            transitions.add(newState());
+            outputs.add(new ArrayList<>());
+            for (var keyword : keywords) {
+                var state = 0;
+                for (var c : keyword.keyword().text().toCharArray()) {
+                    var lower = toLowerCase(c);
+                    if (transitions.get(state)[lower] < 0) {
+                        transitions.get(state)[lower] = transitions.size();
+                        transitions.add(newState());
+                        outputs.add(new ArrayList<>());
+                    }
+                    state = transitions.get(state)[lower];
+                }
+                outputs.get(state).add(keyword);
+            }
+
+            // Replace missing transitions with the transitions of the failure state, turning the trie into a DFA.
+            var failure = new int[transitions.size()];
+            var queue = new ArrayDeque<Integer>();
+            for (int c = 0; c < ALPHABET; c++) {
+                var target = transitions.get(0)[c];
+                if (target < 0) {
+                    transitions.get(0)[c] = 0;
+                } else {
+                    failure[target] = 0;
+                    queue.add(target);
+                }
+            }
+            while (!queue.isEmpty()) {
+                var state = queue.poll();
+                outputs.get(state).addAll(outputs.get(failure[state]));
+                for (int c = 0; c < ALPHABET; c++) {
+                    var target = transitions.get(state)[c];
+                    if (target < 0) {
+                        transitions.get(state)[c] = transitions.get(failure[state])[c];
+                    } else {
+                        failure[target] = transitions.get(failure[state])[c];
+                        queue.add(target);
+                    }
+                }
+            }
+
+            this.next = new int[transitions.size() * ALPHABET];
+            this.output = new CompiledKeyword[transitions.size()][];
+            for (int state = 0; state < transitions.size(); state++) {
+                System.arraycopy(transitions.get(state), 0, this.next, state * ALPHABET, ALPHABET);
+                this.output[state] = outputs.get(state).isEmpty() ? NO_OUTPUT : outputs.get(state).toArray(NO_OUTPUT);
+            }
+        }
+
+        private static int[] newState() {
+            var state = new int[ALPHABET];
+            Arrays.fill(state, -1);
+            return state;
+        }
+
+    }
+
+}
@@ -33,6 +33,10 @@ dependencies {
     annotationProcessor("info.picocli:picocli-codegen:4.7.4")
 }
 
+application {
+    mainClass.set("com.tridevmc.fedup.generator.FedUpGeneratorCLI")
+}
+
 tasks.test {
     useJUnitPlatform()
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.tridevmc.fedup.generator;
+
+import com.tridevmc.fedup.generator.internal.cli.CommandGenerate;
+import picocli.CommandLine;
+
+public class FedUpGeneratorCLI {
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new CommandGenerate()).execute(args);
+        System.exit(exitCode);
+    }
+
+}
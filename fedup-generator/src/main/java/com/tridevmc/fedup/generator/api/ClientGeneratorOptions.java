@@ -0,0 +1,159 @@
+package com.tridevmc.fedup.generator.api;
+
+import javax.lang.model.SourceVersion;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Options used to control the client an {@link IClientGenerator} generates.
+ */
+public final class ClientGeneratorOptions {
+
+    /**
+     * The package the client is generated in if none is given.
+     */
+    public static final String DEFAULT_PACKAGE_NAME = "com.tridevmc.fedup.client";
+
+    /**
+     * The name of the generated client class if none is given.
+     */
+    public static final String DEFAULT_CLIENT_NAME = "RedditGQLClient";
+
+    /**
+     * The endpoint the generated client sends requests to unless told otherwise.
+     */
+    public static final URI DEFAULT_ENDPOINT = URI.create("https://gql.reddit.com/");
+
+    private final String packageName;
+    private final String clientName;
+    private final URI endpoint;
+    private final boolean generateResponseDecoders;
+    private final int threads;
+
+    private ClientGeneratorOptions(Builder builder) {
+        this.packageName = builder.packageName;
+        this.clientName = builder.clientName;
+        this.endpoint = builder.endpoint;
+        this.generateResponseDecoders = builder.generateResponseDecoders;
+        this.threads = builder.threads;
+    }
+
+    /**
+     * Gets the default options.
+     *
+     * @return the default options.
+     */
+    public static ClientGeneratorOptions defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Creates a new builder with the default options set.
+     *
+     * @return a new builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the package the client is generated in.
+     *
+     * @return the package name.
+     */
+    public String getPackageName() {
+        return this.packageName;
+    }
+
+    /**
+     * Gets the simple name of the generated client class, other generated classes are prefixed with it.
+     *
+     * @return the client class name.
+     */
+    public String getClientName() {
+        return this.clientName;
+    }
+
+    /**
+     * Gets the endpoint the generated client sends requests to by default, it can still be changed when the client is built.
+     *
+     * @return the default endpoint.
+     */
+    public URI getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * Checks if a response class with a streaming decoder should be generated for each operation.
+     * <p>
+     * The decoders read responses with Gson's JsonReader, without them the client only depends on the JDK and every
+     * operation returns the raw response JSON.
+     *
+     * @return true if response decoders should be generated.
+     */
+    public boolean shouldGenerateResponseDecoders() {
+        return this.generateResponseDecoders;
+    }
+
+    /**
+     * Gets the number of threads used to generate independent source files in parallel.
+     *
+     * @return the number of threads, defaults to the number of available processors.
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    public static final class Builder {
+
+        private String packageName = DEFAULT_PACKAGE_NAME;
+        private String clientName = DEFAULT_CLIENT_NAME;
+        private URI endpoint = DEFAULT_ENDPOINT;
+        private boolean generateResponseDecoders = true;
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        private Builder() {
+        }
+
+        public Builder packageName(String packageName) {
+            if (Arrays.stream(packageName.split("\\.", -1)).anyMatch(p -> !SourceVersion.isIdentifier(p) || SourceVersion.isKeyword(p))) {
+                throw new IllegalArgumentException("Not a valid package name: " + packageName);
+            }
+            this.packageName = packageName;
+            return this;
+        }
+
+        public Builder clientName(String clientName) {
+            if (!SourceVersion.isIdentifier(clientName) || SourceVersion.isKeyword(clientName)) {
+                throw new IllegalArgumentException("Not a valid class name: " + clientName);
+            }
+            this.clientName = clientName;
+            return this;
+        }
+
+        public Builder endpoint(URI endpoint) {
+            this.endpoint = Objects.requireNonNull(endpoint);
+            return this;
+        }
+
+        public Builder generateResponseDecoders(boolean generateResponseDecoders) {
+            this.generateResponseDecoders = generateResponseDecoders;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("At least one thread is required, got " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        public ClientGeneratorOptions build() {
+            return new ClientGeneratorOptions(this);
+        }
+
+    }
+
+}
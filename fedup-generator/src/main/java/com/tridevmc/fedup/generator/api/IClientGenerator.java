@@ -0,0 +1,51 @@
+package com.tridevmc.fedup.generator.api;
+
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.generator.internal.ClientGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Generates the sources of a Java client for the operations found by FedUp-Extract.
+ * <p>
+ * The generated client only depends on the JDK. By default it sends persisted queries, which are just the operation ID
+ * and variables, rather than the full query text.
+ */
+public interface IClientGenerator {
+
+    /**
+     * Creates a client generator using the default options.
+     *
+     * @return a client generator.
+     */
+    static IClientGenerator create() {
+        return create(ClientGeneratorOptions.defaults());
+    }
+
+    /**
+     * Creates a client generator using the given options.
+     *
+     * @param options the options to generate the client with.
+     * @return a client generator.
+     */
+    static IClientGenerator create(ClientGeneratorOptions options) {
+        return new ClientGenerator(options);
+    }
+
+    /**
+     * Generates the client sources for the given analysis result.
+     * <p>
+     * Generation is incremental, a manifest kept next to the client records what each file was generated from. Files
+     * whose inputs haven't changed are left untouched, keeping their timestamps, and files that are no longer generated
+     * are deleted.
+     *
+     * @param result     the analysis result to generate a client for.
+     * @param sourceRoot the source root to write the sources to, package directories are created as needed.
+     * @return the source files that were written, files that were already up to date aren't included.
+     * @throws IOException if the sources can't be written.
+     */
+    List<Path> generate(IAPKAnalysisResult result, Path sourceRoot) throws IOException;
+
+}
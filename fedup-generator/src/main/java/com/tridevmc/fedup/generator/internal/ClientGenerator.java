@@ -0,0 +1,577 @@
+package com.tridevmc.fedup.generator.internal;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.gql.GQLDocument;
+import com.tridevmc.fedup.extract.api.gql.GQLOperationType;
+import com.tridevmc.fedup.extract.api.gql.IRedditGQLOperation;
+import com.tridevmc.fedup.generator.api.ClientGeneratorOptions;
+import com.tridevmc.fedup.generator.api.IClientGenerator;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import javax.lang.model.SourceVersion;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class ClientGenerator implements IClientGenerator {
+
+    private static final TaggedLogger LOG = Logger.tag("fedup-generator");
+
+    // Every operation is a static field initialized in <clinit>, which is limited to 64KiB of bytecode, so they're split
+    // across holder classes rather than all being put in the client. Holders are kept well under this on average, as
+    // operations are spread across them by hash.
+    private static final int OPERATIONS_PER_HOLDER = 256;
+
+    // String constants are limited to 65535 bytes of modified UTF-8, so longer definitions are split into parts.
+    private static final int MAX_LITERAL_LENGTH = 16384;
+
+    // Names that would clash with the methods the client already has.
+    private static final Set<String> RESERVED_NAMES = Set.of(
+            "builder", "execute", "executeAsync", "createRequest", "createRequestBuilder", "getCacheStats", "isCached",
+            "executeCached", "executeCachedAsync", "lookup", "revalidate", "store", "createCachedResponse", "decoding",
+            "equals", "hashCode", "toString", "getClass", "notify", "notifyAll", "wait", "clone", "finalize"
+    );
+
+    private final ClientGeneratorOptions options;
+    private final String clientTemplate;
+    private final String responseReaderTemplate;
+    private final String responseCacheTemplate;
+    private final String fingerprint;
+
+    public ClientGenerator(ClientGeneratorOptions options) {
+        this.options = options;
+        this.clientTemplate = readTemplate("Client.java.template");
+        this.responseReaderTemplate = readTemplate("ResponseReader.java.template");
+        this.responseCacheTemplate = readTemplate("ResponseCache.java.template");
+        this.fingerprint = this.createFingerprint();
+    }
+
+    private static String readTemplate(String name) {
+        try {
+            return Resources.toString(
+                    Resources.getResource(ClientGenerator.class, "/com/tridevmc/fedup/generator/templates/" + name),
+                    StandardCharsets.UTF_8
+            );
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the template " + name, e);
+        }
+    }
+
+    @Override
+    public List<Path> generate(IAPKAnalysisResult result, Path sourceRoot) throws IOException {
+        var clientName = this.options.getClientName();
+        var packageDir = sourceRoot.resolve(this.options.getPackageName().replace('.', '/'));
+        Files.createDirectories(packageDir);
+        var manifestPath = packageDir.resolve(GenerationManifest.FILE_NAME);
+        var previousManifest = GenerationManifest.read(manifestPath);
+        var output = new Output(sourceRoot, previousManifest);
+
+        var operations = this.nameOperations(result.getGQLOperations());
+        var holders = this.assignHolders(operations);
+        var pool = new ForkJoinPool(this.options.getThreads());
+        try {
+            pool.submit(() -> {
+                if (this.options.shouldGenerateResponseDecoders()) {
+                    this.generateResponseClasses(operations, output);
+                }
+                holders.entrySet().parallelStream().forEach(
+                        e -> output.emit(this.getPath(e.getKey()), this.hashHolder(e.getKey(), e.getValue()), () -> this.generateHolder(e.getKey(), e.getValue()))
+                );
+            }).join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        try {
+            output.emit(this.getPath(clientName + "ResponseCache"), this.hashInputs(), () -> this.responseCacheTemplate
+                    .replace("${package}", this.options.getPackageName())
+                    .replace("${clientName}", clientName));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // The client is generated last, as its methods depend on which operations have response classes.
+        var holderNames = new HashMap<NamedOperation, String>();
+        holders.forEach((holderName, holderOperations) -> holderOperations.forEach(o -> holderNames.put(o, holderName)));
+        try {
+            output.emit(this.getPath(clientName), this.hashClient(result, operations, holderNames), () -> {
+                var methods = new StringBuilder();
+                for (var operation : operations) {
+                    methods.append(this.generateMethods(holderNames.get(operation), operation));
+                }
+                return this.clientTemplate
+                        .replace("${package}", this.options.getPackageName())
+                        .replace("${clientName}", clientName)
+                        .replace("${endpoint}", toLiteral(this.options.getEndpoint().toString()))
+                        .replace("${oAuthClientId}", result.getRawOAuthClientId() != null ? toLiteral(result.getRawOAuthClientId()) : "null")
+                        .replace("${operationCount}", String.valueOf(operations.size()))
+                        .replace("${operationMethods}", methods);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        var deleted = output.deleteStaleFiles();
+        output.getManifest().write(manifestPath);
+        var written = output.getWritten();
+        LOG.info("Generated {} with {} operations across {} holder classes, wrote {} of {} files and deleted {}.",
+                clientName, operations.size(), holders.size(), written.size(), output.getManifest().getFiles().size(), deleted);
+        return written;
+    }
+
+    /**
+     * Gets the path of a generated class relative to the source root.
+     */
+    private String getPath(String className) {
+        return this.options.getPackageName().replace('.', '/') + "/" + className + ".java";
+    }
+
+    /**
+     * Assigns each operation to a holder class by the hash of its ID, so adding or removing an operation only changes
+     * the holder it's in rather than shifting every operation after it.
+     */
+    private SortedMap<String, List<NamedOperation>> assignHolders(List<NamedOperation> operations) {
+        // The number of holders only changes when the operation count doubles, keeping each at half the maximum on average.
+        var holderCount = 1;
+        while (holderCount * (OPERATIONS_PER_HOLDER / 2) < operations.size()) {
+            holderCount *= 2;
+        }
+        var holders = new TreeMap<String, List<NamedOperation>>();
+        for (var operation : operations) {
+            var holder = Math.floorMod(Hashing.murmur3_32_fixed().hashString(operation.operation().getId(), StandardCharsets.UTF_8).asInt(), holderCount);
+            holders.computeIfAbsent(this.options.getClientName() + "Operations" + holder, k -> new ArrayList<>()).add(operation);
+        }
+        return holders;
+    }
+
+    private List<NamedOperation> nameOperations(List<IRedditGQLOperation> operations) {
+        var usedNames = new HashSet<String>();
+        var named = new ArrayList<NamedOperation>(operations.size());
+        for (var operation : operations) {
+            var methodName = toMethodName(operation.getName(), operation.getId());
+            if (!reserveNames(usedNames, methodName)) {
+                // The same name can be used by more than one operation, the ID tells them apart.
+                var baseName = methodName + "_" + operation.getId().replaceAll("[^A-Za-z0-9]", "");
+                methodName = baseName;
+                for (int i = 2; !reserveNames(usedNames, methodName); i++) {
+                    methodName = baseName + "_" + i;
+                }
+            }
+            var constantName = CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, methodName);
+            named.add(new NamedOperation(operation, methodName, constantName));
+        }
+        return named;
+    }
+
+    /**
+     * Reserves every name generated for an operation with the given method name, so they can't clash with those of
+     * another operation, e.g. the async method of "Foo" and the method of "FooAsync".
+     */
+    private static boolean reserveNames(Set<String> usedNames, String methodName) {
+        var names = List.of(
+                methodName, methodName + "Operation", methodName + "Async",
+                CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, methodName)
+        );
+        if (names.stream().anyMatch(usedNames::contains)) {
+            return false;
+        }
+        usedNames.addAll(names);
+        return true;
+    }
+
+    private void generateResponseClasses(List<NamedOperation> operations, Output output) {
+        var generator = new ResponseClassGenerator(this.options.getPackageName(), this.options.getClientName());
+        var responsesPath = generator.getPackageName().replace('.', '/') + "/";
+        output.emit(responsesPath + "ResponseReader.java", this.hashInputs(), () -> this.responseReaderTemplate.replace("${package}", generator.getPackageName()));
+
+        // Class names are compared ignoring case, so they don't overwrite each other on case insensitive file systems.
+        var classNames = new HashMap<NamedOperation, String>();
+        var usedClassNames = new HashSet<String>();
+        usedClassNames.add("responsereader");
+        for (var operation : operations) {
+            var baseName = Character.toUpperCase(operation.methodName().charAt(0)) + operation.methodName().substring(1) + "Response";
+            var className = baseName;
+            for (int i = 2; !usedClassNames.add(className.toLowerCase(Locale.ROOT)); i++) {
+                className = baseName + i;
+            }
+            classNames.put(operation, className);
+        }
+
+        var failed = new LongAdder();
+        operations.parallelStream().forEach(operation -> {
+            var className = classNames.get(operation);
+            var name = operation.operation().getName();
+            var definition = operation.operation().getDefinition();
+            try {
+                // Definitions are only parsed if the class has to be generated, an unchanged class was already parsed successfully.
+                output.emit(responsesPath + className + ".java", this.hashInputs(className, name, definition), () -> {
+                    var document = GQLDocument.parse(definition);
+                    var parsedOperation = document.operations().stream()
+                            .filter(o -> Objects.equals(name, o.name()))
+                            .findFirst()
+                            .orElse(document.operations().isEmpty() ? null : document.operations().get(0));
+                    if (parsedOperation == null) {
+                        throw new IllegalArgumentException("The definition has no operations");
+                    }
+                    return generator.generate(className, document, parsedOperation);
+                });
+                operation.responseClassName = generator.getPackageName() + "." + className;
+            } catch (IllegalArgumentException e) {
+                // The operation can still be executed, it just returns the raw response.
+                LOG.warn("Failed to parse the definition of {}, it will return raw responses: {}", name, e.getMessage());
+                failed.increment();
+            }
+        });
+        LOG.info("Generated response decoders for {} of {} operations.", operations.size() - failed.sum(), operations.size());
+    }
+
+    /**
+     * Hashes the given inputs along with everything that affects every generated file, the options, the templates and
+     * the generator itself.
+     */
+    private String hashInputs(String... inputs) {
+        var hasher = Hashing.sha256().newHasher().putString(this.fingerprint, StandardCharsets.UTF_8);
+        for (var input : inputs) {
+            putString(hasher, input);
+        }
+        return hasher.hash().toString();
+    }
+
+    private String hashHolder(String holderName, List<NamedOperation> operations) {
+        var hasher = Hashing.sha256().newHasher().putString(this.fingerprint, StandardCharsets.UTF_8);
+        putString(hasher, holderName);
+        for (var operation : operations) {
+            putString(hasher, operation.constantName());
+            putString(hasher, operation.operation().getId());
+            putString(hasher, operation.operation().getName());
+            putString(hasher, operation.operation().getDefinition());
+        }
+        return hasher.hash().toString();
+    }
+
+    private String hashClient(IAPKAnalysisResult result, List<NamedOperation> operations, Map<NamedOperation, String> holderNames) {
+        var hasher = Hashing.sha256().newHasher().putString(this.fingerprint, StandardCharsets.UTF_8);
+        putString(hasher, result.getRawOAuthClientId());
+        for (var operation : operations) {
+            putString(hasher, holderNames.get(operation));
+            putString(hasher, operation.constantName());
+            putString(hasher, operation.methodName());
+            putString(hasher, operation.operation().getName());
+            putString(hasher, operation.responseClassName);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        // Strings are length prefixed, so moving characters from one input to the next changes the hash.
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Creates a fingerprint of everything that affects every generated file, so changing any of it regenerates them all.
+     */
+    private String createFingerprint() {
+        var hasher = Hashing.sha256().newHasher();
+        putString(hasher, this.options.getPackageName());
+        putString(hasher, this.options.getClientName());
+        putString(hasher, this.options.getEndpoint().toString());
+        hasher.putBoolean(this.options.shouldGenerateResponseDecoders());
+        putString(hasher, this.clientTemplate);
+        putString(hasher, this.responseReaderTemplate);
+        putString(hasher, this.responseCacheTemplate);
+        for (var generatorClass : List.of(ClientGenerator.class, ResponseClassGenerator.class)) {
+            var classFile = generatorClass.getResource(generatorClass.getSimpleName() + ".class");
+            try {
+                hasher.putBytes(classFile != null ? Resources.toByteArray(classFile) : new byte[0]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private String generateHolder(String holderName, List<NamedOperation> operations) {
+        var clientName = this.options.getClientName();
+        var source = new StringBuilder()
+                .append("package ").append(this.options.getPackageName()).append(";\n\n")
+                .append("/**\n * Holds some of the operations of {@link ").append(clientName).append("}.\n")
+                .append(" * <p>\n * Generated by FedUp-Generator, do not edit.\n */\n")
+                .append("final class ").append(holderName).append(" {\n\n");
+        for (var operation : operations) {
+            source.append("    static final ").append(clientName).append(".Operation ").append(operation.constantName())
+                    .append(" = new ").append(clientName).append(".Operation(\n")
+                    .append("            ").append(toLiteral(operation.operation().getId())).append(",\n")
+                    .append("            ").append(toLiteral(operation.operation().getName())).append(",\n")
+                    .append("            ").append(toLiteral(operation.operation().getDefinition())).append(",\n")
+                    .append("            ").append(isQuery(operation.operation())).append("\n")
+                    .append("    );\n\n");
+        }
+        return source.append("    private ").append(holderName).append("() {\n    }\n\n}\n").toString();
+    }
+
+    /**
+     * Checks if the given operation is a query, and so safe to cache. Definitions that can't be read are treated as
+     * mutations, as caching a mutation would silently stop it from being sent.
+     */
+    private static boolean isQuery(IRedditGQLOperation operation) {
+        return operation.getDefinition() != null && GQLOperationType.fromDefinition(operation.getDefinition()) == GQLOperationType.QUERY;
+    }
+
+    private String generateMethods(String holderName, NamedOperation operation) {
+        var field = holderName + "." + operation.constantName();
+        // Operations without a name are described by the method name, which was derived from their ID.
+        var name = Objects.requireNonNullElse(operation.operation().getName(), operation.methodName());
+        var responseType = operation.responseClassName != null ? operation.responseClassName : "String";
+        var decoder = operation.responseClassName != null ? ", " + operation.responseClassName + ".DECODER" : "";
+        return "\n" +
+                "    /**\n" +
+                "     * Gets the " + escapeJavadoc(name) + " operation.\n" +
+                "     */\n" +
+                "    public static Operation " + operation.methodName() + "Operation() {\n" +
+                "        return " + field + ";\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Executes the " + escapeJavadoc(name) + " operation.\n" +
+                "     *\n" +
+                "     * @param variablesJson the variables of the operation as a JSON object, or null if it has none.\n" +
+                "     */\n" +
+                "    public HttpResponse<" + responseType + "> " + operation.methodName() + "(String variablesJson) throws IOException, InterruptedException {\n" +
+                "        return this.execute(" + field + ", variablesJson" + decoder + ");\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Executes the " + escapeJavadoc(name) + " operation without blocking.\n" +
+                "     *\n" +
+                "     * @param variablesJson the variables of the operation as a JSON object, or null if it has none.\n" +
+                "     */\n" +
+                "    public CompletableFuture<HttpResponse<" + responseType + ">> " + operation.methodName() + "Async(String variablesJson) {\n" +
+                "        return this.executeAsync(" + field + ", variablesJson" + decoder + ");\n" +
+                "    }\n";
+    }
+
+    /**
+     * Converts an operation name into a method name, operation names are usually already upper camel case. Operations
+     * without a name, or with one that has nothing usable in a method name, are named after their ID instead.
+     */
+    static String toMethodName(String operationName, String operationId) {
+        var name = toIdentifier(operationName);
+        if (name.isEmpty()) {
+            name = toIdentifier(operationId);
+            if (name.isEmpty()) {
+                return "operation";
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            name.insert(0, "operation");
+        }
+        name.setCharAt(0, Character.toLowerCase(name.charAt(0)));
+        if (!Character.isJavaIdentifierStart(name.charAt(0))) {
+            name.insert(0, "op");
+        }
+        var methodName = name.toString();
+        if (SourceVersion.isKeyword(methodName) || RESERVED_NAMES.contains(methodName)) {
+            methodName = methodName + "Operation";
+        }
+        return methodName;
+    }
+
+    private static StringBuilder toIdentifier(String value) {
+        var identifier = new StringBuilder();
+        if (value == null) {
+            return identifier;
+        }
+        var upperNext = false;
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (Character.isJavaIdentifierPart(c) && c != '$') {
+                identifier.append(upperNext ? Character.toUpperCase(c) : c);
+                upperNext = false;
+            } else {
+                upperNext = identifier.length() > 0;
+            }
+        }
+        return identifier;
+    }
+
+    private static String toLiteral(String value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value.length() <= MAX_LITERAL_LENGTH) {
+            return quote(value);
+        }
+        var parts = new ArrayList<String>();
+        for (int i = 0; i < value.length(); i += MAX_LITERAL_LENGTH) {
+            var end = Math.min(value.length(), i + MAX_LITERAL_LENGTH);
+            if (end < value.length() && Character.isHighSurrogate(value.charAt(end - 1))) {
+                // Don't split surrogate pairs across parts.
+                end--;
+            }
+            parts.add(quote(value.substring(i, end)));
+            i = end - MAX_LITERAL_LENGTH;
+        }
+        return "String.join(\"\",\n                    " + String.join(",\n                    ", parts) + ")";
+    }
+
+    private static String quote(String value) {
+        var quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20 || c > 0x7e) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String escapeJavadoc(String value) {
+        return value.replace("&", "&amp;").replace("\\", "&#92;").replace("<", "&lt;").replace(">", "&gt;").replace("*/", "*&#47;").replace("@", "&#64;");
+    }
+
+    /**
+     * Writes generated files, skipping those whose inputs haven't changed since the previous generation and leaving
+     * files untouched if they already hold the generated source, so their timestamps are kept.
+     */
+    private static final class Output {
+
+        private final Path sourceRoot;
+        private final GenerationManifest previousManifest;
+        private final GenerationManifest manifest = new GenerationManifest();
+        private final List<Path> written = new ArrayList<>();
+
+        private Output(Path sourceRoot, GenerationManifest previousManifest) {
+            this.sourceRoot = sourceRoot;
+            this.previousManifest = previousManifest;
+        }
+
+        /**
+         * Emits a generated file, only generating its source if the inputs it was previously generated from changed.
+         *
+         * @param path      the path of the file relative to the source root.
+         * @param inputHash the hash of everything the file is generated from.
+         * @param source    generates the source of the file.
+         */
+        private void emit(String path, String inputHash, Supplier<String> source) {
+            var file = this.sourceRoot.resolve(path);
+            var previous = this.previousManifest.get(path);
+            if (previous != null && previous.inputHash().equals(inputHash) && Files.isRegularFile(file)) {
+                this.put(path, previous);
+                return;
+            }
+            var bytes = source.get().getBytes(StandardCharsets.UTF_8);
+            var contentHash = Hashing.sha256().hashBytes(bytes).toString();
+            try {
+                // The file may already hold the same source, e.g. when only the generator changed, or if the manifest was lost.
+                if (!Files.isRegularFile(file) || Files.size(file) != bytes.length || !Arrays.equals(Files.readAllBytes(file), bytes)) {
+                    Files.createDirectories(file.getParent());
+                    Files.write(file, bytes);
+                    synchronized (this.written) {
+                        this.written.add(file);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.put(path, new GenerationManifest.Entry(inputHash, contentHash));
+        }
+
+        private void put(String path, GenerationManifest.Entry entry) {
+            synchronized (this.manifest) {
+                this.manifest.put(path, entry);
+            }
+        }
+
+        /**
+         * Deletes the files the previous generation wrote that weren't emitted this time, such as the response classes
+         * of removed operations.
+         *
+         * @return the number of files deleted.
+         * @throws IOException if a file can't be deleted.
+         */
+        private int deleteStaleFiles() throws IOException {
+            var deleted = 0;
+            for (var path : this.previousManifest.getFiles().keySet()) {
+                if (this.manifest.get(path) == null && Files.deleteIfExists(this.sourceRoot.resolve(path))) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+
+        private GenerationManifest getManifest() {
+            return this.manifest;
+        }
+
+        private List<Path> getWritten() {
+            return this.written;
+        }
+
+    }
+
+    private static final class NamedOperation {
+
+        private final IRedditGQLOperation operation;
+        private final String methodName;
+        private final String constantName;
+        // The qualified name of the operation's response class, or null if it returns raw responses.
+        private volatile String responseClassName;
+
+        private NamedOperation(IRedditGQLOperation operation, String methodName, String constantName) {
+            this.operation = operation;
+            this.methodName = methodName;
+            this.constantName = constantName;
+        }
+
+        private IRedditGQLOperation operation() {
+            return this.operation;
+        }
+
+        private String methodName() {
+            return this.methodName;
+        }
+
+        private String constantName() {
+            return this.constantName;
+        }
+
+    }
+
+}
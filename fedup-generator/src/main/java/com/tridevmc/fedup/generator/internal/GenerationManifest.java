@@ -0,0 +1,98 @@
+package com.tridevmc.fedup.generator.internal;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the files a previous generation wrote and the hash of the inputs each was generated from, so files whose
+ * inputs haven't changed can be skipped and files that are no longer generated can be deleted.
+ * <p>
+ * Paths are relative to the source root and always use forward slashes.
+ */
+class GenerationManifest {
+
+    static final String FILE_NAME = "fedup-generator-manifest.json";
+
+    /**
+     * Bump this whenever the manifest format changes, manifests with another version are ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final TaggedLogger LOG = Logger.tag("fedup-generator");
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    private int version = FORMAT_VERSION;
+    private TreeMap<String, Entry> files = new TreeMap<>();
+
+    /**
+     * Reads the manifest at the given path, an empty manifest is returned if there is none or it can't be read.
+     *
+     * @param path the path of the manifest.
+     * @return the manifest.
+     */
+    static GenerationManifest read(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return new GenerationManifest();
+        }
+        try {
+            var manifest = GSON.fromJson(Files.readString(path, StandardCharsets.UTF_8), GenerationManifest.class);
+            if (manifest != null && manifest.version == FORMAT_VERSION && manifest.files != null) {
+                return manifest;
+            }
+            LOG.info("Ignoring generation manifest {} from another version, every file will be checked.", path);
+        } catch (IOException | JsonParseException e) {
+            LOG.warn("Failed to read generation manifest {}, every file will be checked: {}", path, e.getMessage());
+        }
+        return new GenerationManifest();
+    }
+
+    /**
+     * Writes the manifest to the given path, leaving the file untouched if it already holds the same manifest.
+     *
+     * @param path the path to write the manifest to.
+     * @throws IOException if the manifest can't be written.
+     */
+    void write(Path path) throws IOException {
+        var json = GSON.toJson(this) + "\n";
+        if (!Files.isRegularFile(path) || !Files.readString(path, StandardCharsets.UTF_8).equals(json)) {
+            Files.writeString(path, json, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Gets the entry for the given file.
+     *
+     * @param path the path of the file relative to the source root.
+     * @return the entry, or null if the file isn't in the manifest.
+     */
+    Entry get(String path) {
+        return this.files.get(path);
+    }
+
+    void put(String path, Entry entry) {
+        this.files.put(path, entry);
+    }
+
+    Map<String, Entry> getFiles() {
+        return this.files;
+    }
+
+    /**
+     * @param inputHash   the hash of everything the file was generated from.
+     * @param contentHash the hash of the contents of the file.
+     */
+    record Entry(String inputHash, String contentHash) {
+
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.tridevmc.fedup.generator.internal;
+
+import com.tridevmc.fedup.extract.api.gql.GQLDocument;
+
+import javax.lang.model.SourceVersion;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the response class of an operation, along with a decoder that streams the response with a JsonReader.
+ * <p>
+ * Only the fields the operation selects are given fields in the class, fragments are merged into the selections that
+ * spread them. Anything else in the response is skipped without being read into a tree first.
+ */
+class ResponseClassGenerator {
+
+    // Names a nested class can't be given without shadowing a type the response class uses.
+    private static final Set<String> RESERVED_CLASS_NAMES = Set.of("List", "Object", "String", "JsonReader", "IOException", "ResponseReader");
+
+    private final String clientPackageName;
+    private final String clientName;
+
+    ResponseClassGenerator(String clientPackageName, String clientName) {
+        this.clientPackageName = clientPackageName;
+        this.clientName = clientName;
+    }
+
+    /**
+     * Gets the package response classes are generated in.
+     *
+     * @return the package name.
+     */
+    String getPackageName() {
+        return this.clientPackageName + ".responses";
+    }
+
+    /**
+     * Generates the source of the response class for the given operation.
+     *
+     * @param className the simple name of the class to generate.
+     * @param document  the parsed definition of the operation, fragments are looked up in it.
+     * @param operation the operation to generate a response class for.
+     * @return the source of the response class.
+     */
+    String generate(String className, GQLDocument document, GQLDocument.Operation operation) {
+        var data = new SelectionNode();
+        collectSelections(document, operation.selections(), data, new HashSet<>());
+
+        var out = new StringBuilder()
+                .append("package ").append(this.getPackageName()).append(";\n\n")
+                .append("import com.google.gson.stream.JsonReader;\n")
+                .append("import ").append(this.clientPackageName).append('.').append(this.clientName).append(";\n\n")
+                .append("import java.io.IOException;\n")
+                .append("import java.util.List;\n\n")
+                .append("/**\n * The response to a ").append(operation.name() != null ? operation.name() : "anonymous").append(' ')
+                .append(operation.type().getKeyword()).append(".\n")
+                .append(" * <p>\n * Generated by FedUp-Generator, do not edit.\n */\n")
+                .append("public final class ").append(className).append(" {\n\n")
+                .append("    public static final ").append(this.clientName).append(".ResponseDecoder<").append(className)
+                .append("> DECODER = reader -> read(new JsonReader(reader));\n\n")
+                .append("    private Data data;\n")
+                .append("    private List<Object> errors;\n\n")
+                .append("    public Data getData() {\n        return this.data;\n    }\n\n")
+                .append("    /**\n     * Gets the errors returned with the response, each error is read as a map.\n     */\n")
+                .append("    public List<Object> getErrors() {\n        return this.errors;\n    }\n\n")
+                .append("    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public static ").append(className).append(" read(JsonReader in) throws IOException {\n")
+                .append("        var response = new ").append(className).append("();\n")
+                .append("        in.beginObject();\n")
+                .append("        while (in.hasNext()) {\n")
+                .append("            switch (in.nextName()) {\n")
+                .append("                case \"data\" -> response.data = ResponseReader.readObject(in, Data::read);\n")
+                .append("                case \"errors\" -> response.errors = (List<Object>) ResponseReader.readValue(in);\n")
+                .append("                default -> in.skipValue();\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("        in.endObject();\n")
+                .append("        return response;\n")
+                .append("    }\n\n");
+        var enclosingNames = new HashSet<>(RESERVED_CLASS_NAMES);
+        enclosingNames.add(this.clientName);
+        enclosingNames.add(className);
+        this.writeNodeClass(out, "    ", "Data", data, enclosingNames);
+        return out.append("\n}\n").toString();
+    }
+
+    private void writeNodeClass(StringBuilder out, String indent, String className, SelectionNode node, Set<String> enclosingNames) {
+        enclosingNames.add(className);
+        var fields = new LinkedHashMap<FieldNode, String>();
+        var classNames = new LinkedHashMap<FieldNode, String>();
+        var usedFieldNames = new HashSet<String>();
+        var usedClassNames = new HashSet<>(enclosingNames);
+        for (var field : node.fields.values()) {
+            // Object fields also get a list getter, so the name it's derived from is reserved too.
+            fields.put(field, field.isObject() ? uniqueName(toFieldName(field.key), "List", usedFieldNames) : uniqueName(toFieldName(field.key), usedFieldNames));
+            if (field.isObject()) {
+                classNames.put(field, uniqueName(toClassName(field.key), usedClassNames));
+            }
+        }
+
+        out.append(indent).append("public static final class ").append(className).append(" {\n\n");
+        for (var field : node.fields.values()) {
+            if (field.isObject()) {
+                out.append(indent).append("    // ").append(classNames.get(field)).append(", or a list of them.\n");
+            }
+            out.append(indent).append("    private Object ").append(fields.get(field)).append(";\n");
+        }
+        if (!node.fields.isEmpty()) {
+            out.append('\n');
+        }
+        for (var field : node.fields.values()) {
+            var fieldName = fields.get(field);
+            var getterName = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            if (getterName.equals("getClass")) {
+                getterName = "getClass_";
+            }
+            if (field.isObject()) {
+                var objectClass = classNames.get(field);
+                out.append(indent).append("    public ").append(objectClass).append(' ').append(getterName).append("() {\n")
+                        .append(indent).append("        return ResponseReader.single(this.").append(fieldName).append(", ").append(quote(field.key)).append(");\n")
+                        .append(indent).append("    }\n\n")
+                        .append(indent).append("    public List<").append(objectClass).append("> ").append(getterName).append("List() {\n")
+                        .append(indent).append("        return ResponseReader.list(this.").append(fieldName).append(");\n")
+                        .append(indent).append("    }\n\n");
+            } else {
+                out.append(indent).append("    public Object ").append(getterName).append("() {\n")
+                        .append(indent).append("        return this.").append(fieldName).append(";\n")
+                        .append(indent).append("    }\n\n");
+            }
+        }
+
+        out.append(indent).append("    static ").append(className).append(" read(JsonReader in) throws IOException {\n")
+                .append(indent).append("        var node = new ").append(className).append("();\n")
+                .append(indent).append("        in.beginObject();\n")
+                .append(indent).append("        while (in.hasNext()) {\n")
+                .append(indent).append("            switch (in.nextName()) {\n");
+        for (var field : node.fields.values()) {
+            out.append(indent).append("                case ").append(quote(field.key)).append(" -> node.").append(fields.get(field)).append(" = ");
+            if (field.isObject()) {
+                out.append("ResponseReader.readObjects(in, ").append(classNames.get(field)).append("::read);\n");
+            } else {
+                out.append("ResponseReader.readValue(in);\n");
+            }
+        }
+        out.append(indent).append("                default -> in.skipValue();\n")
+                .append(indent).append("            }\n")
+                .append(indent).append("        }\n")
+                .append(indent).append("        in.endObject();\n")
+                .append(indent).append("        return node;\n")
+                .append(indent).append("    }\n");
+
+        for (var entry : classNames.entrySet()) {
+            out.append('\n');
+            this.writeNodeClass(out, indent + "    ", entry.getValue(), entry.getKey().children, enclosingNames);
+        }
+        out.append('\n').append(indent).append("}\n");
+        enclosingNames.remove(className);
+    }
+
+    private static void collectSelections(GQLDocument document, List<GQLDocument.Selection> selections, SelectionNode node, Set<String> spreadFragments) {
+        for (var selection : selections) {
+            if (selection instanceof GQLDocument.Field field) {
+                var fieldNode = node.fields.computeIfAbsent(field.responseKey(), FieldNode::new);
+                if (!field.selections().isEmpty()) {
+                    if (fieldNode.children == null) {
+                        fieldNode.children = new SelectionNode();
+                    }
+                    collectSelections(document, field.selections(), fieldNode.children, new HashSet<>());
+                }
+            } else if (selection instanceof GQLDocument.InlineFragment inlineFragment) {
+                // Type conditions are ignored, the fields of every possible type are merged together.
+                collectSelections(document, inlineFragment.selections(), node, spreadFragments);
+            } else if (selection instanceof GQLDocument.FragmentSpread spread) {
+                var fragment = document.getFragment(spread.name());
+                // A fragment only needs to be merged once per selection set, which also stops cycles.
+                if (fragment != null && spreadFragments.add(spread.name())) {
+                    collectSelections(document, fragment.selections(), node, spreadFragments);
+                }
+            }
+        }
+    }
+
+    private static String toFieldName(String key) {
+        var name = key.replaceAll("^_+", "");
+        if (name.isEmpty()) {
+            name = "field";
+        }
+        if (SourceVersion.isKeyword(name)) {
+            name = name + "_";
+        }
+        return name;
+    }
+
+    private static String toClassName(String key) {
+        var name = key.replaceAll("^_+", "");
+        if (name.isEmpty()) {
+            return "Node";
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String uniqueName(String name, Set<String> usedNames) {
+        var unique = name;
+        for (int i = 2; !usedNames.add(unique); i++) {
+            unique = name + i;
+        }
+        return unique;
+    }
+
+    private static String uniqueName(String name, String reservedSuffix, Set<String> usedNames) {
+        var unique = name;
+        for (int i = 2; usedNames.contains(unique) || usedNames.contains(unique + reservedSuffix); i++) {
+            unique = name + i;
+        }
+        usedNames.add(unique);
+        usedNames.add(unique + reservedSuffix);
+        return unique;
+    }
+
+    private static String quote(String value) {
+        // Response keys are GQL names, so they never need escaping.
+        return "\"" + value + "\"";
+    }
+
+    private static final class SelectionNode {
+
+        private final Map<String, FieldNode> fields = new LinkedHashMap<>();
+
+    }
+
+    private static final class FieldNode {
+
+        private final String key;
+        private SelectionNode children;
+
+        private FieldNode(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Checks if the field should be read as an object, a field whose selections are all in missing fragments is
+         * read as a plain value instead.
+         */
+        private boolean isObject() {
+            return this.children != null && !this.children.fields.isEmpty();
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.tridevmc.fedup.generator.internal.cli;
+
+import com.tridevmc.fedup.extract.api.apk.IAPKAnalysisResult;
+import com.tridevmc.fedup.extract.api.gql.IGQLOperationCatalog;
+import com.tridevmc.fedup.generator.api.ClientGeneratorOptions;
+import com.tridevmc.fedup.generator.api.IClientGenerator;
+import org.tinylog.Logger;
+import org.tinylog.TaggedLogger;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+
+@Command(name = "generate", description = "Generates a Java client from the JSON exported by FedUp-Extract.")
+public class CommandGenerate implements Callable<Integer> {
+
+    private static final TaggedLogger LOG = Logger.tag("fedup-generator");
+
+    @CommandLine.Option(names = {"-i", "--input"}, description = "The JSON file or operation catalog exported by FedUp-Extract.", required = true)
+    private File input;
+
+    @CommandLine.Option(names = {"-o", "--output-dir"}, description = "The source root to write the client to.", required = true)
+    private File outputDir;
+
+    @CommandLine.Option(names = {"-p", "--package"}, description = "The package to generate the client in.", defaultValue = ClientGeneratorOptions.DEFAULT_PACKAGE_NAME)
+    private String packageName;
+
+    @CommandLine.Option(names = {"-n", "--client-name"}, description = "The name of the generated client class.", defaultValue = ClientGeneratorOptions.DEFAULT_CLIENT_NAME)
+    private String clientName;
+
+    @CommandLine.Option(names = {"--endpoint"}, description = "The endpoint the client sends requests to by default.")
+    private URI endpoint;
+
+    @CommandLine.Option(names = {"--raw-responses"}, description = "Return the raw response JSON from every operation rather than generating response decoders, the client then only depends on the JDK.")
+    private boolean rawResponses;
+
+    @CommandLine.Option(names = {"-t", "--threads"}, description = "The number of threads to generate sources with. Defaults to the number of available processors.")
+    private Integer threads;
+
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    @Override
+    public Integer call() throws Exception {
+        if (!this.input.isFile()) {
+            LOG.info("Input file does not exist, please select a different input file.");
+            return 1;
+        }
+        var options = ClientGeneratorOptions.builder();
+        try {
+            options.packageName(this.packageName).clientName(this.clientName);
+            if (this.threads != null) {
+                options.threads(this.threads);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new CommandLine.ParameterException(this.spec.commandLine(), e.getMessage());
+        }
+        options.generateResponseDecoders(!this.rawResponses);
+        if (this.endpoint != null) {
+            options.endpoint(this.endpoint);
+        }
+        var written = IClientGenerator.create(options.build()).generate(this.readInput(), this.outputDir.toPath());
+        LOG.info("Wrote {} changed source files to {}", written.size(), this.outputDir);
+        return 0;
+    }
+
+    private IAPKAnalysisResult readInput() throws IOException {
+        var path = this.input.toPath();
+        if (IGQLOperationCatalog.isCatalog(path)) {
+            return IGQLOperationCatalog.open(path);
+        }
+        try (var reader = Files.newBufferedReader(path)) {
+            return IAPKAnalysisResult.read(reader);
+        }
+    }
+
+}
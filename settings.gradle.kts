@@ -10,3 +10,4 @@
 rootProject.name = "fedup"
 include("fedup-extract")
 include("fedup-generator")
+include("fedup-bench")